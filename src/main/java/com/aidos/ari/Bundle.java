@@ -1,14 +1,27 @@
 package com.aidos.ari;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.aidos.ari.hash.Curl;
 import com.aidos.ari.hash.ISS;
 import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
 import com.aidos.ari.service.storage.StorageBundle;
+import com.aidos.ari.service.storage.StorageListener;
 import com.aidos.ari.service.storage.StorageTransactions;
 import com.aidos.ari.utils.Converter;
 
@@ -20,6 +33,24 @@ import com.aidos.ari.utils.Converter;
  */
 public class Bundle {
 
+    private static final Logger log = LoggerFactory.getLogger(Bundle.class);
+
+    private static final int VALIDATED_BUNDLES_CACHE_SIZE = 10000;
+
+    // Started and stopped with the node, the signatures are verified by the calling thread when it isn't running
+    private static volatile ExecutorService signatureVerifier;
+
+    // Validated bundle instances, keyed by tail pointer, least recently used ones are evicted first. The instance of a
+    // pruned tail is evicted right away, its cell is going to be reused by another transaction
+    private static final Map<Long, List<Transaction>> validatedBundles = new LinkedHashMap<Long, List<Transaction>>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, List<Transaction>> eldest) {
+            return size() > VALIDATED_BUNDLES_CACHE_SIZE;
+        }
+    };
+
     private final List<List<Transaction>> transactions = new LinkedList<>();
 
     public Bundle(final byte[] bundle) {
@@ -66,33 +97,14 @@ public class Bundle {
 
                                     final int[] normalizedBundle = ISS.normalizedBundle(bundleHashTrits);
 
-                                    for (int j = 0; j < instanceTransactions.size(); ) {
-
-                                        transaction = instanceTransactions.get(j);
-                                        if (transaction.value < 0) { // let's recreate the address of the transaction.
-
-                                            final Curl address = new Curl();
-                                            int offset = 0;
-                                            do {
-
-                                                address.absorb(
-                                                        ISS.digest(Arrays.copyOfRange(normalizedBundle, offset, offset = (offset + ISS.NUMBER_OF_FRAGMENT_CHUNKS) % (Curl.HASH_LENGTH / Converter.NUMBER_OF_TRITS_IN_A_TRYTE)),
-                                                        Arrays.copyOfRange(instanceTransactions.get(j).trits(), Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET, Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET + Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_SIZE)),
-                                                        0, Curl.HASH_LENGTH);
-
-                                            } while (++j < instanceTransactions.size()
-                                                    && Arrays.equals(instanceTransactions.get(j).address, transaction.address)
-                                                    && instanceTransactions.get(j).value == 0);
-                                            
-                                            final int[] addressTrits = new int[Transaction.ADDRESS_TRINARY_SIZE];
-                                            address.squeeze(addressTrits, 0, addressTrits.length);
-                                            if (!Arrays.equals(Converter.bytes(addressTrits, 0, Transaction.ADDRESS_TRINARY_SIZE), transaction.address)) {
-                                                StorageTransactions.instance().setTransactionValidity(instanceTransactions.get(0).pointer, -1);
-                                                break MAIN_LOOP;
-                                            }
-                                        } else {
-                                            j++;
-                                        }
+                                    final Boolean validSignatures = validSignatures(instanceTransactions, normalizedBundle);
+                                    if (validSignatures == null) {
+                                        // Left unvalidated, to be verified again
+                                        break MAIN_LOOP;
+                                    }
+                                    if (!validSignatures) {
+                                        StorageTransactions.instance().setTransactionValidity(instanceTransactions.get(0).pointer, -1);
+                                        break MAIN_LOOP;
                                     }
 
                                     StorageTransactions.instance().setTransactionValidity(instanceTransactions.get(0).pointer, 1);
@@ -120,6 +132,156 @@ public class Bundle {
     }
 
 
+    /**
+     * Returns the transactions of the valid bundle instance starting at the given tail, or null if the bundle is
+     * invalid or not complete yet. Valid instances are cached, and bundles already marked valid in the storage are
+     * assembled by following the trunk transactions without verifying the signatures again.
+     */
+    public static List<Transaction> validatedTransactions(final Transaction tail) {
+
+        if (tail.currentIndex != 0 || tail.validity() < 0) {
+            return null;
+        }
+
+        synchronized (validatedBundles) {
+            final List<Transaction> bundleTransactions = validatedBundles.get(tail.pointer);
+            if (bundleTransactions != null) {
+                return bundleTransactions;
+            }
+        }
+
+        List<Transaction> bundleTransactions = null;
+        if (tail.validity() > 0) {
+
+            bundleTransactions = new LinkedList<>();
+            Transaction transaction = tail;
+            while (true) {
+                bundleTransactions.add(transaction);
+                if (transaction.currentIndex == transaction.lastIndex) {
+                    break;
+                }
+                transaction = StorageTransactions.instance().loadTransaction(transaction.trunkTransactionPointer);
+                if (!Arrays.equals(transaction.bundle, tail.bundle)) {
+                    bundleTransactions = null;
+                    break;
+                }
+            }
+
+        } else {
+
+            for (final List<Transaction> instanceTransactions : new Bundle(tail.bundle).getTransactions()) {
+                if (instanceTransactions.get(0).pointer == tail.pointer) {
+                    bundleTransactions = instanceTransactions;
+                    break;
+                }
+            }
+        }
+
+        if (bundleTransactions != null) {
+            synchronized (validatedBundles) {
+                validatedBundles.put(tail.pointer, bundleTransactions);
+            }
+        }
+        return bundleTransactions;
+    }
+
+    public static void init(final int numberOfSignatureThreads) {
+
+        signatureVerifier = Executors.newWorkStealingPool(numberOfSignatureThreads);
+        Storage.instance().addListener(new StorageListener() {
+
+            @Override
+            public void transactionStored(final long pointer, final Transaction transaction) {
+            }
+
+            @Override
+            public void transactionPruned(final long pointer) {
+                synchronized (validatedBundles) {
+                    validatedBundles.remove(pointer);
+                }
+            }
+        });
+    }
+
+    public static void shutdown() {
+        final ExecutorService executor = signatureVerifier;
+        signatureVerifier = null;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Future<int[]> digest(final int[] normalizedBundleFragment, final int[] signatureFragment) {
+        final ExecutorService executor = signatureVerifier;
+        if (executor != null) {
+            try {
+                return executor.submit(() -> ISS.digest(normalizedBundleFragment, signatureFragment));
+            } catch (final RejectedExecutionException e) {
+                // Shutting down
+            }
+        }
+        return CompletableFuture.completedFuture(ISS.digest(normalizedBundleFragment, signatureFragment));
+    }
+
+    // Recreates the address of every spending input, the digests of all signature fragments are computed in parallel.
+    // Returns null if the signatures couldn't be verified.
+    private static Boolean validSignatures(final List<Transaction> instanceTransactions, final int[] normalizedBundle) {
+
+        final List<byte[]> inputAddresses = new ArrayList<>();
+        final List<List<Future<int[]>>> inputDigests = new ArrayList<>();
+
+        for (int j = 0; j < instanceTransactions.size(); ) {
+
+            final Transaction transaction = instanceTransactions.get(j);
+            if (transaction.value < 0) {
+
+                final List<Future<int[]>> digests = new ArrayList<>();
+                int offset = 0;
+                do {
+
+                    final int[] normalizedBundleFragment = Arrays.copyOfRange(normalizedBundle, offset, offset = (offset + ISS.NUMBER_OF_FRAGMENT_CHUNKS) % (Curl.HASH_LENGTH / Converter.NUMBER_OF_TRITS_IN_A_TRYTE));
+                    final int[] signatureFragment = Arrays.copyOfRange(instanceTransactions.get(j).trits(), Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET, Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET + Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_SIZE);
+                    digests.add(digest(normalizedBundleFragment, signatureFragment));
+
+                } while (++j < instanceTransactions.size()
+                        && Arrays.equals(instanceTransactions.get(j).address, transaction.address)
+                        && instanceTransactions.get(j).value == 0);
+
+                inputAddresses.add(transaction.address);
+                inputDigests.add(digests);
+            } else {
+                j++;
+            }
+        }
+
+        try {
+            for (int i = 0; i < inputAddresses.size(); i++) {
+
+                final Curl address = new Curl();
+                for (final Future<int[]> digest : inputDigests.get(i)) {
+                    address.absorb(digest.get(), 0, Curl.HASH_LENGTH);
+                }
+
+                final int[] addressTrits = new int[Transaction.ADDRESS_TRINARY_SIZE];
+                address.squeeze(addressTrits, 0, addressTrits.length);
+                if (!Arrays.equals(Converter.bytes(addressTrits, 0, Transaction.ADDRESS_TRINARY_SIZE), inputAddresses.get(i))) {
+                    inputDigests.forEach(digests -> digests.forEach(digest -> digest.cancel(false)));
+                    return false;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final CancellationException e) {
+            // The verifier has been shut down
+            return null;
+        } catch (final ExecutionException e) {
+            log.error("Error verifying bundle signatures", e.getCause());
+            return null;
+        }
+        return true;
+    }
+
     private Map<Long, Transaction> loadTransactionsFromMesh(final long bundlePointer) {
         final Map<Long, Transaction> bundleTransactions = new HashMap<>();
         for (final long transactionPointer : StorageBundle.instance().bundleTransactions(bundlePointer)) {
@@ -7,9 +7,18 @@ import org.slf4j.LoggerFactory;
 import com.aidos.ari.conf.Configuration;
 import com.aidos.ari.conf.Configuration.DefaultConfSettings;
 import com.aidos.ari.service.API;
+import com.aidos.ari.service.BroadcastScheduler;
+import com.aidos.ari.service.BulkSync;
+import com.aidos.ari.service.BundleValidator;
+import com.aidos.ari.service.PastConeSizes;
+import com.aidos.ari.service.DagPruner;
 import com.aidos.ari.service.Node;
 import com.aidos.ari.service.PD;
+import com.aidos.ari.service.ResponseCache;
+import com.aidos.ari.service.SolidityTracker;
+import com.aidos.ari.service.Subscriptions;
 import com.aidos.ari.service.TipsManager;
+import com.aidos.ari.service.TransactionRequester;
 import com.aidos.ari.service.storage.Storage;
 import com.sanityinc.jargs.CmdLineParser;
 import com.sanityinc.jargs.CmdLineParser.Option;
@@ -31,9 +40,20 @@ public class Main {
 		try {
 
 			Storage.instance().init();
+			Snapshot.init(Configuration.string(DefaultConfSettings.SNAPSHOT_FILE));
+			Milestone.init();
+			TransactionRequester.instance().init();
 			// Initialize without any peers
 			Node.instance().init();
+			BroadcastScheduler.instance().init();
+			PastConeSizes.instance().init();
+			ResponseCache.instance().init();
+			Subscriptions.instance().init();
+			BundleValidator.instance().init();
+			SolidityTracker.instance().init();
+			BulkSync.instance().init();
 			TipsManager.instance().init();
+			DagPruner.instance().init();
 			// Has to be before PD so API is reachable, but also last so API calls don't cause errors for uninitialized
 			// other commands.
 			API.instance().init();
@@ -63,6 +83,11 @@ public class Main {
 		final Option<Boolean> experimental = parser.addBooleanOption('e', "experimental");
 		final Option<Boolean> help = parser.addBooleanOption('h', "help");
 		final Option<String> local = parser.addStringOption('l', "local");
+		final Option<String> snapshot = parser.addStringOption('s', "snapshot");
+		final Option<Integer> pruningDepth = parser.addIntegerOption('k', "pruning-depth");
+		final Option<Integer> apiIoThreads = parser.addIntegerOption("api-io-threads");
+		final Option<Integer> apiWorkerThreads = parser.addIntegerOption("api-worker-threads");
+		final Option<Boolean> apiHttp2 = parser.addBooleanOption("api-http2");
 
 		try {
 			parser.parse(args);
@@ -117,6 +142,40 @@ public class Main {
 			Configuration.put(DefaultConfSettings.LOCAL, localIp);
 		}
 
+		final String snapshotFile = parser.getOptionValue(snapshot);
+		if (snapshotFile != null) {
+			log.info("Starting from snapshot file {}", snapshotFile);
+			Configuration.put(DefaultConfSettings.SNAPSHOT_FILE, snapshotFile);
+		}
+
+		final Integer vpruningDepth = parser.getOptionValue(pruningDepth);
+		if (vpruningDepth != null) {
+			if (vpruningDepth < 0) {
+				log.error("Invalid pruning depth: {}", vpruningDepth);
+				System.exit(2);
+			}
+			log.info("Pruning the transactions confirmed more than {} milestones ago", vpruningDepth);
+			Configuration.put(DefaultConfSettings.PRUNING_DEPTH, vpruningDepth.toString());
+		}
+
+		final Integer vapiIoThreads = parser.getOptionValue(apiIoThreads);
+		final Integer vapiWorkerThreads = parser.getOptionValue(apiWorkerThreads);
+		if ((vapiIoThreads != null && vapiIoThreads < 1) || (vapiWorkerThreads != null && vapiWorkerThreads < 1)) {
+			log.error("Invalid number of API threads");
+			System.exit(2);
+		}
+		if (vapiIoThreads != null) {
+			Configuration.put(DefaultConfSettings.API_IO_THREADS, vapiIoThreads.toString());
+		}
+		if (vapiWorkerThreads != null) {
+			Configuration.put(DefaultConfSettings.API_WORKER_THREADS, vapiWorkerThreads.toString());
+		}
+
+		if (parser.getOptionValue(apiHttp2) != null) {
+			log.info("API server accepting HTTP/2 (h2c) connections");
+			Configuration.put(DefaultConfSettings.API_HTTP2, "true");
+		}
+
 		final String vcors = parser.getOptionValue(cors);
 		if (vcors != null) {
 			log.debug("Enabled CORS with value : {} ", vcors);
@@ -144,7 +203,8 @@ public class Main {
 
 	private static void printUsage() {
 		log.info("Usage: java -jar {}-{}.jar " + "[{-r,--receiver-port} 14265] " + "[{-p,--peer-discovery}]"
-				+ "[{-w,--remote-wallet}]" + "[{-l,--local} ipv4/ipv6]" + "[{-c,--enabled-cors} *]" + "[{-d,--debug}]"
+				+ "[{-w,--remote-wallet}]" + "[{-l,--local} ipv4/ipv6]" + "[{-s,--snapshot} file]" + "[{-k,--pruning-depth} milestones]"
+				+ "[--api-io-threads n]" + "[--api-worker-threads n]" + "[--api-http2]" + "[{-c,--enabled-cors} *]" + "[{-d,--debug}]"
 				+ "[{-e,--experimental}]", NAME, VERSION);
 		System.exit(0);
 	}
@@ -158,8 +218,16 @@ public class Main {
 				// Needs to be before node so it can read peers and write them to file
 				PD.instance().shutdown();
 				API.instance().shutDown();
+				Subscriptions.instance().shutDown();
 				TipsManager.instance().shutDown();
+				PastConeSizes.instance().shutDown();
+				BundleValidator.instance().shutDown();
+				SolidityTracker.instance().shutDown();
+				BulkSync.instance().shutDown();
+				DagPruner.instance().shutDown();
+				BroadcastScheduler.instance().shutDown();
 				Node.instance().shutdown();
+				Milestone.shutdown();
 				Storage.instance().shutdown();
 
 			} catch (final Exception e) {
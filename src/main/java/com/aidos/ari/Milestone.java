@@ -1,13 +1,17 @@
 package com.aidos.ari;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
-import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -15,9 +19,12 @@ import com.aidos.ari.hash.Curl;
 import com.aidos.ari.hash.ISS;
 import com.aidos.ari.model.Hash;
 import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.SolidityTracker;
+import com.aidos.ari.service.Subscriptions;
 import com.aidos.ari.service.storage.AbstractStorage;
+import com.aidos.ari.service.storage.PostingsCursor;
+import com.aidos.ari.service.storage.Storage;
 import com.aidos.ari.service.storage.StorageAddresses;
-import com.aidos.ari.service.storage.StorageScratchpad;
 import com.aidos.ari.service.storage.StorageTransactions;
 import com.aidos.ari.utils.Converter;
 
@@ -31,128 +38,217 @@ public class Milestone {
 	public static final Hash COORDINATOR = new Hash(
 			"HZSMDORPCAFJJJNEEWZSP9OCQZAHCAVPBAXUTJKRCYZXMSNGERFZLQPNWOQQHK9RMJO9PNSVV9KR9DONH");
 
-	public static Hash latestMilestone = Hash.NULL_HASH;
-	public static Hash latestSolidSubmeshMilestone = Hash.NULL_HASH;
+	// Written together with the milestones map, where the hash of an index can be read consistently
+	public static volatile Hash latestMilestone = Hash.NULL_HASH;
+	public static volatile Hash latestSolidSubmeshMilestone = Hash.NULL_HASH;
 
 	public static final int MILESTONE_START_INDEX = 0;
 
-	public static int latestMilestoneIndex = MILESTONE_START_INDEX;
-	public static int latestSolidSubmeshMilestoneIndex = MILESTONE_START_INDEX;
+	public static volatile int latestMilestoneIndex = MILESTONE_START_INDEX;
+	public static volatile int latestSolidSubmeshMilestoneIndex = MILESTONE_START_INDEX;
 
-	private static final Set<Long> analyzedMilestoneCandidates = new HashSet<>();
-	private static final Map<Integer, Hash> milestones = new ConcurrentHashMap<>();
+	private static final String MILESTONES_FILE_NAME = "milestones.store";
 
-	public static void updateLatestMilestone() {
+	private static final int MILESTONE_CANDIDATES_BATCH_SIZE = 256;
 
-		for (final Long pointer : StorageAddresses.instance().addressesOf(COORDINATOR)) {
+	// Position of the next coordinator address posting to analyze, persisted with the milestones. Null until the
+	// coordinator address is stored. Only used with the Milestone lock held.
+	private static PostingsCursor milestoneCandidates;
+	// Set by the storage when a coordinator address posting is stored
+	private static volatile boolean newMilestoneCandidates = true;
 
-			if (analyzedMilestoneCandidates.add(pointer)) {
+	private static final Map<Integer, Hash> milestones = new ConcurrentHashMap<>();
 
-				final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
-				if (transaction.currentIndex == 0) {
+	public static void init() {
 
-					final int index = (int) Converter.longValue(transaction.trits(), Transaction.TAG_TRINARY_OFFSET,
-							15);
-					if (index > latestMilestoneIndex) {
-						log.info("index is " + index);
+		loadMilestones();
+		if (latestMilestoneIndex < Snapshot.milestoneIndex) {
+			milestones.put(Snapshot.milestoneIndex, Snapshot.milestone);
+			latestMilestone = Snapshot.milestone;
+			latestMilestoneIndex = Snapshot.milestoneIndex;
+		}
+		// The snapshot milestone is solid by definition, its past cone doesn't have to be stored
+		latestSolidSubmeshMilestone = Snapshot.milestone;
+		latestSolidSubmeshMilestoneIndex = Snapshot.milestoneIndex;
 
-						final Bundle bundle = new Bundle(transaction.bundle);
-						log.info("milestone tx num={}", bundle.getTransactions().size());
-						for (int i = 0; i < bundle.getTransactions().size(); i++) {
-							log.info("milestone tx{} num={}", i, bundle.getTransactions().get(i).size());
-						}
-						for (final List<Transaction> bundleTransactions : bundle.getTransactions()) {
-							if (bundleTransactions.get(0).pointer == transaction.pointer) {
-
-								final Transaction transaction2 = StorageTransactions.instance()
-										.loadTransaction(transaction.trunkTransactionPointer);
-								if (transaction2.type == AbstractStorage.FILLED_SLOT
-										&& transaction.branchTransactionPointer == transaction2.trunkTransactionPointer) {
-
-									final int[] trunkTransactionTrits = new int[Transaction.TRUNK_TRANSACTION_TRINARY_SIZE];
-									Converter.getTrits(transaction.trunkTransaction, trunkTransactionTrits);
-									final int[] signatureFragmentTrits = Arrays.copyOfRange(transaction.trits(),
-											Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET,
-											Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET
-													+ Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_SIZE);
-
-									final int[] hash = ISS.address(
-											ISS.digest(Arrays.copyOf(ISS.normalizedBundle(trunkTransactionTrits),
-													ISS.NUMBER_OF_FRAGMENT_CHUNKS), signatureFragmentTrits));
-									log.info("address is extracted");
-									int indexCopy = index;
-									for (int i = 0; i < 20; i++) {
-
-										final Curl curl = new Curl();
-										if ((indexCopy & 1) == 0) {
-											curl.absorb(hash, 0, hash.length);
-											curl.absorb(transaction2.trits(), i * Curl.HASH_LENGTH, Curl.HASH_LENGTH);
-										} else {
-											curl.absorb(transaction2.trits(), i * Curl.HASH_LENGTH, Curl.HASH_LENGTH);
-											curl.absorb(hash, 0, hash.length);
-										}
-										curl.squeeze(hash, 0, hash.length);
-
-										indexCopy >>= 1;
-									}
-
-									if ((new Hash(hash)).equals(COORDINATOR)) {
-										latestMilestone = new Hash(transaction.hash, 0, Transaction.HASH_SIZE);
-										latestMilestoneIndex = index;
-
-										milestones.put(latestMilestoneIndex, latestMilestone);
-
-									} else {
-										log.info("coordinator hash unmatched");
-									}
-								}
-								break;
-							}
-						}
-					}
-				}
+		Storage.instance().addListener((pointer, transaction) -> {
+			if (Arrays.equals(transaction.address, COORDINATOR.bytes())) {
+				newMilestoneCandidates = true;
 			}
-		}
+		});
+		log.info("Loaded milestone #{}", latestMilestoneIndex);
 	}
 
-	public static void updateLatestSolidSubmeshMilestone() {
-		for (int milestoneIndex = latestMilestoneIndex; milestoneIndex > latestSolidSubmeshMilestoneIndex; milestoneIndex--) {
-
-			final Hash milestone = milestones.get(milestoneIndex);
-			if (milestone != null) {
-
-				boolean solid = true;
+	public static void shutdown() {
+		saveMilestones();
+	}
 
-				synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
+	// Returns null if the milestone of that index hasn't been found
+	public static Hash milestone(final int index) {
+		return milestones.get(index);
+	}
 
-					StorageScratchpad.instance().clearAnalyzedTransactionsFlags();
+	public static synchronized void updateLatestMilestone() {
 
-					final Queue<Long> nonAnalyzedTransactions = new LinkedList<>();
-					nonAnalyzedTransactions.offer(StorageTransactions.instance().transactionPointer(milestone.bytes()));
-					Long pointer;
-					while ((pointer = nonAnalyzedTransactions.poll()) != null) {
+		// Reset before reading, a posting stored meanwhile sets it again
+		if (!newMilestoneCandidates) {
+			return;
+		}
+		newMilestoneCandidates = false;
+		if (milestoneCandidates == null) {
+			final long addressPointer = StorageAddresses.instance().addressPointer(COORDINATOR.bytes());
+			if (addressPointer == 0) {
+				return;
+			}
+			milestoneCandidates = PostingsCursor.start(addressPointer);
+		}
 
-						if (StorageScratchpad.instance().setAnalyzedTransactionFlag(pointer)) {
+		final int previousLatestMilestoneIndex = latestMilestoneIndex;
+
+		final long[] pointers = new long[MILESTONE_CANDIDATES_BATCH_SIZE];
+		int size;
+		do {
+			try {
+				size = StorageAddresses.instance().addressTransactions(milestoneCandidates, pointers, pointers.length);
+			} catch (final IllegalArgumentException e) {
+				log.error("Invalid milestone candidates position, all milestone candidates will be analyzed again", e);
+				milestoneCandidates = null;
+				newMilestoneCandidates = true;
+				return;
+			}
+			for (int i = 0; i < size; i++) {
+				analyzeMilestoneCandidate(pointers[i]);
+			}
+		} while (size == pointers.length);
 
-							final Transaction transaction2 = StorageTransactions.instance().loadTransaction(pointer);
-							if (transaction2.type == AbstractStorage.PREFILLED_SLOT) {
-								solid = false;
-								break;
+		if (latestMilestoneIndex != previousLatestMilestoneIndex) {
+			saveMilestones();
+			SolidityTracker.instance().wakeUp();
+			Subscriptions.instance().milestoneChanged(latestMilestone, latestMilestoneIndex);
+		}
+	}
 
+	private static void analyzeMilestoneCandidate(final long pointer) {
+
+		final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+		if (transaction.currentIndex == 0) {
+
+			final int index = (int) Converter.longValue(transaction.trits(), Transaction.TAG_TRINARY_OFFSET,
+					15);
+			if (index > latestMilestoneIndex) {
+				log.info("index is " + index);
+
+				final List<Transaction> bundleTransactions = Bundle.validatedTransactions(transaction);
+				if (bundleTransactions != null) {
+					log.info("milestone tx num={}", bundleTransactions.size());
+
+					final Transaction transaction2 = StorageTransactions.instance()
+							.loadTransaction(transaction.trunkTransactionPointer);
+					if (transaction2.type == AbstractStorage.FILLED_SLOT
+							&& transaction.branchTransactionPointer == transaction2.trunkTransactionPointer) {
+
+						final int[] trunkTransactionTrits = new int[Transaction.TRUNK_TRANSACTION_TRINARY_SIZE];
+						Converter.getTrits(transaction.trunkTransaction, trunkTransactionTrits);
+						final int[] signatureFragmentTrits = Arrays.copyOfRange(transaction.trits(),
+								Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET,
+								Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_OFFSET
+										+ Transaction.SIGNATURE_MESSAGE_FRAGMENT_TRINARY_SIZE);
+
+						final int[] hash = ISS.address(
+								ISS.digest(Arrays.copyOf(ISS.normalizedBundle(trunkTransactionTrits),
+										ISS.NUMBER_OF_FRAGMENT_CHUNKS), signatureFragmentTrits));
+						log.info("address is extracted");
+						int indexCopy = index;
+						for (int i = 0; i < 20; i++) {
+
+							final Curl curl = new Curl();
+							if ((indexCopy & 1) == 0) {
+								curl.absorb(hash, 0, hash.length);
+								curl.absorb(transaction2.trits(), i * Curl.HASH_LENGTH, Curl.HASH_LENGTH);
 							} else {
-								nonAnalyzedTransactions.offer(transaction2.trunkTransactionPointer);
-								nonAnalyzedTransactions.offer(transaction2.branchTransactionPointer);
+								curl.absorb(transaction2.trits(), i * Curl.HASH_LENGTH, Curl.HASH_LENGTH);
+								curl.absorb(hash, 0, hash.length);
 							}
+							curl.squeeze(hash, 0, hash.length);
+
+							indexCopy >>= 1;
+						}
+
+						if ((new Hash(hash)).equals(COORDINATOR)) {
+							final Hash milestone = new Hash(transaction.hash, 0, Transaction.HASH_SIZE);
+							milestones.put(index, milestone);
+							latestMilestone = milestone;
+							latestMilestoneIndex = index;
+
+						} else {
+							log.info("coordinator hash unmatched");
 						}
 					}
 				}
+			}
+		}
+	}
+
+	private static void loadMilestones() {
 
-				if (solid) {
-					latestSolidSubmeshMilestone = milestone;
-					latestSolidSubmeshMilestoneIndex = milestoneIndex;
-					return;
+		final Path path = Paths.get(MILESTONES_FILE_NAME);
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (BufferedReader br = Files.newBufferedReader(path)) {
+
+			milestoneCandidates = parseMilestoneCandidates(br.readLine().trim());
+			String line;
+			while ((line = br.readLine()) != null && !line.isEmpty()) {
+
+				final String[] values = line.split(" ");
+				final int index = Integer.parseInt(values[0]);
+				milestones.put(index, new Hash(values[1]));
+				if (index > latestMilestoneIndex) {
+					latestMilestone = milestones.get(index);
+					latestMilestoneIndex = index;
 				}
 			}
+		} catch (final IOException | RuntimeException e) {
+			log.error("Error reading milestones file, all milestone candidates will be analyzed again", e);
+			milestoneCandidates = null;
+			milestones.clear();
+			latestMilestone = Hash.NULL_HASH;
+			latestMilestoneIndex = MILESTONE_START_INDEX;
+		}
+	}
+
+	// "cellPointer offset", or the count of analyzed candidates of the older files, which are all analyzed again
+	private static PostingsCursor parseMilestoneCandidates(final String line) {
+		final String[] values = line.split(" ");
+		if (values.length != 2 || Long.parseLong(values[0]) == 0) {
+			return null;
+		}
+		return new PostingsCursor(Long.parseLong(values[0]), Integer.parseInt(values[1]));
+	}
+
+	private static synchronized void saveMilestones() {
+
+		final Path path = Paths.get(MILESTONES_FILE_NAME);
+		final Path tmpPath = Paths.get(MILESTONES_FILE_NAME + ".tmp");
+		try (BufferedWriter bw = Files.newBufferedWriter(tmpPath)) {
+
+			bw.write(milestoneCandidates == null ? "0 0"
+					: milestoneCandidates.getCellPointer() + " " + milestoneCandidates.getOffset());
+			bw.newLine();
+			for (final Map.Entry<Integer, Hash> milestone : new TreeMap<>(milestones).entrySet()) {
+				bw.write(milestone.getKey() + " " + milestone.getValue());
+				bw.newLine();
+			}
+		} catch (final IOException e) {
+			log.error("Error writing milestones file", e);
+			return;
+		}
+		try {
+			Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e) {
+			log.error("Error replacing milestones file", e);
 		}
 	}
+
 }
@@ -0,0 +1,137 @@
+package com.aidos.ari;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aidos.ari.conf.Configuration;
+
+/**
+ * Traffic counters of a peer, updated by the receiving and sending threads without locking. Rates are computed over
+ * the samples taken every few seconds by the node, covering the last NUMBER_OF_SAMPLES of them.
+ * The samples also update the score of the peer: the share of its packets that brought new valid transactions, times
+ * the share of the sends to it that succeeded, lowered by its connect latency. The counts are decayed with a half-life
+ * of SCORE_HALF_LIFE_MS so the score follows the recent behavior of the peer.
+ */
+public class PeerStatistics {
+
+	public static final int PACKETS_IN = 0, BYTES_IN = 1, PACKETS_OUT = 2, BYTES_OUT = 3, NEW_TRANSACTIONS = 4,
+			DUPLICATE_TRANSACTIONS = 5, INVALID_TRANSACTIONS = 6, SEND_FAILURES = 7, DROPPED_SENDS = 8,
+			CONNECTS = 9, CONNECT_TIME = 10;
+	public static final String[] COUNTER_NAMES = {"packetsIn", "bytesIn", "packetsOut", "bytesOut", "newTransactions",
+			"duplicateTransactions", "invalidTransactions", "sendFailures", "droppedSends", "connects", "connectTime"};
+
+	// Upper bounds of the connect latency buckets in ms, the last bucket holds the slower connects
+	public static final long[] LATENCY_BUCKET_BOUNDS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000,
+			Configuration.CONNECTION_TIMEOUT};
+
+	private static final int NUMBER_OF_SAMPLES = 12;
+
+	private static final long SCORE_HALF_LIFE_MS = 10 * 60 * 1000;
+	// Below that many decayed packets the usefulness of the peer isn't known yet
+	private static final double MIN_SCORED_PACKETS = 100;
+	// An invalid transaction cancels that many new ones
+	private static final double INVALID_TRANSACTION_PENALTY = 10;
+	// Connect latency that halves the score
+	private static final double LATENCY_SCALE_MS = 200;
+
+	private final LongAdder[] counters = new LongAdder[COUNTER_NAMES.length];
+	private final LongAdder[] latencyBuckets = new LongAdder[LATENCY_BUCKET_BOUNDS.length + 1];
+
+	// Ring of counter values, the oldest one is overwritten by the next sample
+	private final long[][] samples = new long[NUMBER_OF_SAMPLES][];
+	private final long[] sampleTimes = new long[NUMBER_OF_SAMPLES];
+	private int nextSample;
+
+	private final double[] decayedCounters = new double[COUNTER_NAMES.length];
+	private volatile double score = 1;
+	private volatile boolean scored;
+
+	public PeerStatistics() {
+		for (int i = 0; i < counters.length; i++) {
+			counters[i] = new LongAdder();
+		}
+		for (int i = 0; i < latencyBuckets.length; i++) {
+			latencyBuckets[i] = new LongAdder();
+		}
+	}
+
+	public void add(final int counter, final long value) {
+		counters[counter].add(value);
+	}
+
+	public void increment(final int counter) {
+		counters[counter].increment();
+	}
+
+	public long value(final int counter) {
+		return counters[counter].sum();
+	}
+
+	public void connected(final long latency) {
+		counters[CONNECTS].increment();
+		counters[CONNECT_TIME].add(latency);
+		int bucket = 0;
+		while (bucket < LATENCY_BUCKET_BOUNDS.length && latency > LATENCY_BUCKET_BOUNDS[bucket]) {
+			bucket++;
+		}
+		latencyBuckets[bucket].increment();
+	}
+
+	public long[] latencyHistogram() {
+		final long[] histogram = new long[latencyBuckets.length];
+		for (int i = 0; i < histogram.length; i++) {
+			histogram[i] = latencyBuckets[i].sum();
+		}
+		return histogram;
+	}
+
+	public synchronized void sample() {
+		final long[] values = new long[counters.length];
+		for (int i = 0; i < values.length; i++) {
+			values[i] = counters[i].sum();
+		}
+		final long now = System.currentTimeMillis();
+		final int previousSample = (nextSample + NUMBER_OF_SAMPLES - 1) % NUMBER_OF_SAMPLES;
+		if (samples[previousSample] != null) {
+			updateScore(samples[previousSample], values, now - sampleTimes[previousSample]);
+		}
+		samples[nextSample] = values;
+		sampleTimes[nextSample] = now;
+		nextSample = (nextSample + 1) % NUMBER_OF_SAMPLES;
+	}
+
+	private void updateScore(final long[] previousValues, final long[] values, final long elapsedTime) {
+		final double decay = Math.pow(0.5, (double) elapsedTime / SCORE_HALF_LIFE_MS);
+		for (int i = 0; i < decayedCounters.length; i++) {
+			decayedCounters[i] = decayedCounters[i] * decay + (values[i] - previousValues[i]);
+		}
+
+		scored = decayedCounters[PACKETS_IN] >= MIN_SCORED_PACKETS;
+		// Unknown peers get the benefit of the doubt
+		final double usefulness = !scored ? 1 : Math.max(0, decayedCounters[NEW_TRANSACTIONS]
+				- INVALID_TRANSACTION_PENALTY * decayedCounters[INVALID_TRANSACTIONS]) / decayedCounters[PACKETS_IN];
+		final double attempts = decayedCounters[CONNECTS] + decayedCounters[SEND_FAILURES];
+		final double reliability = attempts == 0 ? 1 : Math.max(0, 1 - decayedCounters[SEND_FAILURES] / attempts);
+		final double latency = decayedCounters[CONNECTS] == 0 ? 0 : decayedCounters[CONNECT_TIME] / decayedCounters[CONNECTS];
+		score = usefulness * reliability * LATENCY_SCALE_MS / (LATENCY_SCALE_MS + latency);
+	}
+
+	// Between 0 and 1, higher is better
+	public double score() {
+		return score;
+	}
+
+	// False until enough packets have been received from the peer to judge it
+	public boolean isScored() {
+		return scored;
+	}
+
+	// Per second, over the sampled window, 0 until two samples have been taken
+	public synchronized double rate(final int counter) {
+		final int oldest = samples[nextSample] == null ? 0 : nextSample;
+		final int latest = (nextSample + NUMBER_OF_SAMPLES - 1) % NUMBER_OF_SAMPLES;
+		if (samples[oldest] == null || samples[latest] == null || sampleTimes[latest] == sampleTimes[oldest]) {
+			return 0;
+		}
+		return (samples[latest][counter] - samples[oldest][counter]) * 1000.0 / (sampleTimes[latest] - sampleTimes[oldest]);
+	}
+}
@@ -1,14 +1,21 @@
 package com.aidos.ari;
 
-import com.aidos.ari.conf.Configuration;
 import com.aidos.ari.conf.ipType;
+import com.aidos.ari.utils.SeenFilter;
+import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,10 +24,30 @@ public class Peers {
 	private final InetSocketAddress address;
 	private final ipType type;
 
-	private int numberOfAllTransactions;
-	private int numberOfNewTransactions;
-	private int numberOfInvalidTransactions;
-	private ExecutorService exec = Executors.newFixedThreadPool(10);
+	// Shared by all the peers, each peer has at most one sending task at a time so a slow peer can't starve the others
+	private static final int NUMBER_OF_SENDING_THREADS = 4;
+	private static volatile ExecutorService sendingExecutor = newSendingExecutor();
+	private static final int MAX_QUEUED_SENDS = 100;
+	// Sends per task, then the task goes back to the end of the executor queue
+	private static final int SENDS_PER_TASK = 10;
+	// Shorter than the connection timeout, a peer that can't be connected to ends its task and is backed off, its
+	// sends being dropped meanwhile
+	private static final int CONNECT_TIMEOUT = 1000;
+	private static final long MIN_BACKOFF_MS = 1000;
+	private static final long MAX_BACKOFF_MS = 60000;
+
+	private final PeerStatistics statistics = new PeerStatistics();
+
+	// New sends are dropped while the queue is full
+	private final BlockingQueue<List<byte[]>> queuedSends = new ArrayBlockingQueue<>(MAX_QUEUED_SENDS);
+	private final AtomicBoolean sending = new AtomicBoolean();
+	private volatile boolean closed;
+	private volatile long backoffEnd;
+	// Only used by the sending task, of which there is one at a time
+	private long backoff;
+
+	// Transactions this peer has sent us or we have sent it recently
+	private final SeenFilter seenTransactions = new SeenFilter();
 
 	// public Peers(final InetSocketAddress address) {
 	// this.address = address;
@@ -41,24 +68,119 @@ public class Peers {
 		return false;
 	}
 
-	public void send(final byte[] packet) {
-		exec.submit(() -> {
-			DataOutputStream dos = null;
-			try (Socket s = new Socket();) {
-				s.connect(address, Configuration.CONNECTION_TIMEOUT);
-				dos = new DataOutputStream(s.getOutputStream());
+	public boolean send(final byte[] packet) {
+		return send(Collections.singletonList(packet));
+	}
+
+	// All the packets are written on one connection. Returns false if the send was dropped.
+	public boolean send(final List<byte[]> packets) {
+		if (closed || System.currentTimeMillis() < backoffEnd || !queuedSends.offer(packets)) {
+			statistics.increment(PeerStatistics.DROPPED_SENDS);
+			return false;
+		}
+		scheduleSending();
+		return true;
+	}
+
+	public boolean isSendQueueFull() {
+		return queuedSends.remainingCapacity() == 0;
+	}
+
+	public int queuedSendsSize() {
+		return queuedSends.size();
+	}
+
+	// Called once the peer has been removed, its queued sends are dropped
+	public void close() {
+		closed = true;
+		queuedSends.clear();
+	}
+
+	// Sending can be restarted after a shutdown
+	public static synchronized void initSending() {
+		if (sendingExecutor.isShutdown()) {
+			sendingExecutor = newSendingExecutor();
+		}
+	}
+
+	public static synchronized void shutdownSending() {
+		sendingExecutor.shutdownNow();
+	}
+
+	private static ExecutorService newSendingExecutor() {
+		return Executors.newFixedThreadPool(NUMBER_OF_SENDING_THREADS, runnable -> {
+			final Thread thread = new Thread(runnable, "Peer Sender");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	private void scheduleSending() {
+		if (!closed && !queuedSends.isEmpty() && System.currentTimeMillis() >= backoffEnd
+				&& sending.compareAndSet(false, true)) {
+			try {
+				sendingExecutor.execute(this::sendQueued);
+			} catch (final RejectedExecutionException e) {
+				sending.set(false);
+			}
+		}
+	}
+
+	private void sendQueued() {
+		try {
+			List<byte[]> packets;
+			for (int i = 0; i < SENDS_PER_TASK && !closed && (packets = queuedSends.poll()) != null; i++) {
+				if (!write(packets)) {
+					backOff();
+					break;
+				}
+				backoff = 0;
+			}
+		} finally {
+			sending.set(false);
+		}
+		// Sends queued while the flag was set
+		scheduleSending();
+	}
+
+	// Drops the queued sends and those of the next "backoff" ms, which doubles with each failure in a row
+	private void backOff() {
+		backoff = backoff == 0 ? MIN_BACKOFF_MS : Math.min(2 * backoff, MAX_BACKOFF_MS);
+		backoffEnd = System.currentTimeMillis() + backoff;
+		int dropped = 0;
+		while (queuedSends.poll() != null) {
+			dropped++;
+		}
+		statistics.add(PeerStatistics.DROPPED_SENDS, dropped);
+	}
+
+	// Returns false if the packets couldn't be sent
+	private boolean write(final List<byte[]> packets) {
+		DataOutputStream dos = null;
+		try (Socket s = new Socket();) {
+			final long connectStart = System.nanoTime();
+			s.connect(address, CONNECT_TIMEOUT);
+			statistics.connected((System.nanoTime() - connectStart) / 1000000);
+			dos = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+			for (final byte[] packet : packets) {
 				dos.write(packet);
-			} catch (final IOException e) {
-				log.debug("Can't send to {} : {}", address, e.getMessage());
-			} finally {
-				try {
-					if (dos != null) {
-						dos.close();
-					}
-				} catch (final IOException ee) {
+			}
+			dos.flush();
+			statistics.add(PeerStatistics.PACKETS_OUT, packets.size());
+			statistics.add(PeerStatistics.BYTES_OUT, dos.size());
+			return true;
+		} catch (final IOException e) {
+			statistics.increment(PeerStatistics.SEND_FAILURES);
+			log.debug("Can't send to {} : {}", address, e.getMessage());
+			return false;
+		} finally {
+			try {
+				if (dos != null) {
+					dos.close();
 				}
+			} catch (final IOException ee) {
 			}
-		});
+		}
 	}
 
 	@Override
@@ -85,27 +207,45 @@ public class Peers {
 		return type;
 	}
 
-	public void incAllTransactions() {
-		numberOfAllTransactions++;
+	public void transactionSeen(final byte[] transactionHash) {
+		seenTransactions.add(transactionHash);
+	}
+
+	// May return true for a transaction the peer hasn't seen, rarely
+	public boolean hasSeenTransaction(final byte[] transactionHash) {
+		return seenTransactions.mightContain(transactionHash);
+	}
+
+	public PeerStatistics getStatistics() {
+		return statistics;
+	}
+
+	public void incAllTransactions(final int packetSize) {
+		statistics.increment(PeerStatistics.PACKETS_IN);
+		statistics.add(PeerStatistics.BYTES_IN, packetSize);
 	}
 
 	public void incNewTransactions() {
-		numberOfNewTransactions++;
+		statistics.increment(PeerStatistics.NEW_TRANSACTIONS);
+	}
+
+	public void incDuplicateTransactions() {
+		statistics.increment(PeerStatistics.DUPLICATE_TRANSACTIONS);
 	}
 
 	public void incInvalidTransactions() {
-		numberOfInvalidTransactions++;
+		statistics.increment(PeerStatistics.INVALID_TRANSACTIONS);
 	}
 
-	public int getNumberOfAllTransactions() {
-		return numberOfAllTransactions;
+	public long getNumberOfAllTransactions() {
+		return statistics.value(PeerStatistics.PACKETS_IN);
 	}
 
-	public int getNumberOfInvalidTransactions() {
-		return numberOfInvalidTransactions;
+	public long getNumberOfInvalidTransactions() {
+		return statistics.value(PeerStatistics.INVALID_TRANSACTIONS);
 	}
 
-	public int getNumberOfNewTransactions() {
-		return numberOfNewTransactions;
+	public long getNumberOfNewTransactions() {
+		return statistics.value(PeerStatistics.NEW_TRANSACTIONS);
 	}
 }
@@ -1,12 +1,58 @@
 package com.aidos.ari;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageApprovers;
+import com.aidos.ari.service.storage.StorageScratchpad;
+import com.aidos.ari.service.storage.StorageTransactions;
 
+/**
+ * Ledger state the node starts from: the genesis balances, or a snapshot of the balances at a milestone exported by
+ * another node. A snapshot file holds, one entry per line:
+ * - the milestone index and hash
+ * - the number of addresses, then the address and balance of each of them
+ * - the number of solid entry points, then their hashes
+ * - the SHA-256 of all the previous lines
+ * Solid entry points are the transactions of the milestone's past cone that were still approved by transactions
+ * outside of it. Walks stop there, their effect is part of the initial state and their past cone may not be stored.
+ */
 public class Snapshot {
 
+    private static final Logger log = LoggerFactory.getLogger(Snapshot.class);
+
+    public static final String SNAPSHOT_FILE_NAME = "snapshot.store";
+    public static final String EXPORTED_SNAPSHOT_FILE_NAME = "snapshot.export";
+    private static final String CHECKSUM_PREFIX = "SHA-256 ";
+
     public static final Map<Hash, Long> initialState = new HashMap<>();
+    private static final long TOTAL_SUPPLY;
+
+    public static volatile Hash milestone = Hash.NULL_HASH;
+    public static volatile int milestoneIndex = Milestone.MILESTONE_START_INDEX;
+    // Replaced as a whole when a newer snapshot is adopted
+    private static volatile Set<Hash> solidEntryPoints = Collections.emptySet();
 
     static {
     	initialState.put(new Hash("OZZIZKFIQPGBLZKWLTBNMFKKTHFKYOYTRMGJU9AJTVRI9BUKULPQFFPZT9AIT9GTQSZLKKLVLXDVCYLZZ"), 55964400000000L);
@@ -53,5 +99,305 @@ public class Snapshot {
     	initialState.put(new Hash("JDEUWDBRNPBPWHZXCBUDLQRAZYUHAVXWGWLVPYPDPBZQTMPCWADXQDWWFQSDKYVXNASTKKHVUFXFZOMBE"), 57549100000000L);
     	initialState.put(new Hash("AUVBUAHWJHDXZWKKMCSOCVNSYMLQYGRSWEDOGFYKWYTNJRSJCHNLANZ9B9QXWKMRZHBCHCEVIWEQJKRDZ"), 56076525000000L);
     	initialState.put(new Hash("NYFB9URUDMCZCZLXNQFVLKFAQUANROBHWYNQMLIGRXSNOSZGEFCVCVCKPKYSPQERYTWCLIDHVXBYAJIKF"), 56253525000000L);
+
+    	TOTAL_SUPPLY = initialState.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * Loads the given snapshot file and keeps a copy of it for the next starts, or loads that copy if no file is
+     * given. Without either, the node starts from the genesis. A copy of a newer milestone, e.g. adopted by the
+     * pruning, is kept, as the past cone of its milestone may not be stored anymore.
+     */
+    public static void init(final String snapshotFileName) throws IOException {
+
+        final Path path = Paths.get(SNAPSHOT_FILE_NAME);
+        final int storedMilestoneIndex;
+        if (Files.exists(path)) {
+            load(path);
+            storedMilestoneIndex = milestoneIndex;
+        } else {
+            storedMilestoneIndex = -1;
+        }
+
+        if (snapshotFileName != null) {
+            load(Paths.get(snapshotFileName));
+            if (milestoneIndex >= storedMilestoneIndex) {
+                Files.copy(Paths.get(snapshotFileName), path, StandardCopyOption.REPLACE_EXISTING);
+            } else {
+                log.info("Keeping the snapshot of milestone #{}, newer than the given one", storedMilestoneIndex);
+                load(path);
+            }
+        }
+    }
+
+    public static boolean isSolidEntryPoint(final byte[] transactionHash) {
+        final Set<Hash> entryPoints = solidEntryPoints;
+        return !entryPoints.isEmpty() && entryPoints.contains(new Hash(transactionHash, 0, Transaction.HASH_SIZE));
+    }
+
+    private static void load(final Path path) throws IOException {
+
+        final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(lines.size() - 1).equals(CHECKSUM_PREFIX + checksum(lines.subList(0, lines.size() - 1)))) {
+            throw new IOException("Invalid checksum of snapshot file " + path);
+        }
+
+        final Map<Hash, Long> state = new HashMap<>();
+        final Set<Hash> entryPoints = new HashSet<>();
+        final String[] milestoneValues;
+        try {
+            int line = 0;
+            milestoneValues = lines.get(line++).split(" ");
+            for (int i = Integer.parseInt(lines.get(line++)); i-- > 0;) {
+                final String[] values = lines.get(line++).split(" ");
+                state.put(new Hash(values[0]), Long.parseLong(values[1]));
+            }
+            for (int i = Integer.parseInt(lines.get(line++)); i-- > 0;) {
+                entryPoints.add(new Hash(lines.get(line++)));
+            }
+        } catch (final RuntimeException e) {
+            throw new IOException("Invalid snapshot file " + path, e);
+        }
+        validate(state);
+
+        initialState.clear();
+        initialState.putAll(state);
+        milestoneIndex = Integer.parseInt(milestoneValues[0]);
+        milestone = new Hash(milestoneValues[1]);
+        solidEntryPoints = entryPoints;
+
+        log.info("Loaded snapshot of milestone #{}: {} addresses, {} solid entry points", milestoneIndex,
+                initialState.size(), entryPoints.size());
+    }
+
+    /**
+     * Writes the ledger state at the latest solid milestone to EXPORTED_SNAPSHOT_FILE_NAME. Walks the whole past cone
+     * of the milestone down to the current initial state, so it's meant to be run once in a while.
+     */
+    public static synchronized int export() throws IOException {
+
+        final Hash exportedMilestone = Milestone.latestSolidSubmeshMilestone;
+        final int exportedMilestoneIndex = Milestone.latestSolidSubmeshMilestoneIndex;
+        synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
+            final ConeWalk walk = new ConeWalk(exportedMilestone, exportedMilestoneIndex,
+                    StorageScratchpad.instance().getAnalyzedTransactionsFlags());
+            walk.walk(Integer.MAX_VALUE);
+            write(Paths.get(EXPORTED_SNAPSHOT_FILE_NAME), walk.lines());
+        }
+        log.info("Exported snapshot of milestone #{}", exportedMilestoneIndex);
+        return exportedMilestoneIndex;
+    }
+
+    /**
+     * Makes the ledger state at the milestone of the complete walk the initial state, also for the next starts. The
+     * transactions of the milestone's past cone that aren't solid entry points can then be pruned, no walk reaches
+     * them anymore.
+     */
+    public static synchronized void adopt(final ConeWalk walk) throws IOException {
+
+        final List<String> lines = walk.lines();
+        // Balances are read under the same monitor, so they never see the new initial state with the old entry points
+        synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
+            write(Paths.get(SNAPSHOT_FILE_NAME), lines);
+            load(Paths.get(SNAPSHOT_FILE_NAME));
+        }
+    }
+
+    /**
+     * Walk of the past cone of a milestone down to the solid entry points, which gives the ledger state and the solid
+     * entry points of a snapshot at that milestone. The cone is flagged in the given flags, that nothing else may use
+     * meanwhile, so the walk can be done a batch at a time while the node runs, and the cone can be read back without
+     * keeping its transactions.
+     */
+    public static class ConeWalk {
+
+        // Cells whose flag is looked at by a batch for each cell it walks
+        private static final int SCANNED_CELLS_PER_WALKED_CELL = 1024;
+
+        private final Hash milestone;
+        private final int milestoneIndex;
+        private final long milestonePointer;
+        private final ByteBuffer flags;
+        // The cone is older than the walk, so it's below the storage size at its start
+        private final long endPointer;
+
+        private final Map<Hash, Long> state;
+        private final Set<Hash> entryPoints = new HashSet<>();
+        private final Queue<Long> nonAnalyzedTransactions = new ArrayDeque<>();
+        private long nextConeTransaction, nextPrunableTransaction;
+
+        public ConeWalk(final Hash milestone, final int milestoneIndex, final ByteBuffer flags) {
+
+            this.milestone = milestone;
+            this.milestoneIndex = milestoneIndex;
+            this.flags = flags;
+
+            milestonePointer = StorageTransactions.instance().transactionPointer(milestone.bytes());
+            if (milestonePointer <= 0) {
+                throw new IllegalStateException("Milestone #" + milestoneIndex + " is not stored");
+            }
+            synchronized (Storage.class) {
+                endPointer = StorageTransactions.transactionsNextPointer;
+            }
+            synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
+                state = new HashMap<>(initialState);
+            }
+            StorageScratchpad.clearFlags(flags, endPointer);
+
+            entryPoints.add(milestone);
+            nonAnalyzedTransactions.offer(milestonePointer);
+            nextConeTransaction = nextPrunableTransaction = Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET;
+        }
+
+        public Hash milestone() {
+            return milestone;
+        }
+
+        public int milestoneIndex() {
+            return milestoneIndex;
+        }
+
+        /**
+         * Walks at most "maxNumberOfTransactions" transactions of the cone, then looks for the solid entry points among
+         * them. Returns true once the walk is complete.
+         */
+        public boolean walk(final int maxNumberOfTransactions) {
+
+            int numberOfTransactions = 0;
+            Long pointer;
+            while (numberOfTransactions < maxNumberOfTransactions && (pointer = nonAnalyzedTransactions.poll()) != null) {
+
+                if (StorageScratchpad.setFlag(flags, pointer)) {
+
+                    numberOfTransactions++;
+                    final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+                    if (isSolidEntryPoint(transaction.hash)) {
+                        continue;
+                    }
+                    if (transaction.type == Storage.PREFILLED_SLOT) {
+                        throw new IllegalStateException("Milestone #" + milestoneIndex + " is not solid");
+                    }
+
+                    if (transaction.currentIndex == 0) {
+
+                        final List<Transaction> bundleTransactions = Bundle.validatedTransactions(transaction);
+                        if (bundleTransactions == null) {
+                            throw new IllegalStateException("Invalid bundle confirmed by milestone #" + milestoneIndex);
+                        }
+                        bundleTransactions.stream().filter(bundleTransaction -> bundleTransaction.value != 0).forEach(bundleTransaction -> 
+                            state.merge(new Hash(bundleTransaction.address), bundleTransaction.value, Long::sum));
+                    }
+                    nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+                    nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+                }
+            }
+            if (!nonAnalyzedTransactions.isEmpty()) {
+                return false;
+            }
+
+            // The whole cone is flagged, so approvers without the flag are outside of it
+            final long scanEndPointer = Math.min(endPointer, nextConeTransaction
+                    + (long) maxNumberOfTransactions * SCANNED_CELLS_PER_WALKED_CELL * Storage.CELL_SIZE);
+            CONE_LOOP: while (numberOfTransactions < maxNumberOfTransactions
+                    && (nextConeTransaction = StorageScratchpad.nextFlag(flags, nextConeTransaction, scanEndPointer)) < scanEndPointer) {
+
+                final long coneTransaction = nextConeTransaction;
+                nextConeTransaction += Storage.CELL_SIZE;
+                numberOfTransactions++;
+
+                final byte[] hash = new byte[Transaction.HASH_SIZE];
+                StorageTransactions.instance().transactionHash(coneTransaction, hash);
+                for (final long approver : StorageApprovers.instance().approveeTransactions(StorageApprovers.instance().approveePointer(hash))) {
+                    if (!StorageScratchpad.flag(flags, approver)) {
+                        entryPoints.add(new Hash(hash, 0, Transaction.HASH_SIZE));
+                        continue CONE_LOOP;
+                    }
+                }
+            }
+            return nextConeTransaction >= endPointer;
+        }
+
+        /**
+         * Fills "pointers" with the next transactions of the complete walk that aren't solid entry points, looking at a
+         * bounded number of cells. Returns how many were found, or -1 once there are no more.
+         */
+        public int prunableTransactions(final long[] pointers) {
+
+            if (nextPrunableTransaction >= endPointer) {
+                return -1;
+            }
+            final long scanEndPointer = Math.min(endPointer, nextPrunableTransaction
+                    + (long) pointers.length * SCANNED_CELLS_PER_WALKED_CELL * Storage.CELL_SIZE);
+            final byte[] hash = new byte[Transaction.HASH_SIZE];
+            int size = 0;
+            while (size < pointers.length
+                    && (nextPrunableTransaction = StorageScratchpad.nextFlag(flags, nextPrunableTransaction, scanEndPointer)) < scanEndPointer) {
+
+                final long coneTransaction = nextPrunableTransaction;
+                nextPrunableTransaction += Storage.CELL_SIZE;
+
+                StorageTransactions.instance().transactionHash(coneTransaction, hash);
+                if (coneTransaction != milestonePointer && !entryPoints.contains(new Hash(hash, 0, Transaction.HASH_SIZE))) {
+                    pointers[size++] = coneTransaction;
+                }
+            }
+            return size;
+        }
+
+        private List<String> lines() throws IOException {
+
+            state.values().removeIf(value -> value == 0);
+            validate(state);
+
+            final List<String> lines = new ArrayList<>();
+            lines.add(milestoneIndex + " " + milestone);
+            final Map<String, Long> sortedState = new TreeMap<>();
+            state.forEach((address, balance) -> sortedState.put(address.toString(), balance));
+            lines.add(Integer.toString(sortedState.size()));
+            sortedState.forEach((address, balance) -> lines.add(address + " " + balance));
+            lines.add(Integer.toString(entryPoints.size()));
+            entryPoints.stream().map(Hash::toString).sorted().forEach(lines::add);
+            lines.add(CHECKSUM_PREFIX + checksum(lines));
+            return lines;
+        }
+    }
+
+    private static void write(final Path path, final List<String> lines) throws IOException {
+
+        final Path tmpPath = Paths.get(path + ".tmp");
+        Files.write(tmpPath, lines, StandardCharsets.UTF_8);
+        Files.move(tmpPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void validate(final Map<Hash, Long> state) throws IOException {
+
+        long supply = 0;
+        for (final long balance : state.values()) {
+            if (balance < 0) {
+                throw new IOException("Ledger inconsistency detected: negative balance");
+            }
+            supply += balance;
+        }
+        if (supply != TOTAL_SUPPLY) {
+            throw new IOException("Ledger inconsistency detected: total supply is " + supply + " instead of " + TOTAL_SUPPLY);
+        }
+    }
+
+    private static String checksum(final List<String> lines) {
+
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (final String line : lines) {
+                digest.update((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            final StringBuilder checksum = new StringBuilder();
+            for (final byte value : digest.digest()) {
+                checksum.append(String.format("%02x", value));
+            }
+            return checksum.toString();
+
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
\ No newline at end of file
@@ -13,7 +13,13 @@ public class Configuration {
 
 	public enum DefaultConfSettings {
 		API_PORT, API_HOST, MESH_RECEIVER_PORT, CORS_ENABLED, PEERS, LOCAL, // not used yet
-		REMOTEAPI, REMOTEWALLET, DEBUG, EXPERIMENTAL // experimental features.
+		REMOTEAPI, REMOTEWALLET, DEBUG, EXPERIMENTAL, // experimental features.
+		SNAPSHOT_FILE, // not set unless the node has to start from a snapshot
+		PRUNING_DEPTH, // number of solid milestones whose past cones are kept, 0 keeps everything
+		API_IO_THREADS, API_WORKER_THREADS, // threads of the API server accepting and decoding the requests
+		API_BUFFER_SIZE, API_DIRECT_BUFFERS, // buffers of the connections to the API server
+		API_HTTP2, // also accepts HTTP/2 without TLS (h2c), by upgrade or prior knowledge
+		SIGNATURE_THREADS // threads verifying the signatures of the bundles
 	}
 	
 	public static final int CONNECTION_TIMEOUT = 3000; // in ms
@@ -30,6 +36,15 @@ public class Configuration {
 		conf.put(DefaultConfSettings.REMOTEWALLET.name(), "attachToMesh interruptAttachingToMesh");
 		conf.put(DefaultConfSettings.EXPERIMENTAL.name(), "false");
 		conf.put(DefaultConfSettings.LOCAL.name(), "");
+		conf.put(DefaultConfSettings.PRUNING_DEPTH.name(), "0");
+		// Same defaults as Undertow
+		final int processors = Runtime.getRuntime().availableProcessors();
+		conf.put(DefaultConfSettings.API_IO_THREADS.name(), String.valueOf(Math.max(processors, 2)));
+		conf.put(DefaultConfSettings.API_WORKER_THREADS.name(), String.valueOf(Math.max(processors, 2) * 8));
+		conf.put(DefaultConfSettings.API_BUFFER_SIZE.name(), "16384");
+		conf.put(DefaultConfSettings.API_DIRECT_BUFFERS.name(), "true");
+		conf.put(DefaultConfSettings.API_HTTP2.name(), "false");
+		conf.put(DefaultConfSettings.SIGNATURE_THREADS.name(), String.valueOf(processors));
 	}
 
 	public static String allSettings() {
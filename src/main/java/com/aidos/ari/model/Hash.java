@@ -32,7 +32,7 @@ public class Hash {
     }
 
     public Hash(final String trytes) {
-        this(Converter.trits(trytes));
+        this(Converter.bytes(trytes, 0, Curl.HASH_LENGTH / Converter.NUMBER_OF_TRITS_IN_A_TRYTE));
     }
 
     //
@@ -55,7 +55,7 @@ public class Hash {
 
     @Override
     public String toString() {
-        return Converter.trytes(trits());
+        return Converter.trytes(bytes, 0, Curl.HASH_LENGTH / Converter.NUMBER_OF_TRITS_IN_A_TRYTE);
     }
     
     public byte[] bytes() {
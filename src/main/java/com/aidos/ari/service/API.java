@@ -1,29 +1,37 @@
 package com.aidos.ari.service;
 
 import static io.undertow.Handlers.path;
+import static io.undertow.Handlers.websocket;
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
-import org.apache.commons.io.IOUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xnio.channels.StreamSinkChannel;
+import org.xnio.IoUtils;
 import org.xnio.streams.ChannelInputStream;
 import com.aidos.ari.Main;
 import com.aidos.ari.Milestone;
@@ -39,29 +47,36 @@ import com.aidos.ari.model.Transaction;
 import com.aidos.ari.service.dto.AbstractResponse;
 import com.aidos.ari.service.dto.AccessLimitedResponse;
 import com.aidos.ari.service.dto.AddedPeersResponse;
+import com.aidos.ari.service.dto.ApiRequest;
 import com.aidos.ari.service.dto.AttachToMeshResponse;
+import com.aidos.ari.service.dto.CachedResponse;
 import com.aidos.ari.service.dto.ErrorResponse;
 import com.aidos.ari.service.dto.ExceptionResponse;
+import com.aidos.ari.service.dto.ExportSnapshotResponse;
 import com.aidos.ari.service.dto.FindTransactionsResponse;
 import com.aidos.ari.service.dto.GetBalancesResponse;
 import com.aidos.ari.service.dto.GetInclusionStatesResponse;
 import com.aidos.ari.service.dto.GetNodeInfoResponse;
+import com.aidos.ari.service.dto.GetPeerStatisticsResponse;
 import com.aidos.ari.service.dto.GetPeersResponse;
 import com.aidos.ari.service.dto.GetTipsResponse;
 import com.aidos.ari.service.dto.GetTransactionsToApproveResponse;
 import com.aidos.ari.service.dto.GetTrytesResponse;
 import com.aidos.ari.service.dto.RetrieveIpResponse;
+import com.aidos.ari.service.dto.ServiceUnavailableResponse;
+import com.aidos.ari.service.dto.StreamingResponse;
+import com.aidos.ari.service.dto.TimeoutResponse;
 import com.aidos.ari.service.storage.Storage;
-import com.aidos.ari.service.storage.StorageAddresses;
-import com.aidos.ari.service.storage.StorageApprovers;
-import com.aidos.ari.service.storage.StorageBundle;
 import com.aidos.ari.service.storage.StorageScratchpad;
-import com.aidos.ari.service.storage.StorageTags;
 import com.aidos.ari.service.storage.StorageTransactions;
 import com.aidos.ari.utils.Converter;
+import com.aidos.ari.utils.LongHashSet;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
 import io.undertow.Undertow;
+import io.undertow.UndertowOptions;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.HeaderMap;
@@ -69,24 +84,13 @@ import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.Methods;
 import io.undertow.util.MimeMappings;
+import io.undertow.util.Protocols;
 import io.undertow.util.StatusCodes;
 
-@SuppressWarnings("unchecked")
 public class API {
 
 	private static final Logger log = LoggerFactory.getLogger(API.class);
 
-	// Max amount of peers that a node will accept.
-	private static final int MAX_PEERS = 12;
-
-	private final static int HASH_SIZE = 81;
-	private final static int TRYTES_SIZE = 2673;
-
-	private final static char ZERO_LENGTH_ALLOWED = 'Y';
-	private final static char ZERO_LENGTH_NOT_ALLOWED = 'N';
-
-	private Pattern trytesPattern = Pattern.compile("[9A-Z]*");
-
 	private Undertow server;
 
 	private final Gson gson = new GsonBuilder().create();
@@ -94,13 +98,87 @@ public class API {
 
 	private final AtomicInteger counter = new AtomicInteger(0);
 
+	private static final long NODE_INFO_MAX_AGE_MS = 1000;
+
+	// States of a running command, see execute()
+	private static final int RUNNING = 0, STREAMING = 1, RESPONDED = 2, TIMED_OUT = 3;
+
+	/**
+	 * Commands run on the bounded executor of their lane, so a client flooding the node with heavy commands only fills
+	 * the queue of their lane. The commands used by the peer discovery of the other nodes have a lane of their own.
+	 * A command that waits and runs longer than the timeout of its lane gets a timeout error, and one that finds the
+	 * queue of its lane full is rejected right away.
+	 */
+	private enum Lane {
+
+		PEERS(2, 50, 10_000), CHEAP(2, 100, 10_000), GRAPH(2, 20, 60_000), POW(1, 5, 10 * 60_000);
+
+		private final int numberOfThreads;
+		private final int queueSize;
+		private final long timeout;
+
+		Lane(final int numberOfThreads, final int queueSize, final long timeout) {
+			this.numberOfThreads = numberOfThreads;
+			this.queueSize = queueSize;
+			this.timeout = timeout;
+		}
+
+		private static Lane of(final String command) {
+			if (command == null) {
+				return CHEAP;
+			}
+			switch (command) {
+			case "ping":
+			case "addPeer":
+			case "getPeerAddresses":
+				return PEERS;
+			case "getTransactionsToApprove":
+			case "getBalances":
+			case "getInclusionStates":
+			case "findTransactions":
+			case "getTrytes":
+			case "storeTransactions":
+			case "broadcastTransactions":
+			case "exportSnapshot":
+				return GRAPH;
+			case "attachToMesh":
+				return POW;
+			default:
+				return CHEAP;
+			}
+		}
+	}
+
+	private final Map<Lane, ThreadPoolExecutor> laneExecutors = new EnumMap<>(Lane.class);
+	private ScheduledExecutorService timeoutScheduler;
+
 	public void init() throws IOException {
+		for (final Lane lane : Lane.values()) {
+			final String threadName = "API " + lane.name();
+			laneExecutors.put(lane, new ThreadPoolExecutor(lane.numberOfThreads, lane.numberOfThreads, 0,
+					TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(lane.queueSize), runnable -> {
+						final Thread thread = new Thread(runnable, threadName);
+						thread.setDaemon(true);
+						return thread;
+					}, new ThreadPoolExecutor.AbortPolicy()));
+		}
+		timeoutScheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			final Thread thread = new Thread(runnable, "API Timeout");
+			thread.setDaemon(true);
+			return thread;
+		});
+
 		final int apiPort = Configuration.integer(DefaultConfSettings.API_PORT);
 		final String apiHost = Configuration.string(DefaultConfSettings.API_HOST);
 
 		log.debug("Binding JSON-REST API Undertown server on {}:{}", apiHost, apiPort);
 
 		server = Undertow.builder().addHttpListener(apiPort, apiHost)
+				.setIoThreads(Configuration.integer(DefaultConfSettings.API_IO_THREADS))
+				.setWorkerThreads(Configuration.integer(DefaultConfSettings.API_WORKER_THREADS))
+				.setBufferSize(Configuration.integer(DefaultConfSettings.API_BUFFER_SIZE))
+				.setDirectBuffers(Configuration.booling(DefaultConfSettings.API_DIRECT_BUFFERS))
+				.setServerOption(UndertowOptions.ENABLE_HTTP2, Configuration.booling(DefaultConfSettings.API_HTTP2))
 				.setHandler(path().addPrefixPath("/", new HttpHandler() {
 					@Override
 					public void handleRequest(final HttpServerExchange exchange) throws Exception {
@@ -126,31 +204,115 @@ public class API {
 						}
 						processRequest(exchange);
 					}
-				})).build();
+				}).addPrefixPath("/ws", websocket(Subscriptions.instance()))).build();
 		server.start();
 	}
 
+	// Runs on a worker thread of Undertow, which only decodes the request and hands it to its lane
 	private void processRequest(final HttpServerExchange exchange) throws IOException {
 		final ChannelInputStream cis = new ChannelInputStream(exchange.getRequestChannel());
 		exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "application/json");
 
 		final long beginningTime = System.currentTimeMillis();
-		final String body = IOUtils.toString(cis, StandardCharsets.UTF_8);
-		final AbstractResponse response = process(body, exchange.getSourceAddress());
-		sendResponse(exchange, response, beginningTime);
+		final ApiRequest request;
+		try {
+			// Decoded as the body arrives
+			request = ApiRequest.read(new InputStreamReader(cis, StandardCharsets.UTF_8));
+		} catch (final IOException | RuntimeException e) {
+			sendResponse(exchange, ExceptionResponse.create("Invalid request payload: " + e.getLocalizedMessage()),
+					beginningTime, () -> true);
+			return;
+		}
+
+		final Lane lane = Lane.of(request.getCommand());
+		final ThreadPoolExecutor laneExecutor = laneExecutors.get(lane);
+		// The exchange is handed over once this handler returns, a full lane is answered from the worker thread
+		final Executor executor = task -> {
+			try {
+				laneExecutor.execute(task);
+			} catch (final RejectedExecutionException e) {
+				log.debug("Lane {} is full, rejecting command '{}'", lane, request.getCommand());
+				respond(exchange, ServiceUnavailableResponse.create("The node is too busy to run COMMAND "
+						+ request.getCommand() + ", try again later."), beginningTime);
+			}
+		};
+		exchange.dispatch(executor, () -> execute(exchange, request, lane, beginningTime));
 	}
 
-	private AbstractResponse process(final String requestString, InetSocketAddress sourceAddress)
-			throws UnsupportedEncodingException {
+	private void execute(final HttpServerExchange exchange, final ApiRequest request, final Lane lane,
+			final long beginningTime) {
 
+		final long remainingTime = beginningTime + lane.timeout - System.currentTimeMillis();
+		if (remainingTime <= 0) {
+			respond(exchange, timeoutResponse(request), beginningTime);
+			return;
+		}
+
+		// Whichever of the command and the timeout comes first responds, the other one is dropped. The command isn't
+		// interrupted, interrupts would close the channels of the storage, only the proof of work can be cancelled. A
+		// streamed response loads its content while it is written, so the timeout stays until it is written and then
+		// aborts it. The timeout is handled by the IO thread of the exchange, so the scheduler never waits on a client.
+		final AtomicInteger state = new AtomicInteger(RUNNING);
+		final ScheduledFuture<?> timeout = timeoutScheduler.schedule(() -> {
+			if (state.compareAndSet(RUNNING, TIMED_OUT)) {
+				if (lane == Lane.POW) {
+					pearlDiver.cancel();
+				}
+				exchange.getIoThread().execute(() -> sendTimeoutResponse(exchange, request, beginningTime));
+			} else if (state.compareAndSet(STREAMING, TIMED_OUT)) {
+				log.debug("COMMAND {} has timed out while streaming its response", request.getCommand());
+				exchange.getIoThread().execute(() -> IoUtils.safeClose(exchange.getConnection()));
+			}
+		}, remainingTime, TimeUnit.MILLISECONDS);
+
+		final AbstractResponse response = process(request, exchange.getSourceAddress());
+		final boolean streaming = response instanceof StreamingResponse;
+		if (!state.compareAndSet(RUNNING, streaming ? STREAMING : RESPONDED)) {
+			log.debug("COMMAND {} has completed after its timeout", request.getCommand());
+			return;
+		}
+		respond(exchange, response, beginningTime, () -> !streaming || state.compareAndSet(STREAMING, RESPONDED));
+		timeout.cancel(false);
+	}
+
+	private static AbstractResponse timeoutResponse(final ApiRequest request) {
+		return TimeoutResponse.create("COMMAND " + request.getCommand() + " has timed out.");
+	}
+
+	private void respond(final HttpServerExchange exchange, final AbstractResponse response, final long beginningTime) {
+		respond(exchange, response, beginningTime, () -> true);
+	}
+
+	private void respond(final HttpServerExchange exchange, final AbstractResponse response, final long beginningTime,
+			final BooleanSupplier written) {
 		try {
+			sendResponse(exchange, response, beginningTime, written);
+		} catch (final IOException | RuntimeException e) {
+			log.error("Error sending response", e);
+			exchange.endExchange();
+		}
+	}
 
-			final Map<String, Object> request = gson.fromJson(requestString, Map.class);
-			if (request == null) {
-				return ExceptionResponse.create("Invalid request payload: '" + requestString + "'");
-			}
+	// Runs on the IO thread of the exchange, the response is small enough to be sent without blocking
+	private void sendTimeoutResponse(final HttpServerExchange exchange, final ApiRequest request,
+			final long beginningTime) {
+		try {
+			final AbstractResponse response = timeoutResponse(request);
+			response.setDuration((int) (System.currentTimeMillis() - beginningTime));
+			exchange.setStatusCode(statusCode(response));
+			setupResponseHeaders(exchange);
+			exchange.getResponseSender().send(gson.toJson(response));
+		} catch (final RuntimeException e) {
+			log.error("Error sending response", e);
+			IoUtils.safeClose(exchange.getConnection());
+		}
+	}
 
-			final String command = (String) request.get("command");
+	private AbstractResponse process(final ApiRequest request, InetSocketAddress sourceAddress) {
+
+		try {
+
+			final String command = request.getCommand();
 			if (command == null) {
 				return ErrorResponse.create("COMMAND parameter has not been specified in the request.");
 			}
@@ -174,11 +336,11 @@ public class API {
 				return RetrieveIpResponse.create(sourceAddress.getAddress().getHostAddress());
 			}
 			case "addPeer": {
-				if (!request.containsKey("uri") && !request.containsKey("type")) {
+				if (!request.has("uri") || !request.has("type")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				final String uri = (String) request.get("uri");
-				final ipType type = ipType.valueOf((String) request.get("type"));
+				final String uri = request.getUri();
+				final ipType type = ipType.valueOf(request.getType());
 				// returns true if valid request, means uri has same ip than sourceAddress
 				// also don't want to add localhost
 				// also only add if remote API is reachable
@@ -203,99 +365,106 @@ public class API {
 				return getPeerAddressStatement();
 			}
 			case "attachToMesh": {
-				if (!request.containsKey("trunkTransaction") || !request.containsKey("branchTransaction")
-						|| !request.containsKey("minWeightMagnitude") || !request.containsKey("trytes")) {
+				if (!request.has("trunkTransaction") || !request.has("branchTransaction")
+						|| !request.has("minWeightMagnitude") || !request.has("trytes")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				if (!validTrytes((String) request.get("trunkTransaction"), HASH_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
+				if (!request.isValid("trunkTransaction")) {
 					return ErrorResponse.create("Invalid trunkTransaction hash.");
 				}
-				if (!validTrytes((String) request.get("branchTransaction"), HASH_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
+				if (!request.isValid("branchTransaction")) {
 					return ErrorResponse.create("Invalid branchTransaction hash.");
 				}
-				final Hash trunkTransaction = new Hash((String) request.get("trunkTransaction"));
-				final Hash branchTransaction = new Hash((String) request.get("branchTransaction"));
-				final int minWeightMagnitude = ((Double) request.get("minWeightMagnitude")).intValue();
-				final List<String> trytes = (List<String>) request.get("trytes");
-				for (final String tryt : trytes) {
-					if (!validTrytes(tryt, TRYTES_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-						return ErrorResponse.create("Invalid trytes input.");
-					}
+				if (!request.isValid("trytes")) {
+					return ErrorResponse.create("Invalid trytes input.");
 				}
-				return attachToMeshStatement(trunkTransaction, branchTransaction, minWeightMagnitude, trytes);
+				return attachToMeshStatement(request.getTrunkTransaction(), request.getBranchTransaction(),
+						request.getMinWeightMagnitude(), request.getTrytes());
 			}
 			case "broadcastTransactions": {
-				if (!request.containsKey("trytes")) {
+				if (!request.has("trytes")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				final List<String> trytes = (List<String>) request.get("trytes");
-				for (final String tryt : trytes) {
-					if (!validTrytes(tryt, TRYTES_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-						return ErrorResponse.create("Invalid trytes input.");
-					}
+				if (!request.isValid("trytes")) {
+					return ErrorResponse.create("Invalid trytes input.");
 				}
+				final List<String> trytes = request.getTrytes();
 				log.debug("Invoking 'broadcastTransactions' with {}", trytes);
 				return broadcastTransactionStatement(trytes);
 			}
 			case "findTransactions": {
-				if (!request.containsKey("bundles") && !request.containsKey("addresses") && !request.containsKey("tags")
-						&& !request.containsKey("approvees")) {
+				if (!request.has("bundles") && !request.has("addresses") && !request.has("tags")
+						&& !request.has("approvees")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
+				for (final String parameter : new String[] {"bundles", "addresses", "tags", "approvees"}) {
+					if (!request.isValid(parameter)) {
+						return ErrorResponse.create("Invalid " + parameter + " input.");
+					}
+				}
+				if (request.has("limit") && request.getLimit() <= 0) {
+					return ErrorResponse.create("Invalid limit input.");
+				}
 				return findTransactionStatement(request);
 			}
 			case "getBalances": {
-				if (!request.containsKey("addresses") || !request.containsKey("threshold")) {
+				if (!request.has("addresses") || !request.has("threshold")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				final List<String> addresses = (List<String>) request.get("addresses");
-				for (final String address : addresses) {
-					if (!validTrytes(address, HASH_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-						return ErrorResponse.create("Invalid addresses input.");
-					}
+				if (!request.isValid("addresses")) {
+					return ErrorResponse.create("Invalid addresses input.");
 				}
-				final int threshold = ((Double) request.get("threshold")).intValue();
-				return getBalancesStatement(addresses, threshold);
+				return cached(
+						ResponseCache.instance().milestoneKey(command, request.getAddresses(), request.getThreshold()),
+						Long.MAX_VALUE, () -> getBalancesStatement(request.getAddresses(), request.getThreshold()));
 			}
 			case "getInclusionStates": {
-				if (!request.containsKey("transactions") || !request.containsKey("tips")) {
+				if (!request.has("transactions") || !request.has("tips")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				final List<String> trans = (List<String>) request.get("transactions");
-				final List<String> tps = (List<String>) request.get("tips");
-
-				for (final String tx : trans) {
-					if (!validTrytes(tx, HASH_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-						return ErrorResponse.create("Invalid transactions input.");
-					}
+				if (!request.isValid("transactions")) {
+					return ErrorResponse.create("Invalid transactions input.");
 				}
-				for (final String ti : tps) {
-					if (!validTrytes(ti, HASH_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-						return ErrorResponse.create("Invalid tips input.");
-					}
+				if (!request.isValid("tips")) {
+					return ErrorResponse.create("Invalid tips input.");
 				}
 
 				if (invalidSubmeshStatus()) {
 					return ErrorResponse
 							.create("This operations cannot be executed: The Submesh has not been updated yet.");
 				}
-				return getInclusionStateStatement(trans, tps);
+				// The past cone of the tips doesn't change, but the snapshot it's walked down to does
+				return cached(
+						ResponseCache.instance().milestoneKey(command, request.getTransactions(), request.getTips()),
+						Long.MAX_VALUE, () -> getInclusionStateStatement(request.getTransactions(), request.getTips()));
 			}
 			case "getNodeInfo": {
-				return GetNodeInfoResponse.create(Main.NAME, Main.VERSION, Runtime.getRuntime().availableProcessors(),
-						Runtime.getRuntime().freeMemory(), System.getProperty("java.version"),
-						Runtime.getRuntime().maxMemory(), Runtime.getRuntime().totalMemory(), Milestone.latestMilestone,
-						Milestone.latestMilestoneIndex, Milestone.latestSolidSubmeshMilestone,
-						Milestone.latestSolidSubmeshMilestoneIndex, Node.instance().howManyPeers(),
-						Node.instance().queuedTransactionsSize(), System.currentTimeMillis(),
-						StorageTransactions.instance().tips().size(),
-						StorageScratchpad.instance().getNumberOfTransactionsToRequest());
+				// Also holds the memory and the time, only cached shortly
+				return cached(ResponseCache.instance().storeKey(command), NODE_INFO_MAX_AGE_MS,
+						() -> GetNodeInfoResponse.create(Main.NAME, Main.VERSION,
+								Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().freeMemory(),
+								System.getProperty("java.version"), Runtime.getRuntime().maxMemory(),
+								Runtime.getRuntime().totalMemory(), Milestone.latestMilestone,
+								Milestone.latestMilestoneIndex, Milestone.latestSolidSubmeshMilestone,
+								Milestone.latestSolidSubmeshMilestoneIndex, peerBroadcasts(Node.instance().getPeers()),
+								Node.instance().queuedTransactionsSize(),
+								BroadcastScheduler.instance().droppedTransactionsSize(), System.currentTimeMillis(),
+								StorageTransactions.instance().tips().size(),
+								TransactionRequester.instance().numberOfTransactionsToRequest(),
+								ResponseCache.instance().hits(), ResponseCache.instance().misses(),
+								ResponseCache.instance().size()));
+			}
+			case "getPeerStatistics": {
+				return GetPeerStatisticsResponse.create(Node.instance().getPeers());
 			}
 			case "getTips": {
-				return getTipsStatement();
+				return cached(ResponseCache.instance().storeKey(command), Long.MAX_VALUE, this::getTipsStatement);
 			}
 			case "getTransactionsToApprove": {
-				final int depth = ((Double) request.get("depth")).intValue();
+				if (!request.has("depth")) {
+					return ErrorResponse.create("Invalid parameters.");
+				}
+				final int depth = request.getDepth();
 				if (invalidSubmeshStatus()) {
 					return ErrorResponse
 							.create("This operations cannot be executed: The Submesh has not been updated yet.");
@@ -303,18 +472,13 @@ public class API {
 				return getTransactionToApproveStatement(depth);
 			}
 			case "getTrytes": {
-				if (!request.containsKey("hashes")) {
+				if (!request.has("hashes")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				final List<String> hashes = (List<String>) request.get("hashes");
-				if (hashes == null) {
-					return ErrorResponse.create("Wrong arguments.");
-				}
-				for (final String hash : hashes) {
-					if (!validTrytes(hash, HASH_SIZE, ZERO_LENGTH_ALLOWED)) {
-						return ErrorResponse.create("Invalid hash input.");
-					}
+				if (!request.isValid("hashes")) {
+					return ErrorResponse.create("Invalid hash input.");
 				}
+				final List<Hash> hashes = request.getHashes();
 				log.debug("Executing getTrytesStatement: {}", hashes);
 				return getTrytesStatement(hashes);
 			}
@@ -323,13 +487,27 @@ public class API {
 				return AbstractResponse.createEmptyResponse();
 			}
 			case "storeTransactions": {
-				if (!request.containsKey("trytes")) {
+				if (!request.has("trytes")) {
 					return ErrorResponse.create("Invalid parameters.");
 				}
-				List<String> trytes = (List<String>) request.get("trytes");
+				if (!request.isValid("trytes")) {
+					return ErrorResponse.create("Invalid trytes input.");
+				}
+				final List<String> trytes = request.getTrytes();
 				log.debug("Invoking 'storeTransactions' with {}", trytes);
 				return storeTransactionStatement(trytes);
 			}
+			case "exportSnapshot": {
+				// Writes a file on the node, so only local calls are accepted
+				if (!addressIsLoopBack) {
+					return AccessLimitedResponse.create("COMMAND " + command + " is not available on this node");
+				}
+				if (invalidSubmeshStatus()) {
+					return ErrorResponse
+							.create("This operations cannot be executed: The Submesh has not been updated yet.");
+				}
+				return ExportSnapshotResponse.create(Snapshot.EXPORTED_SNAPSHOT_FILE_NAME, Snapshot.export());
+			}
 			default:
 				return ErrorResponse.create("Command [" + command + "] is unknown");
 			}
@@ -345,15 +523,13 @@ public class API {
 		return (Milestone.latestSolidSubmeshMilestoneIndex == Milestone.MILESTONE_START_INDEX);
 	}
 
-	private AbstractResponse getTrytesStatement(List<String> hashes) {
-		final List<String> elements = new LinkedList<>();
-		for (final String hash : hashes) {
-			final Transaction transaction = StorageTransactions.instance().loadTransaction((new Hash(hash)).bytes());
-			if (transaction != null) {
-				elements.add(Converter.trytes(transaction.trits()));
-			}
-		}
-		return GetTrytesResponse.create(elements);
+	private AbstractResponse getTrytesStatement(List<Hash> hashes) {
+		// Loaded while the response is written
+		return GetTrytesResponse.create(() -> hashes.stream()
+				.map(hash -> StorageTransactions.instance().loadTransaction(hash.bytes()))
+				.filter(transaction -> transaction != null).map(transaction -> Converter.trytes(transaction.bytes, 0,
+						Transaction.TRINARY_SIZE / Converter.NUMBER_OF_TRITS_IN_A_TRYTE))
+				.iterator());
 	}
 
 	private synchronized AbstractResponse getTransactionToApproveStatement(final int depth) {
@@ -368,16 +544,37 @@ public class API {
 		return GetTransactionsToApproveResponse.create(trunkTransactionToApprove, branchTransactionToApprove);
 	}
 
+	// Errors aren't cached, the statement runs again on the next request
+	private AbstractResponse cached(final String key, final long maxAge, final Supplier<AbstractResponse> statement) {
+		final JsonObject cachedResponse = ResponseCache.instance().get(key, maxAge);
+		if (cachedResponse != null) {
+			return CachedResponse.create(cachedResponse);
+		}
+		final AbstractResponse response = statement.get();
+		if (response instanceof ErrorResponse || response instanceof ExceptionResponse) {
+			return response;
+		}
+		final JsonObject serializedResponse = gson.toJsonTree(response).getAsJsonObject();
+		ResponseCache.instance().put(key, serializedResponse);
+		return CachedResponse.create(serializedResponse);
+	}
+
 	private AbstractResponse getTipsStatement() {
 		return GetTipsResponse.create(
 				StorageTransactions.instance().tips().stream().map(Hash::toString).collect(Collectors.toList()));
 	}
 
+	private static GetNodeInfoResponse.PeerBroadcast[] peerBroadcasts(final List<Peers> peers) {
+		return peers.stream()
+				.map(peer -> GetNodeInfoResponse.PeerBroadcast.create(PD.getHostURL(peer.getAddress()),
+						BroadcastScheduler.instance().queuedTransactionsSize(peer),
+						BroadcastScheduler.instance().droppedTransactionsSize(peer),
+						BroadcastScheduler.instance().sendRate(peer)))
+				.toArray(GetNodeInfoResponse.PeerBroadcast[]::new);
+	}
+
 	private AbstractResponse storeTransactionStatement(final List<String> trys) {
 		for (final String trytes : trys) {
-			if (!validTrytes(trytes, TRYTES_SIZE, ZERO_LENGTH_NOT_ALLOWED)) {
-				return ErrorResponse.create("Invalid trytes input.");
-			}
 			final Transaction transaction = new Transaction(Converter.trits(trytes));
 			StorageTransactions.instance().storeTransaction(transaction.hash, transaction, false);
 		}
@@ -388,126 +585,98 @@ public class API {
 		return GetPeersResponse.create(Node.instance().getPeersWithoutMilestone());
 	}
 
-	private AbstractResponse getInclusionStateStatement(final List<String> trans, final List<String> tps) {
-
-		final List<Hash> transactions = trans.stream().map(s -> new Hash(s)).collect(Collectors.toList());
-		final List<Hash> tips = tps.stream().map(s -> new Hash(s)).collect(Collectors.toList());
-
-		int numberOfNonMetTransactions = transactions.size();
-		final boolean[] inclusionStates = new boolean[numberOfNonMetTransactions];
-
-		synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
-
-			StorageScratchpad.instance().clearAnalyzedTransactionsFlags();
-
-			final Queue<Long> nonAnalyzedTransactions = new LinkedList<>();
-			for (final Hash tip : tips) {
-
-				final long pointer = StorageTransactions.instance().transactionPointer(tip.bytes());
-				if (pointer <= 0) {
-					return ErrorResponse.create("One of the tips absents");
-				}
-				nonAnalyzedTransactions.offer(pointer);
-			}
-
-			{
-				Long pointer;
-				MAIN_LOOP: while ((pointer = nonAnalyzedTransactions.poll()) != null) {
-
-					if (StorageScratchpad.instance().setAnalyzedTransactionFlag(pointer)) {
-
-						final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
-						if (transaction.type == Storage.PREFILLED_SLOT) {
-							return ErrorResponse.create("The Submesh is not solid");
-						} else {
-
-							final Hash transactionHash = new Hash(transaction.hash, 0, Transaction.HASH_SIZE);
-							for (int i = 0; i < inclusionStates.length; i++) {
-
-								if (!inclusionStates[i] && transactionHash.equals(transactions.get(i))) {
+	// The requested transactions are resolved to pointers once and looked up in a set, so the walk costs the same for
+	// one or thousands of them, and it stops as soon as all of them are met. The walk keeps its own visited set instead
+	// of the flags of the scratchpad, so it runs alongside the other walks of the node.
+	private AbstractResponse getInclusionStateStatement(final List<Hash> transactions, final List<Hash> tips) {
 
-									inclusionStates[i] = true;
-
-									if (--numberOfNonMetTransactions <= 0) {
-										break MAIN_LOOP;
-									}
-								}
-							}
-							nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
-							nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
-						}
-					}
-				}
-				return GetInclusionStatesResponse.create(inclusionStates);
+		final long[] transactionPointers = new long[transactions.size()];
+		final LongHashSet nonMetTransactions = new LongHashSet(transactions.size());
+		for (int i = 0; i < transactionPointers.length; i++) {
+			// Transactions that aren't stored can't be included and aren't searched for
+			transactionPointers[i] = StorageTransactions.instance().transactionPointer(transactions.get(i).bytes());
+			if (transactionPointers[i] > 0) {
+				nonMetTransactions.add(transactionPointers[i]);
 			}
 		}
-	}
+		int numberOfNonMetTransactions = nonMetTransactions.size();
+
+		long[] nonAnalyzedTransactions = new long[Math.max(tips.size(), 64)];
+		int numberOfNonAnalyzedTransactions = 0;
+		for (final Hash tip : tips) {
 
-	private AbstractResponse findTransactionStatement(final Map<String, Object> request) {
-		final Set<Long> bundlesTransactions = new HashSet<>();
-		if (request.containsKey("bundles")) {
-			for (final String bundle : (List<String>) request.get("bundles")) {
-				bundlesTransactions.addAll(StorageBundle.instance()
-						.bundleTransactions(StorageBundle.instance().bundlePointer((new Hash(bundle)).bytes())));
+			final long pointer = StorageTransactions.instance().transactionPointer(tip.bytes());
+			if (pointer <= 0) {
+				return ErrorResponse.create("One of the tips absents");
 			}
+			nonAnalyzedTransactions[numberOfNonAnalyzedTransactions++] = pointer;
 		}
 
-		final Set<Long> addressesTransactions = new HashSet<>();
-		if (request.containsKey("addresses")) {
-			final List<String> addresses = (List<String>) request.get("addresses");
-			log.debug("Searching: {}", addresses.stream().reduce((a, b) -> a += ',' + b));
+		final LongHashSet analyzedTransactions = new LongHashSet();
+		final LongHashSet metTransactions = new LongHashSet(numberOfNonMetTransactions);
+		while (numberOfNonMetTransactions > 0 && numberOfNonAnalyzedTransactions > 0) {
 
-			for (final String address : addresses) {
-				if (address.length() != 81) {
-					log.error("Address {} doesn't look a valid address", address);
-				}
-				addressesTransactions.addAll(StorageAddresses.instance()
-						.addressTransactions(StorageAddresses.instance().addressPointer((new Hash(address)).bytes())));
+			final long pointer = nonAnalyzedTransactions[--numberOfNonAnalyzedTransactions];
+			if (pointer <= 0 || !analyzedTransactions.add(pointer)) {
+				continue;
 			}
-		}
 
-		final Set<Long> tagsTransactions = new HashSet<>();
-		if (request.containsKey("tags")) {
-			for (String tag : (List<String>) request.get("tags")) {
-				while (tag.length() < Curl.HASH_LENGTH / Converter.NUMBER_OF_TRITS_IN_A_TRYTE) {
-					tag += Converter.TRYTE_ALPHABET.charAt(0);
+			final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+			final boolean solidEntryPoint = Snapshot.isSolidEntryPoint(transaction.hash);
+			if (transaction.type == Storage.PREFILLED_SLOT && !solidEntryPoint) {
+				return ErrorResponse.create("The Submesh is not solid");
+			}
+			if (nonMetTransactions.contains(pointer) && metTransactions.add(pointer)) {
+				numberOfNonMetTransactions--;
+			}
+			if (!solidEntryPoint) {
+				if (numberOfNonAnalyzedTransactions + 2 > nonAnalyzedTransactions.length) {
+					nonAnalyzedTransactions = Arrays.copyOf(nonAnalyzedTransactions, nonAnalyzedTransactions.length * 2);
 				}
-				tagsTransactions.addAll(StorageTags.instance()
-						.tagTransactions(StorageTags.instance().tagPointer((new Hash(tag)).bytes())));
+				nonAnalyzedTransactions[numberOfNonAnalyzedTransactions++] = transaction.trunkTransactionPointer;
+				nonAnalyzedTransactions[numberOfNonAnalyzedTransactions++] = transaction.branchTransactionPointer;
 			}
 		}
 
-		final Set<Long> approveeTransactions = new HashSet<>();
-
-		if (request.containsKey("approvees")) {
-			for (final String approvee : (List<String>) request.get("approvees")) {
-				approveeTransactions.addAll(StorageApprovers.instance().approveeTransactions(
-						StorageApprovers.instance().approveePointer((new Hash(approvee)).bytes())));
-			}
+		final boolean[] inclusionStates = new boolean[transactionPointers.length];
+		for (int i = 0; i < inclusionStates.length; i++) {
+			inclusionStates[i] = metTransactions.contains(transactionPointers[i]);
 		}
+		return GetInclusionStatesResponse.create(inclusionStates);
+	}
 
-		// need refactoring
-		final Set<Long> foundTransactions = bundlesTransactions.isEmpty() ? (addressesTransactions.isEmpty()
-				? (tagsTransactions.isEmpty()
-						? (approveeTransactions.isEmpty() ? new HashSet<>() : approveeTransactions) : tagsTransactions)
-				: addressesTransactions) : bundlesTransactions;
-
-		if (!addressesTransactions.isEmpty()) {
-			foundTransactions.retainAll(addressesTransactions);
-		}
-		if (!tagsTransactions.isEmpty()) {
-			foundTransactions.retainAll(tagsTransactions);
-		}
-		if (!approveeTransactions.isEmpty()) {
-			foundTransactions.retainAll(approveeTransactions);
+	// With a limit or a cursor the transactions are paged, otherwise they are all returned
+	private AbstractResponse findTransactionStatement(final ApiRequest request) {
+		final TransactionQuery query = new TransactionQuery()
+				.bundles(request.getBundles())
+				.addresses(request.getAddresses())
+				.tags(request.getTags())
+				.approvees(request.getApprovees());
+
+		final long[] foundTransactions;
+		String cursor = null;
+		// A limit asks for a page, of at most MAX_PAGE_SIZE transactions in the order they were stored, along with the
+		// cursor of the next one. Without it all the matches are returned, in pointer order.
+		if (request.has("limit") || request.has("cursor")) {
+			final TransactionQuery.Page page;
+			try {
+				page = query.page(request.has("limit") ? request.getLimit() : TransactionQuery.MAX_PAGE_SIZE,
+						request.getCursor());
+			} catch (final IllegalArgumentException e) {
+				return ErrorResponse.create("Invalid cursor input.");
+			}
+			foundTransactions = page.transactions;
+			cursor = page.cursor;
+		} else {
+			foundTransactions = query.run();
 		}
 
-		final List<String> elements = foundTransactions.stream()
-				.map(pointer -> new Hash(StorageTransactions.instance().loadTransaction(pointer).hash, 0,
-						Transaction.HASH_SIZE).toString())
-				.collect(Collectors.toCollection(LinkedList::new));
-
-		return FindTransactionsResponse.create(elements);
+		// Only the hashes are read, while the response is written
+		return FindTransactionsResponse.create(() -> Arrays.stream(foundTransactions).mapToObj(pointer -> {
+			final byte[] hash = new byte[Transaction.HASH_SIZE];
+			StorageTransactions.instance().transactionHash(pointer, hash);
+			return new Hash(hash, 0, Transaction.HASH_SIZE).toString();
+		}).iterator(), cursor);
 	}
 
 	private AbstractResponse broadcastTransactionStatement(final List<String> trytes2) {
@@ -519,36 +688,41 @@ public class API {
 		return AbstractResponse.createEmptyResponse();
 	}
 
-	private AbstractResponse getBalancesStatement(final List<String> addrss, final int threshold) {
+	private AbstractResponse getBalancesStatement(final List<Hash> addresses, final int threshold) {
 
 		if (threshold <= 0 || threshold > 100) {
 			return ErrorResponse.create("Illegal 'threshold'.");
 		}
 
-		final List<Hash> addresses = addrss.stream().map(address -> (new Hash(address)))
-				.collect(Collectors.toCollection(LinkedList::new));
-
 		final Map<Hash, Long> balances = new HashMap<>();
-		for (final Hash address : addresses) {
-			balances.put(address,
-					Snapshot.initialState.containsKey(address) ? Snapshot.initialState.get(address) : Long.valueOf(0));
-		}
-
 		final Hash milestone = Milestone.latestSolidSubmeshMilestone;
 		final int milestoneIndex = Milestone.latestSolidSubmeshMilestoneIndex;
 
 		synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
 
+			// The initial state and the solid entry points only change together under this monitor
+			for (final Hash address : addresses) {
+				balances.put(address,
+						Snapshot.initialState.containsKey(address) ? Snapshot.initialState.get(address) : Long.valueOf(0));
+			}
+
 			StorageScratchpad.instance().clearAnalyzedTransactionsFlags();
 
-			final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(
-					Collections.singleton(StorageTransactions.instance().transactionPointer(milestone.bytes())));
+			final Queue<Long> nonAnalyzedTransactions = new LinkedList<>();
+			final long milestonePointer = StorageTransactions.instance().transactionPointer(milestone.bytes());
+			// The balances of a snapshot milestone that hasn't been received yet are the initial state
+			if (milestonePointer > 0) {
+				nonAnalyzedTransactions.offer(milestonePointer);
+			}
 			Long pointer;
 			while ((pointer = nonAnalyzedTransactions.poll()) != null) {
 
 				if (StorageScratchpad.instance().setAnalyzedTransactionFlag(pointer)) {
 
 					final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+					if (Snapshot.isSolidEntryPoint(transaction.hash)) {
+						continue;
+					}
 
 					if (transaction.value != 0) {
 
@@ -654,11 +828,14 @@ public class API {
 		// -1 maxed, 0 already added, 1 added now
 		int numberOfAddedPeers = 0;
 		// add only up to maxPeers
-		if (Node.instance().getPeers().size() < MAX_PEERS) {
+		if (Node.instance().getPeers().size() < PD.MAX_PEERS) {
 			final URI uri2 = new URI(uri);
 			if ("tcp".equals(uri2.getScheme())) {
 				final Peers peer = new Peers(new InetSocketAddress(uri2.getHost(), uri2.getPort()), type);
-				if (!Node.instance().getPeers().contains(peer)) {
+				// A peer dropped for its score is refused as if this node was full
+				if (PD.instance().wasDropped(peer.getAddress())) {
+					numberOfAddedPeers = -1;
+				} else if (!Node.instance().getPeers().contains(peer)) {
 					Node.instance().addPeer(peer);
 					numberOfAddedPeers++;
 				}
@@ -669,65 +846,78 @@ public class API {
 		return AddedPeersResponse.create(numberOfAddedPeers);
 	}
 
-	private void sendResponse(final HttpServerExchange exchange, final AbstractResponse res, final long beginningTime)
-			throws IOException {
-		res.setDuration((int) (System.currentTimeMillis() - beginningTime));
-		final String response = gson.toJson(res);
-
-		if (res instanceof ErrorResponse) {
-			exchange.setStatusCode(400); // bad request
-		} else if (res instanceof AccessLimitedResponse) {
-			exchange.setStatusCode(401); // api method not allowed
-		} else if (res instanceof ExceptionResponse) {
-			exchange.setStatusCode(500); // internal error
-		}
+	// The response is written as it is serialized, through the pooled buffers of the exchange, so the memory used
+	// doesn't grow with its size. The response is aborted if "written" returns false once it has been written.
+	private void sendResponse(final HttpServerExchange exchange, final AbstractResponse res, final long beginningTime,
+			final BooleanSupplier written) throws IOException {
 
+		exchange.setStatusCode(statusCode(res));
 		setupResponseHeaders(exchange);
 
-		ByteBuffer responseBuf = ByteBuffer.wrap(response.getBytes(StandardCharsets.UTF_8));
-		exchange.setResponseContentLength(responseBuf.array().length);
-		StreamSinkChannel sinkChannel = exchange.getResponseChannel();
-		sinkChannel.getWriteSetter().set(channel -> {
-			if (responseBuf.remaining() > 0)
-				try {
-					sinkChannel.write(responseBuf);
-					if (responseBuf.remaining() == 0) {
-						exchange.endExchange();
-					}
-				} catch (IOException e) {
-					log.error("Error writing response", e);
-					exchange.endExchange();
-					sinkChannel.getWriteSetter().set(null);
-				}
-			else {
-				exchange.endExchange();
-			}
-		});
-		sinkChannel.resumeWrites();
+		exchange.startBlocking();
+		final JsonWriter writer = new JsonWriter(
+				new OutputStreamWriter(exchange.getOutputStream(), StandardCharsets.UTF_8));
+		try {
+			if (res instanceof StreamingResponse) {
+				writer.beginObject();
+				// Loads the content, the duration includes the loading
+				((StreamingResponse) res).write(writer);
+				res.setDuration((int) (System.currentTimeMillis() - beginningTime));
+				writer.name("duration").value(res.getDuration());
+				writer.endObject();
+			} else {
+				res.setDuration((int) (System.currentTimeMillis() - beginningTime));
+				gson.toJson(res, res.getClass(), writer);
+			}
+			if (!written.getAsBoolean()) {
+				throw new IOException("Timed out while writing the response");
+			}
+			writer.close();
+		} catch (final IOException | RuntimeException e) {
+			// The status may have been sent already, the connection is closed before the end of the body so that the
+			// client can't take what has been written for a complete response
+			log.error("Error writing response", e);
+			IoUtils.safeClose(exchange.getConnection());
+		} finally {
+			exchange.endExchange();
+		}
 	}
 
-	private boolean validTrytes(String trytes, int minimalLength, char zeroAllowed) {
-		if (trytes.length() == 0 && zeroAllowed == ZERO_LENGTH_ALLOWED) {
-			return true;
-		}
-		if (trytes.length() < minimalLength) {
-			return false;
+	private static int statusCode(final AbstractResponse res) {
+		if (res instanceof ErrorResponse) {
+			return 400; // bad request
+		} else if (res instanceof AccessLimitedResponse) {
+			return 401; // api method not allowed
+		} else if (res instanceof ExceptionResponse) {
+			return 500; // internal error
+		} else if (res instanceof ServiceUnavailableResponse) {
+			return 503; // lane full
+		} else if (res instanceof TimeoutResponse) {
+			return 504; // command timed out
 		}
-		Matcher matcher = trytesPattern.matcher(trytes);
-		return matcher.matches();
+		return 200;
 	}
 
 	private static void setupResponseHeaders(final HttpServerExchange exchange) {
 		final HeaderMap headerMap = exchange.getResponseHeaders();
 		headerMap.add(new HttpString("Access-Control-Allow-Origin"),
 				Configuration.string(DefaultConfSettings.CORS_ENABLED));
-		headerMap.add(new HttpString("Keep-Alive"), "timeout=500, max=100");
+		// Connection headers are forbidden in HTTP/2
+		if (Protocols.HTTP_1_1.equals(exchange.getProtocol())) {
+			headerMap.add(new HttpString("Keep-Alive"), "timeout=500, max=100");
+		}
 	}
 
 	public void shutDown() {
 		if (server != null) {
 			server.stop();
 		}
+		for (final ThreadPoolExecutor laneExecutor : laneExecutors.values()) {
+			laneExecutor.shutdownNow();
+		}
+		if (timeoutScheduler != null) {
+			timeoutScheduler.shutdownNow();
+		}
 	}
 
 	private static API instance = new API();
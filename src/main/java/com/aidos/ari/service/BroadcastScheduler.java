@@ -0,0 +1,264 @@
+package com.aidos.ari.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Peers;
+import com.aidos.ari.conf.Configuration;
+import com.aidos.ari.conf.Configuration.DefaultConfSettings;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+
+/**
+ * Sends the transactions to broadcast to the peers as fast as each of them takes them. Transactions are fanned out
+ * from a queue ordered by weight magnitude to a bounded queue per peer, ordered the same way, and each peer is served
+ * from its own queue at the rate of its token bucket. A slow peer only loses the lightest transactions of its queue.
+ * Peers that have already seen a transaction, by sending it or receiving it, are skipped. The peers with the best
+ * scores are served first, so their sends get ahead of the others in the shared sender pool.
+ * With the experimental features on, several transactions are sent per connection.
+ */
+public class BroadcastScheduler {
+
+    private static final Logger log = LoggerFactory.getLogger(BroadcastScheduler.class);
+
+    private static final int QUEUE_SIZE = 1000;
+    private static final int PEER_QUEUE_SIZE = 1000;
+
+    private static final int TRANSACTIONS_PER_SECOND_PER_PEER = 100;
+    private static final int MAX_BATCH_SIZE = 20;
+
+    private static final long IDLE_WAIT_MS = 1000;
+    private static final long THROTTLED_WAIT_MS = 10;
+    private static final long RATE_WINDOW_MS = 1000;
+
+    private volatile boolean shuttingDown;
+
+    private final ConcurrentSkipListSet<QueuedTransaction> queuedTransactions = weightQueue();
+    private final Map<Hash, QueuedTransaction> queuedTransactionsByHash = new ConcurrentHashMap<>();
+    private final Map<Peers, PeerQueue> peerQueues = new ConcurrentHashMap<>();
+    private final AtomicLong numberOfDroppedTransactions = new AtomicLong();
+
+    private final Object wakeUpMonitor = new Object();
+    private boolean wokenUp;
+
+    public void init() {
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                try {
+                    final long waitTime = schedule();
+                    if (waitTime > 0) {
+                        synchronized (wakeUpMonitor) {
+                            if (!wokenUp) {
+                                wakeUpMonitor.wait(waitTime);
+                            }
+                            wokenUp = false;
+                        }
+                    }
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Broadcast Scheduler Exception:", e);
+                }
+            }
+        }, "Broadcast Scheduler")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+        wakeUp();
+    }
+
+    private void wakeUp() {
+        synchronized (wakeUpMonitor) {
+            wokenUp = true;
+            wakeUpMonitor.notify();
+        }
+    }
+
+    // The lightest queued transaction is dropped when the queue is full
+    public void broadcast(final Transaction transaction) {
+
+        final QueuedTransaction queuedTransaction = new QueuedTransaction(transaction);
+        if (queuedTransactionsByHash.putIfAbsent(queuedTransaction.hash, queuedTransaction) != null) {
+            return;
+        }
+        queuedTransactions.add(queuedTransaction);
+        if (queuedTransactions.size() > QUEUE_SIZE) {
+            final QueuedTransaction droppedTransaction = queuedTransactions.pollLast();
+            if (droppedTransaction != null) {
+                queuedTransactionsByHash.remove(droppedTransaction.hash);
+                numberOfDroppedTransactions.incrementAndGet();
+            }
+        }
+        wakeUp();
+    }
+
+    // Returns how long to wait before the next round, 0 if there is more to send right away
+    private long schedule() {
+
+        final List<Peers> peers = new ArrayList<>(Node.instance().getPeers());
+        peerQueues.keySet().retainAll(peers);
+        for (final Peers peer : peers) {
+            peerQueues.computeIfAbsent(peer, key -> new PeerQueue());
+        }
+
+        QueuedTransaction queuedTransaction;
+        while ((queuedTransaction = queuedTransactions.pollFirst()) != null) {
+
+            queuedTransactionsByHash.remove(queuedTransaction.hash);
+            for (final Peers peer : peers) {
+
+                final PeerQueue peerQueue = peerQueues.get(peer);
+                if (peerQueue != null && !peer.hasSeenTransaction(queuedTransaction.transaction.hash)) {
+                    peerQueue.transactions.add(queuedTransaction);
+                    if (peerQueue.transactions.size() > PEER_QUEUE_SIZE && peerQueue.transactions.pollLast() != null) {
+                        peerQueue.numberOfDroppedTransactions++;
+                        numberOfDroppedTransactions.incrementAndGet();
+                    }
+                }
+            }
+        }
+
+        // Receivers before this release read only the first packet of a connection, batches stay experimental until
+        // the mesh has upgraded
+        final int batchSize = Configuration.booling(DefaultConfSettings.EXPERIMENTAL) ? MAX_BATCH_SIZE : 1;
+        final long now = System.currentTimeMillis();
+        boolean sent = false, pending = false;
+        peers.sort(Comparator.comparingDouble((Peers peer) -> peer.getStatistics().score()).reversed());
+        for (final Peers peer : peers) {
+
+            final PeerQueue peerQueue = peerQueues.get(peer);
+            peerQueue.refill(now);
+
+            // Back-pressure: the transactions wait in the queue of the peer, where only the lightest ones are dropped
+            final List<byte[]> packets = new ArrayList<>(batchSize);
+            while (packets.size() < batchSize && peerQueue.tokens >= 1 && !peer.isSendQueueFull()
+                    && (queuedTransaction = peerQueue.transactions.pollFirst()) != null) {
+
+                // Also received from this peer since it was queued
+                if (peer.hasSeenTransaction(queuedTransaction.transaction.hash)) {
+                    continue;
+                }
+                final byte[] packet = Arrays.copyOf(queuedTransaction.transaction.bytes, Transaction.SIZE + Transaction.HASH_SIZE);
+                TransactionRequester.instance().transactionToRequest(packet, Transaction.SIZE);
+                peer.transactionSeen(queuedTransaction.transaction.hash);
+                packets.add(packet);
+                peerQueue.tokens--;
+            }
+            if (!packets.isEmpty()) {
+                peer.send(packets);
+                peerQueue.numberOfSentTransactions += packets.size();
+                sent = true;
+            }
+            peerQueue.updateSendRate(now);
+            pending |= !peerQueue.transactions.isEmpty();
+        }
+
+        if (!pending) {
+            return IDLE_WAIT_MS;
+        }
+        return sent ? 0 : THROTTLED_WAIT_MS;
+    }
+
+    public int queuedTransactionsSize() {
+        return queuedTransactions.size();
+    }
+
+    public long droppedTransactionsSize() {
+        return numberOfDroppedTransactions.get();
+    }
+
+    public int queuedTransactionsSize(final Peers peer) {
+        final PeerQueue peerQueue = peerQueues.get(peer);
+        return peerQueue == null ? 0 : peerQueue.transactions.size();
+    }
+
+    public long droppedTransactionsSize(final Peers peer) {
+        final PeerQueue peerQueue = peerQueues.get(peer);
+        return peerQueue == null ? 0 : peerQueue.numberOfDroppedTransactions;
+    }
+
+    // Transactions per second sent to the peer over the last rate window
+    public double sendRate(final Peers peer) {
+        final PeerQueue peerQueue = peerQueues.get(peer);
+        return peerQueue == null ? 0 : peerQueue.sendRate;
+    }
+
+    private static ConcurrentSkipListSet<QueuedTransaction> weightQueue() {
+        return new ConcurrentSkipListSet<>((transaction1, transaction2) -> {
+            if (transaction1.weightMagnitude == transaction2.weightMagnitude) {
+                for (int i = 0; i < Transaction.HASH_SIZE; i++) {
+                    if (transaction1.transaction.hash[i] != transaction2.transaction.hash[i]) {
+                        return transaction2.transaction.hash[i] - transaction1.transaction.hash[i];
+                    }
+                }
+                return 0;
+            }
+            return transaction2.weightMagnitude - transaction1.weightMagnitude;
+        });
+    }
+
+    private static class QueuedTransaction {
+
+        private final Transaction transaction;
+        private final Hash hash;
+        private final int weightMagnitude;
+
+        private QueuedTransaction(final Transaction transaction) {
+            this.transaction = transaction;
+            hash = new Hash(transaction.hash, 0, Transaction.HASH_SIZE);
+            weightMagnitude = transaction.weightMagnitude;
+        }
+    }
+
+    // Only changed by the scheduler thread
+    private static class PeerQueue {
+
+        private final ConcurrentSkipListSet<QueuedTransaction> transactions = weightQueue();
+
+        private double tokens = TRANSACTIONS_PER_SECOND_PER_PEER;
+        private long refillTime = System.currentTimeMillis();
+
+        private volatile long numberOfSentTransactions;
+        private volatile long numberOfDroppedTransactions;
+        private volatile double sendRate;
+        private long rateWindowStart = System.currentTimeMillis();
+        private long rateWindowSentTransactions;
+
+        private void refill(final long now) {
+            tokens = Math.min(tokens + (now - refillTime) * TRANSACTIONS_PER_SECOND_PER_PEER / 1000.0,
+                    TRANSACTIONS_PER_SECOND_PER_PEER);
+            refillTime = now;
+        }
+
+        private void updateSendRate(final long now) {
+            if (now - rateWindowStart >= RATE_WINDOW_MS) {
+                sendRate = (numberOfSentTransactions - rateWindowSentTransactions) * 1000.0 / (now - rateWindowStart);
+                rateWindowSentTransactions = numberOfSentTransactions;
+                rateWindowStart = now;
+            }
+        }
+    }
+
+    private static BroadcastScheduler instance = new BroadcastScheduler();
+
+    private BroadcastScheduler() {}
+
+    public static BroadcastScheduler instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,353 @@
+package com.aidos.ari.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Milestone;
+import com.aidos.ari.Peers;
+import com.aidos.ari.Snapshot;
+import com.aidos.ari.conf.Configuration;
+import com.aidos.ari.hash.Curl;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageTransactions;
+import com.aidos.ari.utils.Converter;
+import com.aidos.ari.utils.LongHashSet;
+
+/**
+ * Bulk sync on the mesh port, for nodes that are far behind their neighbors. Instead of one transaction per packet, a
+ * node asks a neighbor for a batch of missing hashes, or for the past cone of the latest milestone down to its own
+ * latest solid milestone, and the neighbor streams the transactions back on the same connection.
+ *
+ * A request starts with BULK_SYNC_MESSAGE, which is never the first byte of a transaction packet (each transaction
+ * byte encodes 5 trits, so it lies in -121..121), followed by:
+ * - TRANSACTIONS_REQUEST, the number of hashes (unsigned short) and the hashes
+ * - MILESTONE_CONE_REQUEST, the milestone hash and the hash of the milestone to stop at
+ * The requester then half-closes the connection and reads Transaction.SIZE byte transactions until the stream ends.
+ */
+public class BulkSync {
+
+    private static final Logger log = LoggerFactory.getLogger(BulkSync.class);
+
+    public static final byte BULK_SYNC_MESSAGE = Byte.MIN_VALUE;
+    private static final byte TRANSACTIONS_REQUEST = 1;
+    private static final byte MILESTONE_CONE_REQUEST = 2;
+
+    private static final int MAX_HASHES_PER_REQUEST = 1000;
+    private static final int MAX_STREAMED_TRANSACTIONS = 100000;
+    // Top of the requester's solid milestone cone where the walk stops, bounds the loads of a request with the above
+    private static final int MAX_KNOWN_TRANSACTIONS = 20000;
+    // Below this, the hash requested along with every packet is enough
+    private static final int MIN_TRANSACTIONS_TO_REQUEST = 100;
+
+    private static final int NUMBER_OF_SERVING_THREADS = 2;
+    private static final int MAX_QUEUED_REQUESTS = 8;
+    private static final int STREAM_TIMEOUT = 30000;
+    private static final int PAUSE_BETWEEN_REQUESTS = 1000;
+    private static final int PAUSE_WHEN_SYNCED = 5000;
+
+    private volatile boolean shuttingDown;
+
+    private final ExecutorService servingExecutor = new ThreadPoolExecutor(NUMBER_OF_SERVING_THREADS,
+            NUMBER_OF_SERVING_THREADS, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_REQUESTS));
+
+    private Hash latestRequestedMilestone = Hash.NULL_HASH;
+
+    public void init() {
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                try {
+                    Thread.sleep(request() ? PAUSE_BETWEEN_REQUESTS : PAUSE_WHEN_SYNCED);
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Bulk Sync Exception:", e);
+                }
+            }
+        }, "Bulk Sync")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+        servingExecutor.shutdownNow();
+    }
+
+    // Returns false if there was nothing worth a bulk request
+    private boolean request() throws IOException {
+
+        final List<Peers> peers = new ArrayList<>(Node.instance().getPeers());
+        if (peers.isEmpty()) {
+            return false;
+        }
+
+        final ByteArrayOutputStream request = new ByteArrayOutputStream();
+        final DataOutputStream dos = new DataOutputStream(request);
+        dos.writeByte(BULK_SYNC_MESSAGE);
+
+        final Hash latestMilestone = Milestone.latestMilestone;
+        if (Milestone.latestSolidSubmeshMilestoneIndex < Milestone.latestMilestoneIndex
+                && !latestMilestone.equals(latestRequestedMilestone)) {
+
+            latestRequestedMilestone = latestMilestone;
+            dos.writeByte(MILESTONE_CONE_REQUEST);
+            dos.write(latestMilestone.bytes(), 0, Transaction.HASH_SIZE);
+            dos.write(Milestone.latestSolidSubmeshMilestone.bytes(), 0, Transaction.HASH_SIZE);
+
+        } else {
+
+            if (TransactionRequester.instance().numberOfTransactionsToRequest() < MIN_TRANSACTIONS_TO_REQUEST) {
+                return false;
+            }
+            final List<byte[]> hashes = TransactionRequester.instance().transactionsToRequest(MAX_HASHES_PER_REQUEST);
+            if (hashes.isEmpty()) {
+                return false;
+            }
+            dos.writeByte(TRANSACTIONS_REQUEST);
+            dos.writeShort(hashes.size());
+            for (final byte[] hash : hashes) {
+                dos.write(hash, 0, Transaction.HASH_SIZE);
+            }
+        }
+
+        receive(peers.get(ThreadLocalRandom.current().nextInt(peers.size())), request.toByteArray());
+        return true;
+    }
+
+    private void receive(final Peers peer, final byte[] request) {
+
+        final Curl curl = new Curl();
+        final int[] trits = new int[Transaction.TRINARY_SIZE];
+        final byte[] packet = new byte[Transaction.SIZE];
+        int numberOfTransactions = 0, numberOfNewTransactions = 0;
+
+        try (Socket s = new Socket()) {
+
+            s.connect(peer.getAddress(), Configuration.CONNECTION_TIMEOUT);
+            s.setSoTimeout(STREAM_TIMEOUT);
+            s.getOutputStream().write(request);
+            s.shutdownOutput();
+
+            final InputStream in = new BufferedInputStream(s.getInputStream());
+            while (!shuttingDown && readPacket(in, packet)) {
+
+                numberOfTransactions++;
+                peer.incAllTransactions(Transaction.SIZE);
+                try {
+                    final Transaction transaction = new Transaction(packet, trits, curl);
+                    // Not broadcast, the neighbors are expected to have these transactions already
+                    if (StorageTransactions.instance().storeTransaction(transaction.hash, transaction, false) != 0) {
+                        numberOfNewTransactions++;
+                        peer.incNewTransactions();
+                    } else {
+                        peer.incDuplicateTransactions();
+                    }
+                } catch (final RuntimeException e) {
+                    log.error("Received an Invalid Transaction from {}. Stopping bulk sync.", peer.getAddress());
+                    peer.incInvalidTransactions();
+                    break;
+                }
+            }
+        } catch (final IOException e) {
+            log.debug("Bulk sync from {} failed: {}", peer.getAddress(), e.getMessage());
+        }
+        log.info("Bulk sync from {}: {} transactions received, {} new", peer.getAddress(), numberOfTransactions,
+                numberOfNewTransactions);
+    }
+
+    // Returns false at the end of the stream
+    private static boolean readPacket(final InputStream in, final byte[] packet) throws IOException {
+
+        int size = 0;
+        while (size < packet.length) {
+
+            final int read = in.read(packet, size, packet.length - size);
+            if (read < 0) {
+                if (size == 0) {
+                    return false;
+                }
+                throw new EOFException("Truncated transaction");
+            }
+            size += read;
+        }
+        return true;
+    }
+
+    /**
+     * Serves a bulk sync request accepted by the node receiver, "head" being the bytes it has already read. Returns
+     * false if the request can't be served right now, the caller then still owns the socket.
+     */
+    public boolean serve(final Socket socket, final InputStream in, final byte[] head) {
+
+        try {
+            servingExecutor.execute(() -> {
+
+                try (Socket s = socket) {
+
+                    s.setSoTimeout(STREAM_TIMEOUT);
+                    final DataInputStream request = new DataInputStream(
+                            new SequenceInputStream(new ByteArrayInputStream(head), in));
+                    final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+
+                    request.readByte();
+                    final int numberOfTransactions;
+                    switch (request.readByte()) {
+                        case TRANSACTIONS_REQUEST:
+                            numberOfTransactions = streamTransactions(request, out);
+                            break;
+                        case MILESTONE_CONE_REQUEST:
+                            numberOfTransactions = streamMilestoneCone(request, out);
+                            break;
+                        default:
+                            throw new IOException("Unknown bulk sync request");
+                    }
+                    out.flush();
+                    log.info("Bulk sync to {}: {} transactions sent", s.getInetAddress(), numberOfTransactions);
+
+                } catch (final IOException e) {
+                    log.debug("Bulk sync to {} failed: {}", socket.getInetAddress(), e.getMessage());
+                }
+            });
+            return true;
+
+        } catch (final RejectedExecutionException e) {
+            log.debug("Too many bulk sync requests, dropping the one from {}", socket.getInetAddress());
+            return false;
+        }
+    }
+
+    private int streamTransactions(final DataInputStream request, final DataOutputStream out) throws IOException {
+
+        final int numberOfHashes = Math.min(request.readUnsignedShort(), MAX_HASHES_PER_REQUEST);
+        final byte[] hash = new byte[Transaction.HASH_SIZE];
+        int numberOfTransactions = 0;
+        for (int i = 0; i < numberOfHashes && !shuttingDown; i++) {
+
+            request.readFully(hash);
+            final long pointer = StorageTransactions.instance().transactionPointer(hash);
+            if (pointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET) {
+                out.write(StorageTransactions.instance().loadTransaction(pointer).bytes, 0, Transaction.SIZE);
+                numberOfTransactions++;
+            }
+        }
+        return numberOfTransactions;
+    }
+
+    /**
+     * Streams the past cone of the milestone above the requester's solid milestone. The walk stops at the solid entry
+     * points, at the milestones not above the solid milestone, and at the transactions near the top of the solid
+     * milestone's cone, which the requester has already. Whatever bypasses them is bounded by MAX_STREAMED_TRANSACTIONS.
+     */
+    private int streamMilestoneCone(final DataInputStream request, final DataOutputStream out) throws IOException {
+
+        final byte[] milestone = new byte[Transaction.HASH_SIZE];
+        final byte[] stopMilestone = new byte[Transaction.HASH_SIZE];
+        request.readFully(milestone);
+        request.readFully(stopMilestone);
+
+        final long stopPointer = StorageTransactions.instance().transactionPointer(stopMilestone);
+        final int stopMilestoneIndex = stopPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET
+                ? milestoneIndex(StorageTransactions.instance().loadTransaction(stopPointer)) : -1;
+        final LongHashSet knownTransactions = stopMilestoneIndex < 0 ? new LongHashSet()
+                : coneTop(stopPointer, MAX_KNOWN_TRANSACTIONS);
+
+        final LongHashSet analyzedTransactions = new LongHashSet();
+        final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(
+                Collections.singleton(StorageTransactions.instance().transactionPointer(milestone)));
+
+        int numberOfTransactions = 0;
+        Long pointer;
+        while (numberOfTransactions < MAX_STREAMED_TRANSACTIONS && !shuttingDown
+                && (pointer = nonAnalyzedTransactions.poll()) != null) {
+
+            // Also skips the genesis and the transactions this node doesn't have
+            if (pointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET && !knownTransactions.contains(pointer)
+                    && analyzedTransactions.add(pointer)) {
+
+                final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+                if (transaction.type == Storage.FILLED_SLOT && !Snapshot.isSolidEntryPoint(transaction.hash)) {
+
+                    final int milestoneIndex = milestoneIndex(transaction);
+                    if (milestoneIndex >= 0 && milestoneIndex <= stopMilestoneIndex) {
+                        continue;
+                    }
+                    out.write(transaction.bytes, 0, Transaction.SIZE);
+                    numberOfTransactions++;
+
+                    nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+                    nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+                }
+            }
+        }
+        return numberOfTransactions;
+    }
+
+    // The transactions closest to the given one in its past cone, breadth first
+    private static LongHashSet coneTop(final long pointer, final int maximum) {
+
+        final LongHashSet transactions = new LongHashSet(maximum);
+        final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(Collections.singleton(pointer));
+        Long transactionPointer;
+        while (transactions.size() < maximum && (transactionPointer = nonAnalyzedTransactions.poll()) != null) {
+
+            if (transactionPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET
+                    && transactions.add(transactionPointer)) {
+
+                final Transaction transaction = StorageTransactions.instance().loadTransaction(transactionPointer);
+                if (transaction.type == Storage.FILLED_SLOT && !Snapshot.isSolidEntryPoint(transaction.hash)) {
+                    nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+                    nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+                }
+            }
+        }
+        return transactions;
+    }
+
+    // Index of the milestone this node found for the transaction, -1 if it isn't one of them
+    private static int milestoneIndex(final Transaction transaction) {
+
+        if (transaction.currentIndex != 0 || !Arrays.equals(transaction.address, Milestone.COORDINATOR.bytes())) {
+            return -1;
+        }
+        final int index = (int) Converter.longValue(transaction.trits(), Transaction.TAG_TRINARY_OFFSET, 15);
+        final Hash milestone = Milestone.milestone(index);
+        return milestone != null && milestone.equals(new Hash(transaction.hash, 0, Transaction.HASH_SIZE)) ? index : -1;
+    }
+
+    private static BulkSync instance = new BulkSync();
+
+    private BulkSync() {}
+
+    public static BulkSync instance() {
+        return instance;
+    }
+}
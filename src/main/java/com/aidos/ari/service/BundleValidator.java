@@ -0,0 +1,101 @@
+package com.aidos.ari.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Bundle;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+
+/**
+ * Validates bundles in the background as they are completed, so that the validity is already stored when tip selection
+ * or milestone tracking reaches them. The stored transactions of every incomplete bundle are counted, and the bundle is
+ * validated once as many as lastIndex + 1 of them have arrived. A reattachment of the bundle is counted from zero
+ * again. The counts of the bundles left incomplete for the longest are dropped first, those are validated on demand.
+ */
+public class BundleValidator {
+
+    private static final Logger log = LoggerFactory.getLogger(BundleValidator.class);
+
+    private static final int QUEUE_SIZE = 10000;
+    private static final int MAX_INCOMPLETE_BUNDLES = 100000;
+
+    private volatile boolean shuttingDown;
+
+    private final BlockingQueue<Hash> bundlesToValidate = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Set<Hash> queuedBundles = ConcurrentHashMap.newKeySet();
+    private final Map<Hash, Long> storedTransactions = new LinkedHashMap<Hash, Long>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Hash, Long> eldest) {
+            return size() > MAX_INCOMPLETE_BUNDLES;
+        }
+    };
+
+    public void init() {
+
+        Storage.instance().addListener((pointer, transaction) -> transactionStored(transaction));
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                try {
+                    final Hash bundle = bundlesToValidate.poll(1, TimeUnit.SECONDS);
+                    if (bundle != null) {
+                        queuedBundles.remove(bundle);
+                        new Bundle(bundle.bytes());
+                    }
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Error during bundle validation", e);
+                }
+            }
+        }, "Bundle Validator")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+    }
+
+    // Bundles that can't be queued are validated on demand instead
+    private void transactionStored(final Transaction transaction) {
+
+        final Hash bundle = new Hash(transaction.bundle);
+        synchronized (storedTransactions) {
+            final long numberOfStoredTransactions = storedTransactions.merge(bundle, 1L, Long::sum);
+            if (numberOfStoredTransactions <= transaction.lastIndex) {
+                return;
+            }
+            storedTransactions.remove(bundle);
+        }
+        if (queuedBundles.add(bundle) && !bundlesToValidate.offer(bundle)) {
+            queuedBundles.remove(bundle);
+        }
+    }
+
+    public int queuedBundlesSize() {
+        return bundlesToValidate.size();
+    }
+
+    private static BundleValidator instance = new BundleValidator();
+
+    private BundleValidator() {}
+
+    public static BundleValidator instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,125 @@
+package com.aidos.ari.service;
+
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Milestone;
+import com.aidos.ari.Snapshot;
+import com.aidos.ari.conf.Configuration;
+import com.aidos.ari.conf.Configuration.DefaultConfSettings;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.service.storage.StorageCompactor;
+import com.aidos.ari.service.storage.StorageScratchpad;
+
+/**
+ * Prunes the transactions confirmed more than PRUNING_DEPTH solid milestones ago. The past cone of the milestone of
+ * that depth is walked, its ledger state becomes the snapshot the node starts from, then the transactions of the cone
+ * that no walk reaches anymore are pruned and their cells reused by the storage. Everything is done a batch at a time
+ * so the node keeps serving meanwhile.
+ */
+public class DagPruner {
+
+    private static final Logger log = LoggerFactory.getLogger(DagPruner.class);
+
+    private static final long PRUNING_INTERVAL_MS = 600000;
+    // Bounds the background I/O to about 10000 cells per second
+    private static final int CELLS_PER_BATCH = 1000;
+    private static final long PAUSE_BETWEEN_BATCHES_MS = 100;
+
+    private volatile boolean shuttingDown;
+
+    private int pruningDepth;
+
+    // Walk of the snapshot being adopted, kept until its cone is pruned
+    private Snapshot.ConeWalk walk;
+    private boolean adopted;
+    private final long[] prunableTransactions = new long[CELLS_PER_BATCH];
+    private long numberOfPrunedTransactions;
+
+    public void init() {
+
+        pruningDepth = Configuration.integer(DefaultConfSettings.PRUNING_DEPTH);
+        if (pruningDepth == 0) {
+            return;
+        }
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                boolean busy = false;
+                try {
+                    busy = step();
+                } catch (final Exception e) {
+                    log.error("Error during DAG pruning", e);
+                    walk = null;
+                }
+
+                try {
+                    Thread.sleep(busy ? PAUSE_BETWEEN_BATCHES_MS : PRUNING_INTERVAL_MS);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }, "DAG Pruner")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+    }
+
+    // Returns true if there is more work to do right away
+    private boolean step() throws IOException {
+
+        if (walk == null) {
+            StorageCompactor.instance().release();
+            return startWalk();
+        }
+
+        if (!adopted) {
+            if (walk.walk(CELLS_PER_BATCH)) {
+                Snapshot.adopt(walk);
+                ResponseCache.instance().milestoneChanged();
+                adopted = true;
+                numberOfPrunedTransactions = 0;
+                log.info("Adopted the snapshot of milestone #{}", walk.milestoneIndex());
+            }
+            return true;
+        }
+
+        final int size = walk.prunableTransactions(prunableTransactions);
+        if (size < 0) {
+            log.info("Pruned {} transactions below milestone #{}", numberOfPrunedTransactions, walk.milestoneIndex());
+            walk = null;
+        } else {
+            numberOfPrunedTransactions += StorageCompactor.instance().prune(prunableTransactions, size);
+        }
+        return true;
+    }
+
+    private boolean startWalk() {
+
+        // Milestones the node hasn't found are skipped
+        for (int index = Milestone.latestSolidSubmeshMilestoneIndex - pruningDepth; index > Snapshot.milestoneIndex; index--) {
+
+            final Hash milestone = Milestone.milestone(index);
+            if (milestone != null) {
+                walk = new Snapshot.ConeWalk(milestone, index, StorageScratchpad.instance().getPrunedConeFlags());
+                adopted = false;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static DagPruner instance = new DagPruner();
+
+    private DagPruner() {}
+
+    public static DagPruner instance() {
+        return instance;
+    }
+}
@@ -12,15 +12,20 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.aidos.ari.Bundle;
 import com.aidos.ari.Milestone;
 import com.aidos.ari.Peers;
 import com.aidos.ari.conf.Configuration;
@@ -30,9 +35,9 @@ import com.aidos.ari.hash.Curl;
 import com.aidos.ari.model.Hash;
 import com.aidos.ari.model.Transaction;
 import com.aidos.ari.service.storage.Storage;
-import com.aidos.ari.service.storage.StorageScratchpad;
 import com.aidos.ari.service.storage.StorageTransactions;
 import java.io.DataInputStream;
+import java.io.IOException;
 import java.net.ServerSocket;
 import java.net.Socket;
 
@@ -46,28 +51,38 @@ public class Node {
 	private static final Node instance = new Node();
 
 	private static final int TRANSACTION_PACKET_SIZE = 1650;
-	private static final int QUEUE_SIZE = 1000;
-	private static final int PAUSE_BETWEEN_TRANSACTIONS = 100;
+	private static final int MAX_PACKETS_PER_CONNECTION = 100;
+	// Connections are read by a pool so that a slow peer only holds up its own connection
+	private static final int NUMBER_OF_RECEIVING_THREADS = 4;
+	private static final int MAX_QUEUED_CONNECTIONS = 64;
 
 	private ServerSocket socket;
 
 	private final AtomicBoolean shuttingDown = new AtomicBoolean(false);
 
 	private final List<Peers> peers = new CopyOnWriteArrayList<>();
-	private final ConcurrentSkipListSet<Transaction> queuedTransactions = weightQueue();
 
-	private final byte[] receivingPacket = new byte[TRANSACTION_PACKET_SIZE];
-	private final byte[] sendingPacket = new byte[TRANSACTION_PACKET_SIZE];
 	private final byte[] tipRequestingPacket = new byte[TRANSACTION_PACKET_SIZE];
 
-	private final ExecutorService executor = Executors.newFixedThreadPool(4);
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+	private final ExecutorService receivingExecutor = new ThreadPoolExecutor(NUMBER_OF_RECEIVING_THREADS,
+			NUMBER_OF_RECEIVING_THREADS, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(MAX_QUEUED_CONNECTIONS),
+			runnable -> {
+				final Thread thread = new Thread(runnable, "Receiver");
+				thread.setDaemon(true);
+				return thread;
+			}, new ThreadPoolExecutor.AbortPolicy());
+
+	private final SecureRandom rnd = new SecureRandom();
+	private final AtomicLong randomTipBroadcastCounter = new AtomicLong();
 
 	public void init() throws Exception {
 
+		Bundle.init(Configuration.integer(DefaultConfSettings.SIGNATURE_THREADS));
+		Peers.initSending();
 		socket = new ServerSocket(Configuration.integer(DefaultConfSettings.MESH_RECEIVER_PORT));
 
 		executor.submit(spawnReceiverThread());
-		executor.submit(spawnBroadcasterThread());
 		executor.submit(spawnTipRequesterThread());
 
 		executor.shutdown();
@@ -98,122 +113,134 @@ public class Node {
 	private Runnable spawnReceiverThread() {
 		return () -> {
 
-			final Curl curl = new Curl();
-			final int[] receivedTransactionTrits = new int[Transaction.TRINARY_SIZE];
-			final byte[] requestedTransaction = new byte[Transaction.HASH_SIZE];
-
 			log.info("Spawning Receiver Thread");
 
-			final SecureRandom rnd = new SecureRandom();
-			long randomTipBroadcastCounter = 0;
-
 			while (!shuttingDown.get()) {
-				try (Socket s = socket.accept(); DataInputStream in = new DataInputStream(s.getInputStream());) {
+				Socket s = null;
+				try {
+					s = socket.accept();
 					s.setSoTimeout(Configuration.CONNECTION_TIMEOUT);
-					int psize = 0;
-					for (psize = 0; psize < TRANSACTION_PACKET_SIZE;) {
-						int si = in.read(receivingPacket, psize, TRANSACTION_PACKET_SIZE - psize);
-						if (si < 0) {
-							break;
-						}
-						psize += si;
-					}
-
-					if (psize == TRANSACTION_PACKET_SIZE) {
-
-						for (final Peers peer : peers) {
-							if (peer.getAddress().getAddress().equals(s.getInetAddress())) {
-								try {
-									peer.incAllTransactions();
-									final Transaction receivedTransaction = new Transaction(receivingPacket,
-											receivedTransactionTrits, curl);
-									if (StorageTransactions.instance().storeTransaction(receivedTransaction.hash,
-											receivedTransaction, false) != 0) {
-										peer.incNewTransactions();
-										broadcast(receivedTransaction);
-									}
-
-									final long transactionPointer;
-									System.arraycopy(receivingPacket, Transaction.SIZE, requestedTransaction, 0,
-											Transaction.HASH_SIZE);
-									if (Arrays.equals(requestedTransaction, receivedTransaction.hash)) {
-										if (Configuration.booling(DefaultConfSettings.EXPERIMENTAL)
-												&& ++randomTipBroadcastCounter % 3 == 0) {
-											log.info("Experimental: Random Tip Broadcaster.");
-
-											final String[] tips = StorageTransactions.instance().tips().stream()
-													.map(Hash::toString).toArray(size -> new String[size]);
-											final String rndTipHash = tips[rnd.nextInt(tips.length)];
-
-											transactionPointer = StorageTransactions.instance()
-													.transactionPointer(rndTipHash.getBytes());
-										} else {
-											transactionPointer = StorageTransactions.instance()
-													.transactionPointer(Milestone.latestMilestone.bytes());
-										}
-									} else {
-										transactionPointer = StorageTransactions.instance()
-												.transactionPointer(requestedTransaction);
-									}
-									if (transactionPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET) {
-										synchronized (sendingPacket) {
-											System.arraycopy(
-													StorageTransactions.instance()
-															.loadTransaction(transactionPointer).bytes,
-													0, sendingPacket, 0, Transaction.SIZE);
-											StorageScratchpad.instance().transactionToRequest(sendingPacket,
-													Transaction.SIZE);
-											peer.send(sendingPacket);
-										}
-									}
-								} catch (final RuntimeException e) {
-									log.error("Received an Invalid Transaction. Dropping it...");
-									peer.incInvalidTransactions();
-								}
-								break;
-							}
-						}
-					} else {
-						log.error("illegal packet size={},from={}", psize, s.getInetAddress());
-					}
+					final Socket connection = s;
+					receivingExecutor.execute(() -> receive(connection));
+				} catch (final RejectedExecutionException e) {
+					log.debug("Too many incoming connections, dropping the one from {}", s.getInetAddress());
+					IOUtils.closeQuietly(s);
 				} catch (final Exception e) {
 					log.error("Receiver Thread Exception:", e);
+					IOUtils.closeQuietly(s);
 				}
 			}
 			log.info("Shutting down spawning Receiver Thread");
 		};
 	}
 
-	private Runnable spawnBroadcasterThread() {
-		return () -> {
+	private void receive(final Socket s) {
 
-			log.info("Spawning Broadcaster Thread");
+		final byte[] receivingPacket = new byte[TRANSACTION_PACKET_SIZE];
+		final Curl curl = new Curl();
+		final int[] receivedTransactionTrits = new int[Transaction.TRINARY_SIZE];
+		final byte[] requestedTransaction = new byte[Transaction.HASH_SIZE];
 
-			while (!shuttingDown.get()) {
+		boolean handedOver = false;
+		try {
+			final DataInputStream in = new DataInputStream(s.getInputStream());
+			int psize = readPacket(in, receivingPacket);
 
-				try {
-					final Transaction transaction = queuedTransactions.pollFirst();
-					if (transaction != null) {
-
-						for (final Peers peer : peers) {
-							try {
-								synchronized (sendingPacket) {
-									System.arraycopy(transaction.bytes, 0, sendingPacket, 0, Transaction.SIZE);
-									StorageScratchpad.instance().transactionToRequest(sendingPacket, Transaction.SIZE);
-									peer.send(sendingPacket);
-								}
-							} catch (final Exception e) {
-								// ignore
+			if (psize > 0 && receivingPacket[0] == BulkSync.BULK_SYNC_MESSAGE) {
+
+				final InetAddress address = s.getInetAddress();
+				if (peers.stream().anyMatch(peer -> peer.getAddress().getAddress().equals(address))) {
+					handedOver = BulkSync.instance().serve(s, in, Arrays.copyOf(receivingPacket, psize));
+				}
+			} else if (psize == TRANSACTION_PACKET_SIZE) {
+
+				for (final Peers peer : peers) {
+					if (peer.getAddress().getAddress().equals(s.getInetAddress())) {
+						// A sender may batch several packets on one connection
+						for (int i = 0; i < MAX_PACKETS_PER_CONNECTION && psize == TRANSACTION_PACKET_SIZE
+								&& !shuttingDown.get(); i++) {
+							receiveTransaction(peer, receivingPacket, curl, receivedTransactionTrits,
+									requestedTransaction);
+							if (i + 1 < MAX_PACKETS_PER_CONNECTION
+									&& (psize = readPacket(in, receivingPacket)) != TRANSACTION_PACKET_SIZE
+									&& psize > 0) {
+								log.error("illegal packet size={},from={}", psize, s.getInetAddress());
 							}
 						}
+						break;
 					}
-					Thread.sleep(PAUSE_BETWEEN_TRANSACTIONS);
-				} catch (final Exception e) {
-					log.error("Broadcaster Thread Exception:", e);
 				}
+			} else {
+				log.error("illegal packet size={},from={}", psize, s.getInetAddress());
 			}
-			log.info("Shutting down Broadcaster Thread");
-		};
+		} catch (final Exception e) {
+			log.error("Receiver Thread Exception:", e);
+		} finally {
+			if (!handedOver) {
+				IOUtils.closeQuietly(s);
+			}
+		}
+	}
+
+	// Returns the number of bytes read into "packet", less than a packet only at the end of the stream
+	private static int readPacket(final DataInputStream in, final byte[] packet) throws IOException {
+
+		int psize = 0;
+		while (psize < TRANSACTION_PACKET_SIZE) {
+			final int si = in.read(packet, psize, TRANSACTION_PACKET_SIZE - psize);
+			if (si < 0) {
+				break;
+			}
+			psize += si;
+		}
+		return psize;
+	}
+
+	private void receiveTransaction(final Peers peer, final byte[] receivingPacket, final Curl curl,
+			final int[] receivedTransactionTrits, final byte[] requestedTransaction) {
+
+		try {
+			peer.incAllTransactions(TRANSACTION_PACKET_SIZE);
+			final Transaction receivedTransaction = new Transaction(receivingPacket, receivedTransactionTrits, curl);
+			peer.transactionSeen(receivedTransaction.hash);
+			if (StorageTransactions.instance().storeTransaction(receivedTransaction.hash, receivedTransaction,
+					false) != 0) {
+				peer.incNewTransactions();
+				broadcast(receivedTransaction);
+			} else {
+				peer.incDuplicateTransactions();
+			}
+
+			final long transactionPointer;
+			System.arraycopy(receivingPacket, Transaction.SIZE, requestedTransaction, 0, Transaction.HASH_SIZE);
+			if (Arrays.equals(requestedTransaction, receivedTransaction.hash)) {
+				if (Configuration.booling(DefaultConfSettings.EXPERIMENTAL) && randomTipBroadcastCounter.incrementAndGet() % 3 == 0) {
+					log.info("Experimental: Random Tip Broadcaster.");
+
+					final String[] tips = StorageTransactions.instance().tips().stream().map(Hash::toString)
+							.toArray(size -> new String[size]);
+					final String rndTipHash = tips[rnd.nextInt(tips.length)];
+
+					transactionPointer = StorageTransactions.instance().transactionPointer(rndTipHash.getBytes());
+				} else {
+					transactionPointer = StorageTransactions.instance()
+							.transactionPointer(Milestone.latestMilestone.bytes());
+				}
+			} else {
+				transactionPointer = StorageTransactions.instance().transactionPointer(requestedTransaction);
+			}
+			if (transactionPointer > Storage.CELLS_OFFSET - Storage.SUPER_GROUPS_OFFSET) {
+				final Transaction sentTransaction = StorageTransactions.instance().loadTransaction(transactionPointer);
+				final byte[] sendingPacket = new byte[TRANSACTION_PACKET_SIZE];
+				System.arraycopy(sentTransaction.bytes, 0, sendingPacket, 0, Transaction.SIZE);
+				TransactionRequester.instance().transactionToRequest(sendingPacket, Transaction.SIZE);
+				peer.transactionSeen(sentTransaction.hash);
+				peer.send(sendingPacket);
+			}
+		} catch (final RuntimeException e) {
+			log.error("Received an Invalid Transaction. Dropping it...");
+			peer.incInvalidTransactions();
+		}
 	}
 
 	private Runnable spawnTipRequesterThread() {
@@ -224,6 +251,9 @@ public class Node {
 			while (!shuttingDown.get()) {
 
 				try {
+					// Also paces the rate windows of the peer statistics
+					peers.forEach(n -> n.getStatistics().sample());
+
 					final Transaction transaction = StorageTransactions.instance()
 							.loadMilestone(Milestone.latestMilestone);
 					System.arraycopy(transaction.bytes, 0, tipRequestingPacket, 0, Transaction.SIZE);
@@ -240,44 +270,36 @@ public class Node {
 		};
 	}
 
-	private static ConcurrentSkipListSet<Transaction> weightQueue() {
-		return new ConcurrentSkipListSet<>((transaction1, transaction2) -> {
-			if (transaction1.weightMagnitude == transaction2.weightMagnitude) {
-				for (int i = 0; i < Transaction.HASH_SIZE; i++) {
-					if (transaction1.hash[i] != transaction2.hash[i]) {
-						return transaction2.hash[i] - transaction1.hash[i];
-					}
-				}
-				return 0;
-			}
-			return transaction2.weightMagnitude - transaction1.weightMagnitude;
-		});
-	}
-
 	public void broadcast(final Transaction transaction) {
-		queuedTransactions.add(transaction);
-		if (queuedTransactions.size() > QUEUE_SIZE) {
-			queuedTransactions.pollLast();
-		}
+		BroadcastScheduler.instance().broadcast(transaction);
 	}
 
 	public void shutdown() throws InterruptedException {
 		shuttingDown.set(true);
 		executor.awaitTermination(6, TimeUnit.SECONDS);
+		receivingExecutor.shutdownNow();
+		Peers.shutdownSending();
+		Bundle.shutdown();
 	}
 
 	// helpers methods
 	public boolean removePeer(final URI uri) {
-		return peers
-				.remove(new Peers(new InetSocketAddress(uri.getHost(), uri.getPort()), PD.getIpTypeForAddress(uri)));
+		return removePeer(new Peers(new InetSocketAddress(uri.getHost(), uri.getPort()), PD.getIpTypeForAddress(uri)));
 	}
 
 	public boolean removePeer(final InetSocketAddress is) {
-		return peers.remove(new Peers(is, PD.getIpTypeForAddress(is.getAddress())));
+		return removePeer(new Peers(is, PD.getIpTypeForAddress(is.getAddress())));
 	}
 	
+	// "peer" may be any instance with the same address, the one in the list is closed
 	public boolean removePeer(final Peers peer) {
-		return Node.instance().getPeers().remove(peer);
+		for (final Peers existingPeer : peers) {
+			if (existingPeer.equals(peer) && peers.remove(existingPeer)) {
+				existingPeer.close();
+				return true;
+			}
+		}
+		return false;
 	}
 
 	public boolean addPeer(final URI uri) {
@@ -297,7 +319,7 @@ public class Node {
 
 	public static Optional<Map<URI, ipType>> uriAndType(final String uri) {
 		try {
-			// always size 2
+			// "uri|type", the entries of the peer list file may also have a last seen time after
 			String[] values = uri.split("\\|");
 			Map<URI, ipType> map = new HashMap<URI, ipType>();
 			map.put(new URI(values[0]), ipType.valueOf(values[1]));
@@ -321,7 +343,7 @@ public class Node {
 	}
 
 	public int queuedTransactionsSize() {
-		return queuedTransactions.size();
+		return BroadcastScheduler.instance().queuedTransactionsSize();
 	}
 
 	public int howManyPeers() {
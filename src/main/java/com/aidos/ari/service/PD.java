@@ -29,13 +29,21 @@ import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -57,6 +65,27 @@ public class PD {
 
 	// Number of nodes that should be added as peers
 	private static final int PEERS_TO_FIND = 6;
+	// Max amount of peers that a node will accept, dropped peers are replaced up to it
+	public static final int MAX_PEERS = 12;
+
+	// Each round drops up to MAX_PEERS_TO_DROP peers scoring below that share of the median score
+	private static final double MIN_RELATIVE_SCORE = 0.25;
+	private static final int MAX_PEERS_TO_DROP = 2;
+	// Dropped peers aren't added again for that long
+	private static final long DROPPED_PEER_BAN_MS = 1000 * 60 * 60;
+
+	// Requests to other nodes run in parallel on that many threads
+	private static final int MAX_CONCURRENT_PROBES = 16;
+	// A request takes a connect and a read timeout at most
+	private static final long PROBES_DEADLINE_MS = 2 * Configuration.CONNECTION_TIMEOUT + 1000;
+	private static final long ROUND_DEADLINE_MS = 4 * PROBES_DEADLINE_MS;
+	private static final long PEER_LIST_TTL_MS = 1000 * 60 * 30;
+	// Nodes that failed to answer aren't tried again as candidates for that long
+	private static final long FAILED_PROBE_TTL_MS = 1000 * 60 * 10;
+	// Longer than the above and PEER_LIST_TTL_MS, after which a probe isn't used anymore
+	private static final long PROBE_TTL_MS = PEER_LIST_TTL_MS;
+	// Stored peers not seen for that long aren't loaded
+	private static final long STORED_PEER_TTL_MS = 1000L * 60 * 60 * 24 * 7;
 
 	// Empty string for "false", or local ip in ipv4/6
 	private static Map<ipType, String> ipMode = new HashMap<ipType, String>();
@@ -68,6 +97,11 @@ public class PD {
 	private static boolean startLocal;
 
 	private final ExecutorService executor = Executors.newSingleThreadExecutor();
+	private final ExecutorService probeExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_PROBES, runnable -> {
+		final Thread thread = new Thread(runnable, "PD Probe");
+		thread.setDaemon(true);
+		return thread;
+	});
 	private static int defaultAPIport = Configuration.integer(DefaultConfSettings.API_PORT);
 	private static int defaultMeshPort = Configuration.integer(DefaultConfSettings.MESH_RECEIVER_PORT);
 
@@ -100,7 +134,9 @@ public class PD {
 		// cruel codes :( even more cruel codes :((
 		if (Files.exists(Paths.get(PD_FILE)) && Files.size(Paths.get(PD_FILE)) != 0) {
 			try (BufferedReader br = Files.newBufferedReader(Paths.get(PD_FILE))) {
-				Arrays.stream(br.readLine().split(" ")).distinct().filter(s -> !s.isEmpty()).map(Node::uriAndType)
+				final List<Peers> storedPeers = new ArrayList<Peers>();
+				Arrays.stream(br.readLine().split(" ")).distinct().filter(s -> !s.isEmpty())
+						.filter(this::isStoredPeerFresh).map(Node::uriAndType)
 						.filter(u -> u.isPresent()).map(Optional::get).peek(u -> {
 							if (!"tcp".equals(((URI) u.keySet().toArray()[0]).getScheme())) {
 								log.warn("WARNING: {} is not a valid tcp:// uri schema.", u.keySet().toArray()[0]);
@@ -110,18 +146,16 @@ public class PD {
 								new InetSocketAddress(((URI) u.keySet().toArray()[0]).getHost(),
 										((URI) u.keySet().toArray()[0]).getPort()),
 								u.get(((URI) u.keySet().toArray()[0]))))
-						.peek(u -> {
-						}).forEach(peer -> {
-							if (connect == false) {
-								if (isPeerOnline(
-										new InetSocketAddress(peer.getAddress().getAddress(), defaultAPIport))) {
-									connect = true;
-								}
-							}
+						.forEach(peer -> {
 							boolean add = Node.instance().addPeer(peer);
 							log.debug("Adding {} to Node Peers. Success: {}",
 									peer.getAddress().getAddress().getHostAddress(), add);
+							storedPeers.add(peer);
 						});
+				// All checked at once
+				connect = probeAll(storedPeers,
+						peer -> isPeerOnline(new InetSocketAddress(peer.getAddress().getAddress(), defaultAPIport)))
+								.containsValue(true);
 			} catch (IOException e) {
 				log.error("Error opening nodes file. {}", e.getMessage());
 			}
@@ -286,12 +320,12 @@ public class PD {
 		}
 	}
 
-	// <Peeraddress, searched his Peers already?>
-	private Map<InetSocketAddress, Boolean> peerSearch = new HashMap<InetSocketAddress, Boolean>();
-	// Copy peers here because it can contain nodes that are not added to peers for peerSearch
-	private List<Peers> peersIterate = new ArrayList<Peers>();
 	// Keeps offline peers and re-checks them if server got disconnected completely because then peers is empty
 	private List<Peers> peersIterateDC = new ArrayList<Peers>();
+	// <Peeraddress, drop time>
+	private final Map<InetSocketAddress, Long> droppedPeers = new ConcurrentHashMap<>();
+	// Outcome of the last requests to each node, kept for PROBE_TTL_MS unless the node is a peer
+	private final Map<InetAddress, Probe> probes = new ConcurrentHashMap<>();
 
 	private Runnable spawnPDThread() {
 		return () -> {
@@ -299,161 +333,11 @@ public class PD {
 			log.info("Spawning PD Thread");
 			while (!shuttingDown) {
 
-				// Local address
-				InetSocketAddress local = new InetSocketAddress(
-						ipMode.get(getIpMode() == ipType.mixed ? ipType.ipv6 : getIpMode()), defaultMeshPort);
-
 				try {
-					List<Peers> peers = Node.instance().getPeers();
-					// Reset because its an arraylist, otherwise peers get added multiple times.
-					// peersIterateDC is not cleared.
-					peersIterate.clear();
-					// This should be cleared also.
-					peerSearch.clear();
-					if (peers.size() > 0) {
-						// Multiple threads should make this alot faster because of TIMEOUT.
-						ExecutorService statusExecutor = Executors.newFixedThreadPool(peers.size());
-						// online check
-						for (final Peers peer : peers) {
-							// Can start with initial list.
-							statusExecutor.execute(() -> {
-								if (!isPeerOnline(
-										new InetSocketAddress(peer.getAddress().getAddress(), defaultAPIport))) {
-									Node.instance().removePeer(peer);
-								} else {
-									// Check all online peers push status, also needed for bootstrap from peerlist.store
-									// because otherwise added peers are never pushed to
-									InetSocketAddress tempLocal = local;
-									if (peer.getType() == ipType.ipv4 && getIpMode() == ipType.mixed) {
-										tempLocal = new InetSocketAddress(ipMode.get(ipType.ipv4), defaultMeshPort);
-									}
-									int pushStatus = pushPeer(
-											new InetSocketAddress(peer.getAddress().getAddress().getHostAddress(),
-													defaultAPIport),
-											tempLocal);
-									if (pushStatus >= 0) {
-										log.debug("Push peer: {} Status: {}",
-												peer.getAddress().getAddress().getHostAddress(), pushStatus);
-									} else {
-										// Couldn't push to, so can remove
-										Node.instance().removePeer(peer);
-									}
-									// Add to search this peers peers anyway
-									peersIterate.add(peer);
-									// No double-entries because DC is not cleared
-									if (!peersIterateDC.contains(peer)) {
-										peersIterateDC.add(peer);
-									}
-								}
-							});
-						}
-						statusExecutor.shutdown();
-						// Give 1 sec buffer
-						if (!statusExecutor.awaitTermination(Configuration.CONNECTION_TIMEOUT + 1, TimeUnit.SECONDS)) {
-							log.warn("Threads didn't finish in {} msec.", Configuration.CONNECTION_TIMEOUT + 1);
-						}
-					} else {
-						// After node completely disconnected from net it loses all its peers.
-						// Check all nodes here after so reconnect is possible.
-						if (peersIterateDC.size() > 0) {
-							ExecutorService statusExecutor = Executors.newFixedThreadPool(peersIterateDC.size());
-							for (final Peers peer : peersIterateDC) {
-								statusExecutor.execute(() -> {
-									InetSocketAddress tempLocal = local;
-									if (isPeerOnline(
-											new InetSocketAddress(peer.getAddress().getAddress(), defaultAPIport))) {
-										// Have to push also because other nodes also lost connection.
-										// Determine ipType to push right local in case of mixed ipMode
-										if (peer.getType() == ipType.ipv4 && getIpMode() == ipType.mixed) {
-											tempLocal = new InetSocketAddress(ipMode.get(ipType.ipv4), defaultMeshPort);
-										}
-										if (pushPeer(
-												new InetSocketAddress(peer.getAddress().getAddress().getHostAddress(),
-														defaultAPIport),
-												tempLocal) >= 0) {
-											Node.instance().addPeer(new Peers(peer.getAddress(), peer.getType()));
-											log.debug("Adding peer after disconnect {}",
-													peer.getAddress().getAddress().getHostAddress());
-										}
-									}
-								});
-							}
-							statusExecutor.shutdown();
-							// Give 1 sec buffer
-							if (!statusExecutor.awaitTermination(Configuration.CONNECTION_TIMEOUT + 1,
-									TimeUnit.SECONDS)) {
-								log.warn("Threads didn't finish in {} msec.", Configuration.CONNECTION_TIMEOUT + 1);
-							}
-						}
-					}
-					// iterate while not enough peers found
-					// make it random
-					Collections.shuffle(peersIterate);
-					int i = -1;
-					while (peers.size() < PEERS_TO_FIND && i + 1 < peersIterate.size()) {
-						// Choose a node, this will also add peers of peers first searched to be searched since it
-						// iterates through all.
-						final Peers startSearch = peersIterate.get(++i);
-						InetSocketAddress startSearchAPI = new InetSocketAddress(
-								startSearch.getAddress().getAddress().getHostAddress(), defaultAPIport);
-						// At this point shouldn't be a check needed for mixed, because only don't search further on
-						// ipv4, which happens further below.
-						if (compatibleIpTypes(getIpMode(), startSearch.getType())) {
-							log.debug("Iteration Peer: {}", startSearch.getAddress().getAddress().getHostAddress());
-							// Check if this nodes peers already have been searched
-							if (!peerSearch.containsKey(startSearch.getAddress())
-									|| !peerSearch.get(startSearch.getAddress())) {
-								// Returns peer of peers.
-								Map<InetSocketAddress, ipType> searchList = getPeersAndType(startSearchAPI);
-								// Mark this peers peers as searched.
-								peerSearch.put(startSearch.getAddress(), true);
-								// Try to add these.
-								for (InetSocketAddress a : searchList.keySet()) {
-									// Contains means this peer has been added (was tried to be added) already.
-									// Don't add node to itself!
-									// Have to check with getIpType because they can be stored as mixed.
-									ipType tempA = getIpTypeForAddress(a.getAddress());
-									if (compatibleIpTypes(getIpMode(), tempA)) {
-										// Need to check ipv4 here for mixed
-										InetSocketAddress tempLocal2 = local;
-										if (getIpMode() == ipType.mixed) {
-											// Update local, need to determine right ipType to push for mixed
-											tempLocal2 = (tempA == ipType.ipv4)
-													? new InetSocketAddress(ipMode.get(ipType.ipv4), defaultMeshPort)
-													: local;
-
-										}
-										if (!peersIterate.contains(new Peers(a, searchList.get(a)))
-												&& !a.equals(tempLocal2)) {
-											// For mixed nodes don't add mixed peers from ipv4 and also don't search
-											// them since this will make it so the same mixed node gets searched twice
-											// with his ipv4 and ipv6 address
-											if (a.getAddress() != null && compatibleIpTypesForSearch(
-													startSearch.getType(), searchList.get(a))) {
-												InetSocketAddress aAPI = new InetSocketAddress(
-														a.getAddress().getHostAddress(), defaultAPIport);
-												// Add local peer to remote, only if able to add local to remote
-												// or if not added already
-												if (pushPeer(aAPI, tempLocal2) >= 0) {
-													// Add remote peer to local, test for duplicate.
-													boolean add = Node.instance()
-															.addPeer(new Peers(a, searchList.get(a)));
-													log.debug("Adding peer {}. Added: {}",
-															a.getAddress().getHostAddress(), add);
-													// check here because could reach threshold while for-iterations
-													if (peers.size() >= PEERS_TO_FIND) {
-														break;
-													}
-												}
-												// Even if the peer fails to be added, still search his peers.
-												peersIterate.add(new Peers(a, searchList.get(a)));
-											}
-										}
-									}
-								}
-							}
-						}
-					}
+					final long roundStart = System.currentTimeMillis();
+					discoveryRound();
+					log.debug("PD round done in {} ms, {} peers", System.currentTimeMillis() - roundStart,
+							Node.instance().getPeers().size());
 					Thread.sleep(1000 * 60 * 6); // Every 6 mins
 				} catch (final Exception e) {
 					log.error("PD Thread Exception: ", e);
@@ -464,6 +348,238 @@ public class PD {
 
 	}
 
+	// All the requests of a step are sent in parallel, so the round takes a few request timeouts whatever the number
+	// of peers
+	private void discoveryRound() throws InterruptedException {
+		final List<Peers> peers = Node.instance().getPeers();
+		final long deadline = System.currentTimeMillis() + ROUND_DEADLINE_MS;
+		evictStaleEntries();
+
+		final List<Peers> searchFrom = new ArrayList<Peers>();
+		if (peers.size() > 0) {
+			// Pushing also checks the peer is online, and is needed for bootstrap from peerlist.store because
+			// otherwise added peers are never pushed to
+			final List<Peers> checkedPeers = new ArrayList<Peers>(peers);
+			final Map<Peers, Integer> pushStatuses = probeAll(checkedPeers, this::pushPeer);
+			for (final Peers peer : checkedPeers) {
+				final Integer pushStatus = pushStatuses.get(peer);
+				if (pushStatus != null && pushStatus >= 0) {
+					log.debug("Push peer: {} Status: {}", peer.getAddress().getAddress().getHostAddress(), pushStatus);
+					// Search this peers peers anyway
+					searchFrom.add(peer);
+					// No double-entries because DC is not cleared
+					if (!peersIterateDC.contains(peer)) {
+						peersIterateDC.add(peer);
+					}
+				} else {
+					// Offline or couldn't push to, so can remove
+					Node.instance().removePeer(peer);
+				}
+			}
+		} else if (peersIterateDC.size() > 0) {
+			// After node completely disconnected from net it loses all its peers.
+			// Check all nodes here after so reconnect is possible, have to push also because other nodes also lost
+			// connection.
+			final List<Peers> checkedPeers = new ArrayList<Peers>();
+			for (final Peers peer : peersIterateDC) {
+				if (!wasDropped(peer.getAddress())) {
+					checkedPeers.add(peer);
+				}
+			}
+			final Map<Peers, Integer> pushStatuses = probeAll(checkedPeers, this::pushPeer);
+			for (final Peers peer : checkedPeers) {
+				final Integer pushStatus = pushStatuses.get(peer);
+				if (pushStatus != null && pushStatus >= 0) {
+					Node.instance().addPeer(new Peers(peer.getAddress(), peer.getType()));
+					log.debug("Adding peer after disconnect {}", peer.getAddress().getAddress().getHostAddress());
+				}
+			}
+		}
+
+		// Dropped peers are replaced, up to MAX_PEERS
+		final int peersToFind = Math.min(MAX_PEERS, Math.max(PEERS_TO_FIND, peers.size() + dropUnproductivePeers()));
+
+		// Every node is searched or pushed to once per round
+		final Set<InetSocketAddress> searched = new HashSet<InetSocketAddress>();
+		for (final Peers peer : peers) {
+			searched.add(peer.getAddress());
+		}
+		// At this point shouldn't be a check needed for mixed, because only don't search further on ipv4, which happens
+		// further below.
+		List<Peers> toSearch = new ArrayList<Peers>();
+		for (final Peers peer : searchFrom) {
+			if (compatibleIpTypes(getIpMode(), peer.getType())) {
+				toSearch.add(peer);
+			}
+		}
+		Collections.shuffle(toSearch);
+
+		// Each wave searches the next nodes of the list, the nodes found are searched after the ones already listed
+		while (peers.size() < peersToFind && !toSearch.isEmpty() && System.currentTimeMillis() < deadline
+				&& !shuttingDown) {
+
+			final List<Peers> wave = new ArrayList<Peers>(
+					toSearch.subList(0, Math.min(toSearch.size(), MAX_CONCURRENT_PROBES)));
+			toSearch.subList(0, wave.size()).clear();
+			final Map<Peers, Map<InetSocketAddress, ipType>> peerLists = probeAll(wave, this::getPeersAndType);
+
+			final List<Peers> candidates = new ArrayList<Peers>();
+			for (final Peers startSearch : wave) {
+				final Map<InetSocketAddress, ipType> searchList = peerLists.get(startSearch);
+				if (searchList == null) {
+					continue;
+				}
+				for (final Map.Entry<InetSocketAddress, ipType> a : searchList.entrySet()) {
+					if (a.getKey().getAddress() == null) {
+						continue;
+					}
+					// Have to check with getIpType because they can be stored as mixed.
+					final ipType tempA = getIpTypeForAddress(a.getKey().getAddress());
+					// For mixed nodes don't add mixed peers from ipv4 and also don't search them since this will make
+					// it so the same mixed node gets searched twice with his ipv4 and ipv6 address
+					// Don't add node to itself!
+					if (compatibleIpTypes(getIpMode(), tempA)
+							&& compatibleIpTypesForSearch(startSearch.getType(), a.getValue())
+							&& !a.getKey().equals(localAddress(tempA)) && !wasDropped(a.getKey())
+							&& !recentlyFailed(a.getKey().getAddress()) && searched.add(a.getKey())) {
+						candidates.add(new Peers(a.getKey(), a.getValue()));
+					}
+				}
+			}
+			Collections.shuffle(candidates);
+
+			// Only as many pushes at once as missing peers, a node pushed to adds this node
+			int nextCandidate = 0;
+			while (peers.size() < peersToFind && nextCandidate < candidates.size()
+					&& System.currentTimeMillis() < deadline) {
+				final List<Peers> pushed = candidates.subList(nextCandidate,
+						Math.min(candidates.size(), nextCandidate + peersToFind - peers.size()));
+				nextCandidate += pushed.size();
+				final Map<Peers, Integer> pushStatuses = probeAll(pushed, this::pushPeer);
+				for (final Peers candidate : pushed) {
+					final Integer pushStatus = pushStatuses.get(candidate);
+					if (pushStatus != null && pushStatus >= 0 && peers.size() < peersToFind) {
+						// Add remote peer to local, test for duplicate.
+						final boolean add = Node.instance().addPeer(candidate);
+						log.debug("Adding peer {}. Added: {}", candidate.getAddress().getAddress().getHostAddress(), add);
+					}
+				}
+			}
+			// Even if the candidates failed to be added, still search their peers.
+			toSearch.addAll(candidates);
+		}
+	}
+
+	// Forgets the nodes that haven't been requested for a while and aren't peers, and the expired bans
+	private void evictStaleEntries() {
+		final long now = System.currentTimeMillis();
+		final Set<InetAddress> peerAddresses = new HashSet<InetAddress>();
+		for (final Peers peer : Node.instance().getPeers()) {
+			peerAddresses.add(peer.getAddress().getAddress());
+		}
+		probes.entrySet().removeIf(probe -> !peerAddresses.contains(probe.getKey())
+				&& now - Math.max(probe.getValue().lastSuccess, probe.getValue().lastFailure) >= PROBE_TTL_MS);
+		droppedPeers.values().removeIf(dropTime -> now - dropTime >= DROPPED_PEER_BAN_MS);
+	}
+
+	// Runs the probe on every element in parallel. Returns the results of the probes done within
+	// PROBES_DEADLINE_MS, the others are left out.
+	private <T, R> Map<T, R> probeAll(final List<T> elements, final Function<T, R> probe) throws InterruptedException {
+		final Map<T, CompletableFuture<R>> futures = new HashMap<T, CompletableFuture<R>>();
+		for (final T element : elements) {
+			futures.put(element, CompletableFuture.supplyAsync(() -> probe.apply(element), probeExecutor));
+		}
+		try {
+			CompletableFuture.allOf(futures.values().toArray(new CompletableFuture<?>[futures.size()]))
+					.get(PROBES_DEADLINE_MS, TimeUnit.MILLISECONDS);
+		} catch (final TimeoutException e) {
+			log.debug("Probes didn't finish in {} msec.", PROBES_DEADLINE_MS);
+		} catch (final ExecutionException e) {
+			log.debug("Probe failure: {}", e.getMessage());
+		}
+		final Map<T, R> results = new HashMap<T, R>();
+		for (final Map.Entry<T, CompletableFuture<R>> future : futures.entrySet()) {
+			if (future.getValue().isDone() && !future.getValue().isCompletedExceptionally()) {
+				results.put(future.getKey(), future.getValue().join());
+			}
+		}
+		return results;
+	}
+
+	// The address this node pushes to a node of that type
+	private InetSocketAddress localAddress(final ipType type) {
+		if (type == ipType.ipv4 && getIpMode() == ipType.mixed) {
+			return new InetSocketAddress(ipMode.get(ipType.ipv4), defaultMeshPort);
+		}
+		return new InetSocketAddress(ipMode.get(getIpMode() == ipType.mixed ? ipType.ipv6 : getIpMode()),
+				defaultMeshPort);
+	}
+
+	// True if the last request to the node failed less than FAILED_PROBE_TTL_MS ago
+	private boolean recentlyFailed(final InetAddress address) {
+		final Probe probe = probes.get(address);
+		return probe != null && probe.lastFailure > probe.lastSuccess
+				&& System.currentTimeMillis() - probe.lastFailure < FAILED_PROBE_TTL_MS;
+	}
+
+	// Entries are "tcp://host:port|type|last seen", older files have no last seen time
+	private boolean isStoredPeerFresh(final String entry) {
+		final String[] values = entry.split("\\|");
+		if (values.length < 3) {
+			return true;
+		}
+		try {
+			return System.currentTimeMillis() - Long.parseLong(values[2]) < STORED_PEER_TTL_MS;
+		} catch (NumberFormatException e) {
+			return true;
+		}
+	}
+
+	// Drops the peers whose score is far below the others, the milestone peers are kept. Returns the number of dropped
+	// peers.
+	private int dropUnproductivePeers() {
+		final List<Peers> scoredPeers = new ArrayList<Peers>();
+		for (final Peers peer : Node.instance().getPeersWithoutMilestone()) {
+			if (peer.getStatistics().isScored()) {
+				scoredPeers.add(peer);
+			}
+		}
+		// Not enough peers to compare
+		if (scoredPeers.size() < 3) {
+			return 0;
+		}
+		scoredPeers.sort(Comparator.comparingDouble(peer -> peer.getStatistics().score()));
+		final double minScore = scoredPeers.get(scoredPeers.size() / 2).getStatistics().score() * MIN_RELATIVE_SCORE;
+
+		int numberOfDroppedPeers = 0;
+		for (final Peers peer : scoredPeers) {
+			final double score = peer.getStatistics().score();
+			if (numberOfDroppedPeers == MAX_PEERS_TO_DROP || score >= minScore) {
+				break;
+			}
+			if (Node.instance().removePeer(peer)) {
+				droppedPeers.put(peer.getAddress(), System.currentTimeMillis());
+				numberOfDroppedPeers++;
+				log.info("Dropping peer {} with score {} (minimum {})", peer.getAddress().getAddress().getHostAddress(),
+						String.format("%.4f", score), String.format("%.4f", minScore));
+			}
+		}
+		return numberOfDroppedPeers;
+	}
+
+	// True if the peer has been dropped for its score less than DROPPED_PEER_BAN_MS ago
+	public boolean wasDropped(final InetSocketAddress address) {
+		final Long dropTime = droppedPeers.get(address);
+		if (dropTime == null) {
+			return false;
+		}
+		if (System.currentTimeMillis() - dropTime < DROPPED_PEER_BAN_MS) {
+			return true;
+		}
+		droppedPeers.remove(address);
+		return false;
+	}
+
 	// Simple connection check with timeout (faster than API check)
 	public static boolean isPeerOnline(InetSocketAddress address) {
 		try (Socket soc = new Socket()) {
@@ -478,100 +594,64 @@ public class PD {
 	// Checks peer online status via API ping command (more specific than just checkPeerConnect as it checks the API)
 	// Returns only "ip" if it returns the expected JSON
 	private Optional<String> isPeerRunning(InetSocketAddress address) {
-		// Checks peer online status via API ping command
-		HttpURLConnection http = null;
 		try {
-			String urlString = getHostURL(address);
-			URL url = new URL("http://" + urlString);
-			URLConnection con = url.openConnection();
-			http = (HttpURLConnection) con;
-			http.setRequestMethod("POST");
-			http.setDoOutput(true);
-			byte[] out = "{\"command\": \"ping\"}".getBytes(StandardCharsets.UTF_8);
-			int length = out.length;
-
-			http.setFixedLengthStreamingMode(length);
-			http.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-			http.setConnectTimeout(Configuration.CONNECTION_TIMEOUT);
-			http.setReadTimeout(Configuration.CONNECTION_TIMEOUT);
-			// Here if connection refused
-			http.connect();
-
-			try (OutputStream os = http.getOutputStream()) {
-				os.write(out);
-				os.flush();
-			}
-			// Json
-			String json;
-			InputStream in = new BufferedInputStream(http.getInputStream());
-			json = org.apache.commons.io.IOUtils.toString(in, StandardCharsets.UTF_8.name());
-			// Closing the inputStream will cause a undertow connection reset by peer on the opposing API
-			String ip = JsonPath.parse(json).read("$.ip");
-
-			return Optional.of(ip);
+			return post(address, "{\"command\": \"ping\"}").map(json -> JsonPath.parse(json).read("$.ip"));
 		} catch (PathNotFoundException e) {
 			log.warn("JSON Path failure.");
-		} catch (IOException e) {
-			log.debug("Can't connect to API on address: {}", address.getAddress().getHostAddress());
-		} finally {
-			if (http != null) {
-				http.disconnect();
-			}
 		}
 		return Optional.empty();
 	}
 
-	// Get Peerlist from a node
-	private Map<InetSocketAddress, ipType> getPeersAndType(InetSocketAddress remote) {
+	// Get Peerlist from a node, cached for PEER_LIST_TTL_MS. Returns null if the node couldn't be reached.
+	private Map<InetSocketAddress, ipType> getPeersAndType(Peers node) {
+		final Probe probe = probes.computeIfAbsent(node.getAddress().getAddress(), address -> new Probe());
+		final Map<InetSocketAddress, ipType> cachedPeerList = probe.peerList;
+		if (cachedPeerList != null && System.currentTimeMillis() - probe.peerListTime < PEER_LIST_TTL_MS) {
+			return cachedPeerList;
+		}
+		final Optional<String> json = post(
+				new InetSocketAddress(node.getAddress().getAddress().getHostAddress(), defaultAPIport),
+				"{\"command\": \"getPeerAddresses\"}");
+		if (!json.isPresent()) {
+			return null;
+		}
 		Map<InetSocketAddress, ipType> addresses = new HashMap<InetSocketAddress, ipType>();
-		HttpURLConnection http = null;
 		try {
-			String urlString = getHostURL(remote);
-			URL url = new URL("http://" + urlString);
-			URLConnection con = url.openConnection();
-			http = (HttpURLConnection) con;
-			http.setRequestMethod("POST");
-			http.setDoOutput(true);
-
-			byte[] out = "{\"command\": \"getPeerAddresses\"}".getBytes(StandardCharsets.UTF_8);
-			int length = out.length;
-
-			http.setFixedLengthStreamingMode(length);
-			http.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-			http.setConnectTimeout(Configuration.CONNECTION_TIMEOUT);
-			http.setReadTimeout(Configuration.CONNECTION_TIMEOUT);
-			// Here if connection refused
-			http.connect();
-
-			try (OutputStream os = http.getOutputStream()) {
-				os.write(out);
-				os.flush();
-			}
-			// Read Json
-			String json;
-			InputStream in = new BufferedInputStream(http.getInputStream());
-			json = org.apache.commons.io.IOUtils.toString(in, StandardCharsets.UTF_8.name());
-			// Closing the inputStream will cause a undertow connection reset by peer on the opposing API
-			List<String> peerlist = JsonPath.parse(json).read("$.peerlist");
-
+			List<String> peerlist = JsonPath.parse(json.get()).read("$.peerlist");
 			for (String p : peerlist) {
 				// ipv6 possible
 				getAddressAndType(p).ifPresent(map -> {
 					addresses.putAll(map);
 				});
 			}
-		} catch (IOException e) {
-			log.debug("Can't connect to API on address: {}", remote.getAddress().getHostAddress());
-		} finally {
-			if (http != null) {
-				http.disconnect();
-			}
+		} catch (PathNotFoundException e) {
+			log.warn("JSON Path failure.");
+			return null;
 		}
+		probe.peerListTime = System.currentTimeMillis();
+		probe.peerList = addresses;
 		return addresses;
 	}
 
 	// 0 already added, 1 added, -1 maxed not added.
-	private Integer pushPeer(InetSocketAddress remote, InetSocketAddress local) {
+	private Integer pushPeer(Peers peer) {
+		final InetSocketAddress remote = new InetSocketAddress(peer.getAddress().getAddress().getHostAddress(),
+				defaultAPIport);
+		final InetSocketAddress local = localAddress(peer.getType());
+		try {
+			// in case of an error, treat as not added.
+			return post(remote, "{\"command\": \"addPeer\", \"uri\": \"tcp://" + getHostURL(local) + "\", \"type\": \""
+					+ getIpMode().name() + "\"}").map(json -> JsonPath.parse(json).<Integer>read("$.addedPeer"))
+							.orElse(-1);
+		} catch (PathNotFoundException e) {
+			log.warn("JSON Path failure.");
+			return -1;
+		}
+	}
+
+	// Posts an API command, returns the JSON answer. The outcome is recorded in the probes of the node.
+	private Optional<String> post(InetSocketAddress remote, String command) {
+		final Probe probe = probes.computeIfAbsent(remote.getAddress(), address -> new Probe());
 		HttpURLConnection http = null;
 		try {
 			String urlString = getHostURL(remote);
@@ -581,8 +661,7 @@ public class PD {
 			http.setRequestMethod("POST");
 			http.setDoOutput(true);
 
-			byte[] out = ("{\"command\": \"addPeer\", \"uri\": \"tcp://" + getHostURL(local) + "\", \"type\": \""
-					+ getIpMode().name() + "\"}").getBytes(StandardCharsets.UTF_8);
+			byte[] out = command.getBytes(StandardCharsets.UTF_8);
 			int length = out.length;
 
 			http.setFixedLengthStreamingMode(length);
@@ -601,14 +680,12 @@ public class PD {
 			InputStream in = new BufferedInputStream(http.getInputStream());
 			json = org.apache.commons.io.IOUtils.toString(in, StandardCharsets.UTF_8.name());
 			// Closing the inputStream will cause a undertow connection reset by peer on the opposing API
-
-			Integer addedPeer = JsonPath.parse(json).read("$.addedPeer");
-			// 0 already added, 1 added, -1 maxed not added.
-			return addedPeer;
+			probe.lastSuccess = System.currentTimeMillis();
+			return Optional.of(json);
 		} catch (IOException e) {
-			log.debug("Failure pushing Peer address to: {} {}", remote.getAddress().getHostAddress(), e.getMessage());
-			// in case of an error, treat as not added.
-			return -1;
+			log.debug("Can't connect to API on address: {} {}", remote.getAddress().getHostAddress(), e.getMessage());
+			probe.lastFailure = System.currentTimeMillis();
+			return Optional.empty();
 		} finally {
 			if (http != null) {
 				http.disconnect();
@@ -616,6 +693,13 @@ public class PD {
 		}
 	}
 
+	private static class Probe {
+		private volatile long lastSuccess;
+		private volatile long lastFailure;
+		private volatile Map<InetSocketAddress, ipType> peerList;
+		private volatile long peerListTime;
+	}
+
 	public ipType getIpMode() {
 		if (ipMode.get(ipType.ipv4) != "" && ipMode.get(ipType.ipv6) != "") {
 			return ipType.mixed;
@@ -696,7 +780,11 @@ public class PD {
 				for (Peers n : Node.instance().getPeers()) {
 					// ipv6 format
 					String uri = getHostURL(n.getAddress());
-					br.append("tcp://" + uri + "|" + n.getType().name() + StringUtils.SPACE);
+					// The peers were pushed to during the last round, if not since
+					final Probe probe = probes.get(n.getAddress().getAddress());
+					final long lastSeen = probe != null && probe.lastSuccess > 0 ? probe.lastSuccess
+							: System.currentTimeMillis();
+					br.append("tcp://" + uri + "|" + n.getType().name() + "|" + lastSeen + StringUtils.SPACE);
 				}
 				br.close();
 			} catch (IOException e) {
@@ -707,6 +795,7 @@ public class PD {
 			log.info("No Peerlist created since Peers were empty.");
 		}
 		shuttingDown = true;
+		probeExecutor.shutdownNow();
 		executor.awaitTermination(6, TimeUnit.SECONDS);
 	}
 
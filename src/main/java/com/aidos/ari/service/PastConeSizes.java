@@ -0,0 +1,230 @@
+package com.aidos.ari.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageListener;
+import com.aidos.ari.service.storage.StorageTransactions;
+
+/**
+ * Keeps an approximate past cone size, the number of transactions approved above the latest solid milestone, for every
+ * transaction stored since, so tips can be rated in O(1) instead of walking the DAG. Newly stored transactions are
+ * queued by the storage layer and a background thread walks their past cones, bounded in depth and visits. Where the
+ * walk stops, the largest past cone size already known is added, so the deep cones keep growing past the bounds
+ * instead of all being rated the same.
+ */
+public class PastConeSizes {
+
+    private static final Logger log = LoggerFactory.getLogger(PastConeSizes.class);
+
+    // Work done per stored transaction is bounded by these two values
+    private static final int MAX_WALK_DEPTH = 32;
+    private static final int MAX_WALK_VISITS = 2048;
+
+    private static final int QUEUE_SIZE = 10000;
+    private static final int BATCH_SIZE = 256;
+    private static final int MAX_TRACKED_TRANSACTIONS = 1000000;
+    private static final int MAX_CONFIRMED_TRANSACTIONS = 100000;
+
+    private volatile boolean shuttingDown;
+
+    private final BlockingQueue<Long> storedTransactions = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Map<Long, Integer> pastConeSizes = new ConcurrentHashMap<>();
+    // Tracked transactions in the order they were stored, only used by the updater thread
+    private final Queue<Long> trackingOrder = new ArrayDeque<>();
+
+    // Transactions confirmed by a solid milestone, the walks stop there
+    private final Set<Long> confirmedTransactions = Collections.newSetFromMap(new LinkedHashMap<Long, Boolean>() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_CONFIRMED_TRANSACTIONS;
+        }
+    });
+
+    private volatile long solidMilestonePointer;
+
+    public void init() {
+
+        Storage.instance().addListener(new StorageListener() {
+
+            @Override
+            public void transactionStored(final long pointer, final Transaction transaction) {
+                // Transactions stored while the queue is full are left unrated
+                storedTransactions.offer(pointer);
+            }
+
+            @Override
+            public void transactionPruned(final long pointer) {
+                PastConeSizes.this.transactionPruned(pointer);
+            }
+        });
+
+        (new Thread(() -> {
+
+            final List<Long> batch = new ArrayList<>(BATCH_SIZE);
+            while (!shuttingDown) {
+
+                try {
+                    final Long pointer = storedTransactions.poll(1, TimeUnit.SECONDS);
+                    if (pointer != null) {
+                        batch.add(pointer);
+                        storedTransactions.drainTo(batch, BATCH_SIZE - 1);
+                        for (final long storedPointer : batch) {
+                            walk(storedPointer);
+                        }
+                        batch.clear();
+                        evict();
+                    }
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Error during past cone sizes update", e);
+                    batch.clear();
+                }
+            }
+        }, "Past Cone Sizes Updater")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+    }
+
+    // The cell of a pruned transaction is going to be reused, what is known about it mustn't apply to the next
+    // transaction stored there
+    void transactionPruned(final long pointer) {
+        pastConeSizes.remove(pointer);
+        synchronized (confirmedTransactions) {
+            confirmedTransactions.remove(pointer);
+        }
+    }
+
+    // Number of transactions approved by the transaction above the latest solid milestone, itself included
+    public int pastConeSize(final long pointer) {
+        final Integer pastConeSize = pastConeSizes.get(pointer);
+        return pastConeSize == null ? 0 : pastConeSize;
+    }
+
+    private void walk(final long pointer) {
+
+        final Map<Long, Integer> depths = new HashMap<>();
+        final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(Collections.singleton(pointer));
+        depths.put(pointer, 0);
+        // Largest known past cone where the walk stops, approximates the part of the cone it doesn't visit
+        int beyondWalk = 0;
+
+        Long ancestor;
+        while ((ancestor = nonAnalyzedTransactions.poll()) != null) {
+
+            final int depth = depths.get(ancestor);
+            if (ancestor == solidMilestonePointer) {
+                continue;
+            }
+            if (depth == MAX_WALK_DEPTH) {
+                beyondWalk = Math.max(beyondWalk, pastConeSize(ancestor) - 1);
+                continue;
+            }
+
+            final Transaction transaction = StorageTransactions.instance().loadTransaction(ancestor);
+            if (transaction.type == Storage.PREFILLED_SLOT) {
+                continue;
+            }
+            for (final long approvee : new long[] {transaction.trunkTransactionPointer, transaction.branchTransactionPointer}) {
+                if (depths.containsKey(approvee) || isConfirmed(approvee)) {
+                    continue;
+                }
+                if (depths.size() < MAX_WALK_VISITS) {
+                    depths.put(approvee, depth + 1);
+                    nonAnalyzedTransactions.offer(approvee);
+                } else {
+                    beyondWalk = Math.max(beyondWalk, pastConeSize(approvee));
+                }
+            }
+        }
+        if (pastConeSizes.put(pointer, depths.size() + beyondWalk) == null) {
+            trackingOrder.offer(pointer);
+        }
+    }
+
+    // The oldest tracked transactions go first, they are the next to be confirmed
+    private void evict() {
+
+        Long pointer;
+        while (pastConeSizes.size() > MAX_TRACKED_TRANSACTIONS && (pointer = trackingOrder.poll()) != null) {
+            pastConeSizes.remove(pointer);
+        }
+        // Confirmed transactions are only removed from the map
+        if (trackingOrder.size() > 2 * MAX_TRACKED_TRANSACTIONS) {
+            trackingOrder.removeIf(trackedPointer -> !pastConeSizes.containsKey(trackedPointer));
+        }
+    }
+
+    private boolean isConfirmed(final long pointer) {
+        synchronized (confirmedTransactions) {
+            return confirmedTransactions.contains(pointer);
+        }
+    }
+
+    /**
+     * Drops the past cone sizes of the transactions confirmed by the new solid milestone. The walk only follows
+     * transactions that are still tracked, so it stops at the previous solid milestone.
+     */
+    public void solidMilestoneChanged(final Hash milestone) {
+
+        final long milestonePointer = StorageTransactions.instance().transactionPointer(milestone.bytes());
+        if (milestonePointer <= 0) {
+            return;
+        }
+        solidMilestonePointer = milestonePointer;
+
+        int numberOfConfirmedTransactions = 0;
+        final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(Collections.singleton(milestonePointer));
+        Long pointer;
+        while ((pointer = nonAnalyzedTransactions.poll()) != null) {
+
+            if (pastConeSizes.remove(pointer) != null) {
+
+                numberOfConfirmedTransactions++;
+                synchronized (confirmedTransactions) {
+                    confirmedTransactions.add(pointer);
+                }
+
+                final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+                if (transaction.type != Storage.PREFILLED_SLOT) {
+                    nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+                    nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+                }
+            }
+        }
+        log.debug("{} transactions confirmed, {} still rated", numberOfConfirmedTransactions, pastConeSizes.size());
+    }
+
+    private static PastConeSizes instance = new PastConeSizes();
+
+    private PastConeSizes() {}
+
+    public static PastConeSizes instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,147 @@
+package com.aidos.ari.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.aidos.ari.service.storage.Storage;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * Serialized responses of the read-only commands polled by wallets and explorers. The keys hold the command, its
+ * parameters and the generations the response depends on: the milestone generation moves with the latest solid
+ * milestone and the snapshot, the store generation with every stored transaction, so a response is never served once
+ * a newer state could change it. A change of milestone also drops all the entries, the older ones are evicted in least
+ * recently used order once the cache holds MAX_WEIGHT array elements.
+ */
+public class ResponseCache {
+
+    private static final int MAX_WEIGHT = 200000;
+    // Larger responses would evict most of the others
+    private static final int MAX_ENTRY_WEIGHT = MAX_WEIGHT / 10;
+
+    private final AtomicLong milestoneGeneration = new AtomicLong();
+    private final AtomicLong storeGeneration = new AtomicLong();
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private int weight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static class Entry {
+
+        private final JsonObject response;
+        private final int weight;
+        private final long time = System.currentTimeMillis();
+
+        private Entry(final JsonObject response, final int weight) {
+            this.response = response;
+            this.weight = weight;
+        }
+    }
+
+    public void init() {
+        Storage.instance().addListener((pointer, transaction) -> transactionStored());
+    }
+
+    // Called when the latest solid milestone or the snapshot changes
+    public void milestoneChanged() {
+        milestoneGeneration.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    // Called by the storage with its lock held, only moves the generation
+    public void transactionStored() {
+        storeGeneration.incrementAndGet();
+    }
+
+    // Key of a response that only changes with the milestone generation
+    public String milestoneKey(final String command, final Object... parameters) {
+        return key(new StringBuilder(command).append('|').append(milestoneGeneration.get()), parameters);
+    }
+
+    // Key of a response that changes with every stored transaction too
+    public String storeKey(final String command, final Object... parameters) {
+        return key(new StringBuilder(command).append('|').append(milestoneGeneration.get()).append('|')
+                .append(storeGeneration.get()), parameters);
+    }
+
+    private static String key(final StringBuilder key, final Object... parameters) {
+        for (final Object parameter : parameters) {
+            key.append('|').append(parameter);
+        }
+        return key.toString();
+    }
+
+    // Null if the response isn't cached or is older than maxAge
+    public JsonObject get(final String key, final long maxAge) {
+        final Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry == null || System.currentTimeMillis() - entry.time > maxAge) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.response;
+    }
+
+    // The response mustn't be changed once cached, it's shared by the requests
+    public void put(final String key, final JsonObject response) {
+
+        int entryWeight = 1;
+        for (final Map.Entry<String, JsonElement> member : response.entrySet()) {
+            if (member.getValue().isJsonArray()) {
+                entryWeight += member.getValue().getAsJsonArray().size();
+            }
+        }
+        if (entryWeight > MAX_ENTRY_WEIGHT) {
+            return;
+        }
+
+        synchronized (entries) {
+            final Entry previousEntry = entries.put(key, new Entry(response, entryWeight));
+            weight += entryWeight - (previousEntry == null ? 0 : previousEntry.weight);
+            while (weight > MAX_WEIGHT) {
+                final Map.Entry<String, Entry> eldest = entries.entrySet().iterator().next();
+                weight -= eldest.getValue().weight;
+                entries.remove(eldest.getKey());
+                evictions.increment();
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private static ResponseCache instance = new ResponseCache();
+
+    private ResponseCache() {}
+
+    public static ResponseCache instance() {
+        return instance;
+    }
+}
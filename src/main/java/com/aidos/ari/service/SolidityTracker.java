@@ -0,0 +1,269 @@
+package com.aidos.ari.service;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Milestone;
+import com.aidos.ari.Snapshot;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.AbstractStorage;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageListener;
+import com.aidos.ari.service.storage.StorageTransactions;
+
+/**
+ * Tracks the latest solid submesh milestone, i.e. the latest milestone whose whole past cone is stored. Transactions
+ * found solid are remembered, so a new milestone only costs a walk over the part of its past cone that wasn't solid
+ * yet. The walk targets the latest stored milestone, stops at the missing transactions and resumes from them as soon
+ * as the storage receives them. While the target isn't solid, the milestones below it are checked from the highest
+ * one after transactions arrived, so the solid milestone keeps moving during a sync.
+ */
+public class SolidityTracker {
+
+    private static final Logger log = LoggerFactory.getLogger(SolidityTracker.class);
+
+    private static final long IDLE_WAIT_MS = 1000;
+    // Bounds the checks of the milestones below the target, which walk their past cones again
+    private static final long LOWER_MILESTONES_CHECK_INTERVAL_MS = 1000;
+    private static final int MAX_CHECKED_TRANSACTIONS = 100000;
+
+    private volatile boolean shuttingDown;
+
+    // Indexed by cell number, only used by the tracker thread
+    private final BitSet solidTransactions = new BitSet();
+    private final BitSet analyzedTransactions = new BitSet();
+    private final Queue<Long> nonAnalyzedTransactions = new LinkedList<>();
+
+    // Frontier of the walk: transactions of the past cone that are only known by their hash
+    private final Set<Long> missingTransactions = ConcurrentHashMap.newKeySet();
+    private final Queue<Long> arrivedTransactions = new ConcurrentLinkedQueue<>();
+    // Their cells are going to be reused, so their flags are cleared before anything else is looked at
+    private final Queue<Long> prunedTransactions = new ConcurrentLinkedQueue<>();
+
+    private final Object wakeUpMonitor = new Object();
+    private boolean wokenUp;
+
+    private Hash targetMilestone = Hash.NULL_HASH;
+    private int targetMilestoneIndex = Milestone.MILESTONE_START_INDEX;
+    private boolean transactionsArrived;
+    private long lowerMilestonesCheckTime;
+
+    public void init() {
+
+        Storage.instance().addListener(new StorageListener() {
+
+            @Override
+            public void transactionStored(final long pointer, final Transaction transaction) {
+                if (missingTransactions.remove(pointer)) {
+                    arrivedTransactions.offer(pointer);
+                    wakeUp();
+                }
+            }
+
+            @Override
+            public void transactionPruned(final long pointer) {
+                prunedTransactions.offer(pointer);
+            }
+        });
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                try {
+                    synchronized (wakeUpMonitor) {
+                        if (!wokenUp) {
+                            wakeUpMonitor.wait(IDLE_WAIT_MS);
+                        }
+                        wokenUp = false;
+                    }
+                    updateSolidMilestone();
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Error during solidity tracking", e);
+                }
+            }
+        }, "Solidity Tracker")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+        wakeUp();
+    }
+
+    // Called when a new milestone is found, so it doesn't wait for the next idle check
+    public void wakeUp() {
+        synchronized (wakeUpMonitor) {
+            wokenUp = true;
+            wakeUpMonitor.notify();
+        }
+    }
+
+    public int missingTransactionsSize() {
+        return missingTransactions.size();
+    }
+
+    private void updateSolidMilestone() {
+
+        forgetPrunedTransactions();
+
+        // The index is read once, its hash comes from the milestones found so far
+        for (int index = Milestone.latestMilestoneIndex; index > targetMilestoneIndex; index--) {
+
+            final Hash milestone = Milestone.milestone(index);
+            final long pointer = milestone == null ? 0 : StorageTransactions.instance().transactionPointer(milestone.bytes());
+            if (pointer > 0) {
+                // The cone of the previous target stays analyzed, the new milestone is expected to approve it
+                targetMilestone = milestone;
+                targetMilestoneIndex = index;
+                nonAnalyzedTransactions.offer(pointer);
+                break;
+            }
+        }
+
+        Long pointer;
+        while ((pointer = arrivedTransactions.poll()) != null) {
+            offerApprovees(StorageTransactions.instance().loadTransaction(pointer));
+            transactionsArrived = true;
+        }
+
+        while ((pointer = nonAnalyzedTransactions.poll()) != null) {
+
+            forgetPrunedTransactions();
+            final int cell = cell(pointer);
+            if (solidTransactions.get(cell) || analyzedTransactions.get(cell)) {
+                continue;
+            }
+            analyzedTransactions.set(cell);
+
+            Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+            if (Snapshot.isSolidEntryPoint(transaction.hash)) {
+                continue;
+            }
+            if (transaction.type == Storage.PREFILLED_SLOT) {
+
+                missingTransactions.add(pointer);
+                TransactionRequester.instance().requestTransaction(pointer, transaction.hash, true);
+                // The transaction may have been stored before it was added to the frontier
+                transaction = StorageTransactions.instance().loadTransaction(pointer);
+                if (transaction.type == Storage.PREFILLED_SLOT) {
+                    continue;
+                }
+                TransactionRequester.instance().cancelRequest(pointer);
+                if (!missingTransactions.remove(pointer)) {
+                    continue;
+                }
+            }
+            offerApprovees(transaction);
+        }
+
+        if (targetMilestoneIndex <= Milestone.latestSolidSubmeshMilestoneIndex) {
+            return;
+        }
+        if (missingTransactions.isEmpty() && arrivedTransactions.isEmpty()) {
+
+            solidTransactions.or(analyzedTransactions);
+            analyzedTransactions.clear();
+            solidMilestoneChanged(targetMilestone, targetMilestoneIndex);
+
+        } else if (transactionsArrived
+                && System.currentTimeMillis() - lowerMilestonesCheckTime >= LOWER_MILESTONES_CHECK_INTERVAL_MS) {
+
+            transactionsArrived = false;
+            lowerMilestonesCheckTime = System.currentTimeMillis();
+            for (int index = targetMilestoneIndex - 1; index > Milestone.latestSolidSubmeshMilestoneIndex; index--) {
+
+                final Hash milestone = Milestone.milestone(index);
+                final long milestonePointer = milestone == null ? 0
+                        : StorageTransactions.instance().transactionPointer(milestone.bytes());
+                if (milestonePointer > 0 && solid(milestonePointer)) {
+                    solidMilestoneChanged(milestone, index);
+                    break;
+                }
+            }
+        }
+    }
+
+    // Walks the part of the past cone that isn't known to be solid yet, and remembers it if it's solid
+    private boolean solid(final long pointer) {
+
+        final BitSet visitedTransactions = new BitSet();
+        final Queue<Long> transactionsToVisit = new LinkedList<>(Collections.singleton(pointer));
+        int numberOfVisitedTransactions = 0;
+        Long transactionPointer;
+        while ((transactionPointer = transactionsToVisit.poll()) != null) {
+
+            forgetPrunedTransactions();
+            final int cell = cell(transactionPointer);
+            if (solidTransactions.get(cell) || visitedTransactions.get(cell)) {
+                continue;
+            }
+            if (++numberOfVisitedTransactions > MAX_CHECKED_TRANSACTIONS) {
+                return false;
+            }
+            visitedTransactions.set(cell);
+
+            final Transaction transaction = StorageTransactions.instance().loadTransaction(transactionPointer);
+            if (Snapshot.isSolidEntryPoint(transaction.hash)) {
+                continue;
+            }
+            if (transaction.type == Storage.PREFILLED_SLOT) {
+                return false;
+            }
+            transactionsToVisit.offer(transaction.trunkTransactionPointer);
+            transactionsToVisit.offer(transaction.branchTransactionPointer);
+        }
+        solidTransactions.or(visitedTransactions);
+        return true;
+    }
+
+    private void forgetPrunedTransactions() {
+
+        Long pointer;
+        while ((pointer = prunedTransactions.poll()) != null) {
+            solidTransactions.clear(cell(pointer));
+            analyzedTransactions.clear(cell(pointer));
+        }
+    }
+
+    private void solidMilestoneChanged(final Hash milestone, final int index) {
+
+        final int previousSolidSubmeshMilestoneIndex = Milestone.latestSolidSubmeshMilestoneIndex;
+        Milestone.latestSolidSubmeshMilestone = milestone;
+        Milestone.latestSolidSubmeshMilestoneIndex = index;
+
+        log.info("Latest SOLID SUBMESH milestone has changed from #" + previousSolidSubmeshMilestoneIndex + " to #" + index);
+        PastConeSizes.instance().solidMilestoneChanged(milestone);
+        ResponseCache.instance().milestoneChanged();
+        Subscriptions.instance().solidMilestoneChanged(milestone, index);
+    }
+
+    private void offerApprovees(final Transaction transaction) {
+        nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+        nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+    }
+
+    private static int cell(final long pointer) {
+        return (int) ((pointer - (AbstractStorage.CELLS_OFFSET - AbstractStorage.SUPER_GROUPS_OFFSET)) / AbstractStorage.CELL_SIZE);
+    }
+
+    private static SolidityTracker instance = new SolidityTracker();
+
+    private SolidityTracker() {}
+
+    public static SolidityTracker instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,427 @@
+package com.aidos.ari.service;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.dto.ApiRequest;
+import com.aidos.ari.service.storage.Storage;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.CloseMessage;
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+
+/**
+ * WebSocket endpoint of the API pushing the events of the node to the clients subscribed to them, instead of having
+ * them poll. A client sends {"command": "subscribe"} or {"command": "unsubscribe"} with "topics" among TOPICS, and
+ * "addresses", "tags" or "bundles" to get the transactions of those only. The events are queued by the storage and
+ * milestone threads and published by a thread of their own. A client with more than MAX_PENDING_MESSAGES messages
+ * not sent yet is too slow to keep up and is disconnected. The messages not sent yet to all the clients are also bounded
+ * by MAX_PENDING_BYTES, the client holding the most of them is disconnected when it's exceeded, so that many clients
+ * together can't hold the memory of the node either.
+ */
+public class Subscriptions implements WebSocketConnectionCallback {
+
+    private static final Logger log = LoggerFactory.getLogger(Subscriptions.class);
+
+    public static final String TRANSACTIONS = "transactions", MILESTONES = "milestones",
+            SOLID_MILESTONES = "solidMilestones";
+    private static final Set<String> TOPICS = new HashSet<>(Arrays.asList(TRANSACTIONS, MILESTONES, SOLID_MILESTONES));
+    private static final int TAG_SIZE_IN_TRYTES = 27;
+
+    private static final int MAX_SUBSCRIBERS = 1000;
+    private static final int MAX_FILTERS_PER_SUBSCRIBER = 1000;
+    private static final int MAX_PENDING_MESSAGES = 1000;
+    private static final long MAX_PENDING_BYTES = 32 * 1024 * 1024;
+    private static final int QUEUE_SIZE = 10000;
+
+    private volatile boolean shuttingDown;
+
+    private final Gson gson = new Gson();
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Stored transactions and milestone messages, published in order
+    private final BlockingQueue<Object> events = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final AtomicLong droppedEvents = new AtomicLong();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    private static class Subscriber {
+
+        private final WebSocketChannel channel;
+        private final Set<String> topics = ConcurrentHashMap.newKeySet();
+        private final Set<Hash> addresses = ConcurrentHashMap.newKeySet();
+        private final Set<Hash> tags = ConcurrentHashMap.newKeySet();
+        private final Set<Hash> bundles = ConcurrentHashMap.newKeySet();
+        // Guarded by the subscriber, nothing is counted anymore once it's disconnected
+        private int pendingMessages;
+        private long pendingBytes;
+        private boolean disconnected;
+
+        private Subscriber(final WebSocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private boolean hasFilters() {
+            return !addresses.isEmpty() || !tags.isEmpty() || !bundles.isEmpty();
+        }
+
+        private int numberOfFilters() {
+            return addresses.size() + tags.size() + bundles.size();
+        }
+    }
+
+    public void init() {
+
+        // Called with the storage lock held, the transaction is only queued
+        Storage.instance().addListener((pointer, transaction) -> queue(transaction));
+
+        (new Thread(() -> {
+
+            while (!shuttingDown) {
+
+                try {
+                    final Object event = events.poll(1, TimeUnit.SECONDS);
+                    if (event instanceof Transaction) {
+                        publish((Transaction) event);
+                    } else if (event instanceof TopicMessage) {
+                        publish(((TopicMessage) event).topic, ((TopicMessage) event).message);
+                    }
+
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                } catch (final Exception e) {
+                    log.error("Subscriptions Exception:", e);
+                }
+            }
+        }, "Subscriptions Publisher")).start();
+    }
+
+    public void shutDown() {
+        shuttingDown = true;
+        for (final Subscriber subscriber : subscribers) {
+            close(subscriber, CloseMessage.GOING_AWAY, "Shutting down");
+        }
+    }
+
+    public void milestoneChanged(final Hash milestone, final int index) {
+        queue(new TopicMessage(MILESTONES, milestoneMessage(MILESTONES, milestone, index)));
+    }
+
+    public void solidMilestoneChanged(final Hash milestone, final int index) {
+        queue(new TopicMessage(SOLID_MILESTONES, milestoneMessage(SOLID_MILESTONES, milestone, index)));
+    }
+
+    private JsonObject milestoneMessage(final String topic, final Hash milestone, final int index) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("topic", topic);
+        message.addProperty("hash", milestone.toString());
+        message.addProperty("index", index);
+        return message;
+    }
+
+    private void queue(final Object event) {
+        // Nothing is kept without subscribers
+        if (!subscribers.isEmpty() && !events.offer(event)) {
+            droppedEvents.incrementAndGet();
+        }
+    }
+
+    public int subscribersSize() {
+        return subscribers.size();
+    }
+
+    public long droppedEventsSize() {
+        return droppedEvents.get();
+    }
+
+    @Override
+    public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+
+        final Subscriber subscriber = new Subscriber(channel);
+        // Subscribers are only added here, concurrent connections can't go over the limit
+        synchronized (subscribers) {
+            if (subscribers.size() >= MAX_SUBSCRIBERS) {
+                close(subscriber, CloseMessage.GOING_AWAY, "Too many subscribers");
+                return;
+            }
+            subscribers.add(subscriber);
+        }
+        log.debug("Subscriber connected from {}", channel.getSourceAddress());
+
+        channel.getReceiveSetter().set(new AbstractReceiveListener() {
+
+            @Override
+            protected void onFullTextMessage(final WebSocketChannel channel, final BufferedTextMessage message) {
+                send(subscriber, update(subscriber, message.getData()));
+            }
+        });
+        channel.getCloseSetter().set(closedChannel -> forget(subscriber));
+        channel.resumeReceives();
+    }
+
+    // Returns the reply to the client
+    private JsonObject update(final Subscriber subscriber, final String message) {
+
+        final JsonObject reply = new JsonObject();
+        final ApiRequest request;
+        try {
+            request = ApiRequest.read(new StringReader(message));
+        } catch (final IOException | RuntimeException e) {
+            reply.addProperty("error", "Invalid request payload: " + e.getLocalizedMessage());
+            return reply;
+        }
+        final String command = request.getCommand();
+        if (!"subscribe".equals(command) && !"unsubscribe".equals(command)) {
+            reply.addProperty("error", "COMMAND " + command + " is unknown.");
+            return reply;
+        }
+        for (final String parameter : new String[] {"addresses", "tags", "bundles"}) {
+            if (!request.isValid(parameter)) {
+                reply.addProperty("error", "Invalid " + parameter + " input.");
+                return reply;
+            }
+        }
+        if (request.has("topics") && !TOPICS.containsAll(request.getTopics())) {
+            reply.addProperty("error", "Invalid topics input.");
+            return reply;
+        }
+
+        if ("subscribe".equals(command)) {
+            if (subscriber.numberOfFilters() + size(request.getAddresses()) + size(request.getTags())
+                    + size(request.getBundles()) > MAX_FILTERS_PER_SUBSCRIBER) {
+                reply.addProperty("error", "At most " + MAX_FILTERS_PER_SUBSCRIBER + " addresses, tags and bundles.");
+                return reply;
+            }
+            addAll(subscriber.topics, request.getTopics());
+            addAll(subscriber.addresses, request.getAddresses());
+            addAll(subscriber.tags, request.getTags());
+            addAll(subscriber.bundles, request.getBundles());
+        } else {
+            removeAll(subscriber.topics, request.getTopics());
+            removeAll(subscriber.addresses, request.getAddresses());
+            removeAll(subscriber.tags, request.getTags());
+            removeAll(subscriber.bundles, request.getBundles());
+        }
+        reply.add("topics", gson.toJsonTree(subscriber.topics));
+        reply.addProperty("filters", subscriber.numberOfFilters());
+        return reply;
+    }
+
+    private static int size(final List<?> values) {
+        return values == null ? 0 : values.size();
+    }
+
+    private static <T> void addAll(final Set<T> set, final Collection<T> values) {
+        if (values != null) {
+            set.addAll(values);
+        }
+    }
+
+    private static <T> void removeAll(final Set<T> set, final Collection<T> values) {
+        if (values != null) {
+            set.removeAll(values);
+        }
+    }
+
+    private void publish(final Transaction transaction) {
+
+        Hash address = null, tag = null, bundle = null;
+        String message = null;
+        for (final Subscriber subscriber : subscribers) {
+
+            boolean matches = subscriber.topics.contains(TRANSACTIONS);
+            if (!matches && subscriber.hasFilters()) {
+                if (address == null) {
+                    address = new Hash(transaction.address, 0, Transaction.ADDRESS_SIZE);
+                    tag = new Hash(transaction.tag, 0, Transaction.TAG_SIZE);
+                    bundle = new Hash(transaction.bundle, 0, Transaction.BUNDLE_SIZE);
+                }
+                matches = subscriber.addresses.contains(address) || subscriber.tags.contains(tag)
+                        || subscriber.bundles.contains(bundle);
+            }
+            if (matches) {
+                // Serialized once for all the subscribers
+                if (message == null) {
+                    message = gson.toJson(transactionMessage(transaction));
+                }
+                send(subscriber, message);
+            }
+        }
+    }
+
+    private static JsonObject transactionMessage(final Transaction transaction) {
+        final JsonObject message = new JsonObject();
+        message.addProperty("topic", TRANSACTIONS);
+        message.addProperty("hash", new Hash(transaction.hash, 0, Transaction.HASH_SIZE).toString());
+        message.addProperty("address", new Hash(transaction.address, 0, Transaction.ADDRESS_SIZE).toString());
+        message.addProperty("value", transaction.value);
+        message.addProperty("tag", new Hash(transaction.tag, 0, Transaction.TAG_SIZE).toString()
+                .substring(0, TAG_SIZE_IN_TRYTES));
+        message.addProperty("bundle", new Hash(transaction.bundle, 0, Transaction.BUNDLE_SIZE).toString());
+        message.addProperty("currentIndex", transaction.currentIndex);
+        message.addProperty("lastIndex", transaction.lastIndex);
+        message.addProperty("trunkTransaction",
+                new Hash(transaction.trunkTransaction, 0, Transaction.HASH_SIZE).toString());
+        message.addProperty("branchTransaction",
+                new Hash(transaction.branchTransaction, 0, Transaction.HASH_SIZE).toString());
+        return message;
+    }
+
+    private void publish(final String topic, final JsonObject message) {
+        String text = null;
+        for (final Subscriber subscriber : subscribers) {
+            if (subscriber.topics.contains(topic)) {
+                if (text == null) {
+                    text = gson.toJson(message);
+                }
+                send(subscriber, text);
+            }
+        }
+    }
+
+    private void send(final Subscriber subscriber, final JsonObject message) {
+        send(subscriber, gson.toJson(message));
+    }
+
+    private void send(final Subscriber subscriber, final String message) {
+
+        // The messages are ASCII JSON, encoded in as many bytes as they have characters
+        final int size = message.length();
+        final boolean slow;
+        synchronized (subscriber) {
+            if (subscriber.disconnected) {
+                return;
+            }
+            slow = subscriber.pendingMessages == MAX_PENDING_MESSAGES;
+            if (!slow) {
+                subscriber.pendingMessages++;
+                subscriber.pendingBytes += size;
+                pendingBytes.addAndGet(size);
+            }
+        }
+        if (slow) {
+            log.info("Disconnecting slow subscriber {}", subscriber.channel.getSourceAddress());
+            disconnect(subscriber);
+            return;
+        }
+
+        Subscriber largestSubscriber;
+        while (pendingBytes.get() > MAX_PENDING_BYTES && (largestSubscriber = largestSubscriber()) != null) {
+            log.info("Too many messages pending, disconnecting subscriber {}",
+                    largestSubscriber.channel.getSourceAddress());
+            disconnect(largestSubscriber);
+        }
+        synchronized (subscriber) {
+            if (subscriber.disconnected) {
+                return;
+            }
+        }
+
+        WebSockets.sendText(message, subscriber.channel, new WebSocketCallback<Void>() {
+
+            @Override
+            public void complete(final WebSocketChannel channel, final Void context) {
+                sent(subscriber, size);
+            }
+
+            @Override
+            public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+                sent(subscriber, size);
+                disconnect(subscriber);
+            }
+        });
+    }
+
+    private void sent(final Subscriber subscriber, final int size) {
+        synchronized (subscriber) {
+            if (!subscriber.disconnected) {
+                subscriber.pendingMessages--;
+                subscriber.pendingBytes -= size;
+                pendingBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    // Returns the subscriber with the most bytes pending, or null if none has any
+    private Subscriber largestSubscriber() {
+
+        Subscriber largestSubscriber = null;
+        long largestPendingBytes = 0;
+        for (final Subscriber subscriber : subscribers) {
+            synchronized (subscriber) {
+                if (subscriber.pendingBytes > largestPendingBytes) {
+                    largestSubscriber = subscriber;
+                    largestPendingBytes = subscriber.pendingBytes;
+                }
+            }
+        }
+        return largestSubscriber;
+    }
+
+    private void close(final Subscriber subscriber, final int code, final String reason) {
+        forget(subscriber);
+        WebSockets.sendClose(code, reason, subscriber.channel, null);
+    }
+
+    // The messages pending for the subscriber are dropped with its channel
+    private void forget(final Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        synchronized (subscriber) {
+            if (!subscriber.disconnected) {
+                subscriber.disconnected = true;
+                pendingBytes.addAndGet(-subscriber.pendingBytes);
+                subscriber.pendingBytes = 0;
+            }
+        }
+    }
+
+    // Without a close frame, it would wait behind the messages the subscriber doesn't read
+    private void disconnect(final Subscriber subscriber) {
+        forget(subscriber);
+        try {
+            subscriber.channel.close();
+        } catch (final IOException e) {
+            log.debug("Error disconnecting subscriber", e);
+        }
+    }
+
+    private static class TopicMessage {
+
+        private final String topic;
+        private final JsonObject message;
+
+        private TopicMessage(final String topic, final JsonObject message) {
+            this.topic = topic;
+            this.message = message;
+        }
+    }
+
+    private static Subscriptions instance = new Subscriptions();
+
+    private Subscriptions() {}
+
+    public static Subscriptions instance() {
+        return instance;
+    }
+}
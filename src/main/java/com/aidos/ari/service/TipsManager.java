@@ -1,6 +1,6 @@
 package com.aidos.ari.service;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -38,17 +38,13 @@ public class TipsManager {
 
                 try {
                     final int previousLatestMilestoneIndex = Milestone.latestMilestoneIndex;
-                    final int previousSolidSubmeshLatestMilestoneIndex = Milestone.latestSolidSubmeshMilestoneIndex;
 
+                    // The latest solid submesh milestone is followed by the SolidityTracker
                     Milestone.updateLatestMilestone();
-                    Milestone.updateLatestSolidSubmeshMilestone();
 
                     if (previousLatestMilestoneIndex != Milestone.latestMilestoneIndex) {
                         log.info("Latest milestone has changed from #" + previousLatestMilestoneIndex + " to #" + Milestone.latestMilestoneIndex);
                     }
-                    if (previousSolidSubmeshLatestMilestoneIndex != Milestone.latestSolidSubmeshMilestoneIndex) {
-                    	log.info("Latest SOLID SUBMESH milestone has changed from #" + previousSolidSubmeshLatestMilestoneIndex + " to #" + Milestone.latestSolidSubmeshMilestoneIndex);
-                    }
                     Thread.sleep(5000);
 
                 } catch (final Exception e) {
@@ -65,6 +61,11 @@ public class TipsManager {
     static synchronized Hash transactionToApprove(final Hash extraTip, int depth) {
 
         final Hash preferableMilestone = Milestone.latestSolidSubmeshMilestone;
+        final long startPointer = StorageTransactions.instance().transactionPointer((extraTip == null ? preferableMilestone : extraTip).bytes());
+        if (startPointer <= 0) {
+            // E.g. the snapshot milestone, until it has been received
+            return null;
+        }
 
         synchronized (StorageScratchpad.instance().getAnalyzedTransactionsFlags()) {
 
@@ -75,7 +76,7 @@ public class TipsManager {
             {
                 int numberOfAnalyzedTransactions = 0;
 
-                final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(Collections.singleton(StorageTransactions.instance().transactionPointer((extraTip == null ? preferableMilestone : extraTip).bytes())));
+                final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(Collections.singleton(startPointer));
                 Long pointer;
                 while ((pointer = nonAnalyzedTransactions.poll()) != null) {
 
@@ -84,33 +85,24 @@ public class TipsManager {
                         numberOfAnalyzedTransactions++;
 
                         final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
-                        if (transaction.type == Storage.PREFILLED_SLOT) {
+                        if (Snapshot.isSolidEntryPoint(transaction.hash)) {
+                            continue;
+                        } else if (transaction.type == Storage.PREFILLED_SLOT) {
                             return null;
                         } else {
 
                             if (transaction.currentIndex == 0) {
 
-                                boolean validBundle = false;
-
-                                final Bundle bundle = new Bundle(transaction.bundle);
-                                for (final List<Transaction> bundleTransactions : bundle.getTransactions()) {
-
-                                    if (bundleTransactions.get(0).pointer == transaction.pointer) {
-
-                                        validBundle = true;
-
-                                        bundleTransactions.stream().filter(bundleTransaction -> bundleTransaction.value != 0).forEach(bundleTransaction -> {
-                                            final Hash address = new Hash(bundleTransaction.address);
-                                            final Long value = state.get(address);
-                                            state.put(address, value == null ? bundleTransaction.value : (value + bundleTransaction.value));
-                                        });
-                                        break;
-                                    }
-                                }
-
-                                if (!validBundle) {
+                                final List<Transaction> bundleTransactions = Bundle.validatedTransactions(transaction);
+                                if (bundleTransactions == null) {
                                     return null;
                                 }
+
+                                bundleTransactions.stream().filter(bundleTransaction -> bundleTransaction.value != 0).forEach(bundleTransaction -> {
+                                    final Hash address = new Hash(bundleTransaction.address);
+                                    final Long value = state.get(address);
+                                    state.put(address, value == null ? bundleTransaction.value : (value + bundleTransaction.value));
+                                });
                             }
 
                             nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
@@ -184,95 +176,104 @@ public class TipsManager {
             }
 
             log.info(tailsToAnalyze.size() + " tails need to be analyzed");
-            Hash bestTip = preferableMilestone;
-            int bestRating = 0;
+
+            // Ratings are read from the past cone sizes kept on ingest, the tails are only checked from the best rated
+            final Map<Hash, Integer> ratings = new HashMap<>();
             for (final Hash tail : tailsToAnalyze) {
+                ratings.put(tail, PastConeSizes.instance()
+                        .pastConeSize(StorageTransactions.instance().transactionPointer(tail.bytes())));
+            }
+            final List<Hash> tails = new ArrayList<>(tailsToAnalyze);
+            tails.sort((tail1, tail2) -> Integer.compare(ratings.get(tail2), ratings.get(tail1)));
 
-            	StorageScratchpad.instance().loadAnalyzedTransactionsFlags();
+            for (final Hash tail : tails) {
 
-                Set<Hash> extraTransactions = new HashSet<>();
+                final int extraTransactions = extraTransactions(tail, state);
+                if (extraTransactions > 0) {
+                    log.info("{} extra transactions approved (rating {})", extraTransactions, ratings.get(tail));
+                    return tail;
+                }
+            }
+            log.info("0 extra transactions approved");
+            return preferableMilestone;
+        }
+    }
 
-                nonAnalyzedTransactions.clear();
-                nonAnalyzedTransactions.offer(StorageTransactions.instance().transactionPointer(tail.bytes()));
-                while ((pointer = nonAnalyzedTransactions.poll()) != null) {
+    // Returns the number of transactions approved by the tail on top of the analyzed ones, or -1 if the tail is
+    // not solid or leads to an inconsistent ledger
+    private static int extraTransactions(final Hash tail, final Map<Hash, Long> state) {
 
-                    if (StorageScratchpad.instance().setAnalyzedTransactionFlag(pointer)) {
+        StorageScratchpad.instance().loadAnalyzedTransactionsFlags();
 
-                        final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
-                        if (transaction.type == Storage.PREFILLED_SLOT) {
-                            extraTransactions = null;
-                            break;
-                        } else {
-                            extraTransactions.add(new Hash(transaction.hash, 0, Transaction.HASH_SIZE));
-                            nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
-                            nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
-                        }
-                    }
-                }
+        Set<Hash> extraTransactions = new HashSet<>();
 
-                if (extraTransactions != null) {
+        final Queue<Long> nonAnalyzedTransactions = new LinkedList<>();
+        nonAnalyzedTransactions.offer(StorageTransactions.instance().transactionPointer(tail.bytes()));
+        Long pointer;
+        while ((pointer = nonAnalyzedTransactions.poll()) != null) {
 
-                    Set<Hash> extraTransactionsCopy = new HashSet<>(extraTransactions);
+            if (StorageScratchpad.instance().setAnalyzedTransactionFlag(pointer)) {
 
-                    for (final Hash extraTransaction : extraTransactions) {
+                final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+                if (Snapshot.isSolidEntryPoint(transaction.hash)) {
+                    continue;
+                } else if (transaction.type == Storage.PREFILLED_SLOT) {
+                    return -1;
+                } else {
+                    extraTransactions.add(new Hash(transaction.hash, 0, Transaction.HASH_SIZE));
+                    nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
+                    nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
+                }
+            }
+        }
 
-                        final Transaction transaction = StorageTransactions.instance().loadTransaction(extraTransaction.bytes());
-                        if (transaction != null && transaction.currentIndex == 0) {
+        Set<Hash> extraTransactionsCopy = new HashSet<>(extraTransactions);
 
-                            final Bundle bundle = new Bundle(transaction.bundle);
-                            for (final List<Transaction> bundleTransactions : bundle.getTransactions()) {
+        for (final Hash extraTransaction : extraTransactions) {
 
-                                if (Arrays.equals(bundleTransactions.get(0).hash, transaction.hash)) {
+            final Transaction transaction = StorageTransactions.instance().loadTransaction(extraTransaction.bytes());
+            if (transaction != null && transaction.currentIndex == 0) {
 
-                                    for (final Transaction bundleTransaction : bundleTransactions) {
+                final List<Transaction> bundleTransactions = Bundle.validatedTransactions(transaction);
+                if (bundleTransactions != null) {
 
-                                        if (!extraTransactionsCopy.remove(new Hash(bundleTransaction.hash, 0, Transaction.HASH_SIZE))) {
-                                            extraTransactionsCopy = null;
-                                            break;
-                                        }
-                                    }
-                                    break;
-                                }
-                            }
-                        }
-                        if (extraTransactionsCopy == null) {
+                    for (final Transaction bundleTransaction : bundleTransactions) {
+
+                        if (!extraTransactionsCopy.remove(new Hash(bundleTransaction.hash, 0, Transaction.HASH_SIZE))) {
+                            extraTransactionsCopy = null;
                             break;
                         }
                     }
+                }
+            }
+            if (extraTransactionsCopy == null) {
+                return -1;
+            }
+        }
 
-                    if (extraTransactionsCopy != null && extraTransactionsCopy.isEmpty()) {
-
-                        final Map<Hash, Long> stateCopy = new HashMap<>(state);
+        if (!extraTransactionsCopy.isEmpty()) {
+            return -1;
+        }
 
-                        for (final Hash extraTransaction : extraTransactions) {
+        final Map<Hash, Long> stateCopy = new HashMap<>(state);
 
-                            final Transaction transaction = StorageTransactions.instance().loadTransaction(extraTransaction.bytes());
-                            if (transaction.value != 0) {
-                                final Hash address = new Hash(transaction.address);
-                                final Long value = stateCopy.get(address);
-                                stateCopy.put(address, value == null ? transaction.value : (value + transaction.value));
-                            }
-                        }
+        for (final Hash extraTransaction : extraTransactions) {
 
-                        for (final long value : stateCopy.values()) {
-                            if (value < 0) {
-                                extraTransactions = null;
-                                break;
-                            }
-                        }
+            final Transaction transaction = StorageTransactions.instance().loadTransaction(extraTransaction.bytes());
+            if (transaction.value != 0) {
+                final Hash address = new Hash(transaction.address);
+                final Long value = stateCopy.get(address);
+                stateCopy.put(address, value == null ? transaction.value : (value + transaction.value));
+            }
+        }
 
-                        if (extraTransactions != null) {
-                            if (extraTransactions.size() > bestRating) {
-                                bestTip = tail;
-                                bestRating = extraTransactions.size();
-                            }
-                        }
-                    }
-                }
+        for (final long value : stateCopy.values()) {
+            if (value < 0) {
+                return -1;
             }
-            log.info("{} extra transactions approved", bestRating);
-            return bestTip;
         }
+
+        return extraTransactions.size();
     }
     
     private static TipsManager instance = new TipsManager();
@@ -0,0 +1,399 @@
+package com.aidos.ari.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.PostingsCursor;
+import com.aidos.ari.service.storage.StorageAddresses;
+import com.aidos.ari.service.storage.StorageApprovers;
+import com.aidos.ari.service.storage.StorageBundle;
+import com.aidos.ari.service.storage.StorageTags;
+import com.aidos.ari.service.storage.StorageTransactions;
+
+/**
+ * Plans and runs the intersections of findTransactions. Each parameter is a term matching the transactions of any of
+ * its values, and the result is the transactions matched by all the terms. The terms are run from the smallest
+ * estimated number of postings: the first one is read as a sorted array of pointers, the next ones are either read
+ * and intersected with it, or, when the candidates left are much fewer than their postings, checked on the cells of
+ * the candidates. Large results are paged instead, see page().
+ */
+public class TransactionQuery {
+
+    // Above that many postings per candidate, checking the cells of the candidates is cheaper than reading the postings
+    private static final int CHECKS_RATIO = 16;
+
+    public static final int MAX_PAGE_SIZE = 1000;
+    private static final int POSTINGS_BATCH_SIZE = 256;
+    private static final int MAX_SCANNED_POSTINGS = 100000;
+
+    private enum Index {
+
+        BUNDLE(Transaction.BUNDLE_SIZE) {
+            long pointer(final Hash hash) {
+                return StorageBundle.instance().bundlePointer(hash.bytes());
+            }
+            int sizeEstimate(final long pointer) {
+                return StorageBundle.instance().bundleTransactionsSizeEstimate(pointer);
+            }
+            long[] sortedPostings(final long pointer) {
+                return StorageBundle.instance().sortedBundleTransactions(pointer);
+            }
+            int read(final PostingsCursor cursor, final long[] postings, final int maximum) {
+                return StorageBundle.instance().bundleTransactions(cursor, postings, maximum);
+            }
+            boolean contains(final long pointer, final PostingsCursor cursor) {
+                return StorageBundle.instance().inBundleTransactions(pointer, cursor);
+            }
+            boolean matches(final long transactionPointer, final Hash hash) {
+                return StorageTransactions.instance().transactionFieldEquals(transactionPointer,
+                        Transaction.BUNDLE_OFFSET, hash.bytes(), size);
+            }
+        },
+        ADDRESS(Transaction.ADDRESS_SIZE) {
+            long pointer(final Hash hash) {
+                return StorageAddresses.instance().addressPointer(hash.bytes());
+            }
+            int sizeEstimate(final long pointer) {
+                return StorageAddresses.instance().addressTransactionsSizeEstimate(pointer);
+            }
+            long[] sortedPostings(final long pointer) {
+                return StorageAddresses.instance().sortedAddressTransactions(pointer);
+            }
+            int read(final PostingsCursor cursor, final long[] postings, final int maximum) {
+                return StorageAddresses.instance().addressTransactions(cursor, postings, maximum);
+            }
+            boolean contains(final long pointer, final PostingsCursor cursor) {
+                return StorageAddresses.instance().inAddressTransactions(pointer, cursor);
+            }
+            boolean matches(final long transactionPointer, final Hash hash) {
+                return StorageTransactions.instance().transactionFieldEquals(transactionPointer,
+                        Transaction.ADDRESS_OFFSET, hash.bytes(), size);
+            }
+        },
+        TAG(Transaction.TAG_SIZE) {
+            long pointer(final Hash hash) {
+                return StorageTags.instance().tagPointer(hash.bytes());
+            }
+            int sizeEstimate(final long pointer) {
+                return StorageTags.instance().tagTransactionsSizeEstimate(pointer);
+            }
+            long[] sortedPostings(final long pointer) {
+                return StorageTags.instance().sortedTagTransactions(pointer);
+            }
+            int read(final PostingsCursor cursor, final long[] postings, final int maximum) {
+                return StorageTags.instance().tagTransactions(cursor, postings, maximum);
+            }
+            boolean contains(final long pointer, final PostingsCursor cursor) {
+                return StorageTags.instance().inTagTransactions(pointer, cursor);
+            }
+            boolean matches(final long transactionPointer, final Hash hash) {
+                return StorageTransactions.instance().transactionFieldEquals(transactionPointer,
+                        Transaction.TAG_OFFSET, hash.bytes(), size);
+            }
+        },
+        // The approvers of a transaction are the transactions having it as trunk or branch
+        APPROVEE(Transaction.HASH_SIZE) {
+            long pointer(final Hash hash) {
+                return StorageApprovers.instance().approveePointer(hash.bytes());
+            }
+            int sizeEstimate(final long pointer) {
+                return StorageApprovers.instance().approveeTransactionsSizeEstimate(pointer);
+            }
+            long[] sortedPostings(final long pointer) {
+                return StorageApprovers.instance().sortedApproveeTransactions(pointer);
+            }
+            int read(final PostingsCursor cursor, final long[] postings, final int maximum) {
+                return StorageApprovers.instance().approveeTransactions(cursor, postings, maximum);
+            }
+            boolean contains(final long pointer, final PostingsCursor cursor) {
+                return StorageApprovers.instance().inApproveeTransactions(pointer, cursor);
+            }
+            boolean matches(final long transactionPointer, final Hash hash) {
+                return StorageTransactions.instance().transactionFieldEquals(transactionPointer,
+                        Transaction.TRUNK_TRANSACTION_OFFSET, hash.bytes(), size)
+                        || StorageTransactions.instance().transactionFieldEquals(transactionPointer,
+                                Transaction.BRANCH_TRANSACTION_OFFSET, hash.bytes(), size);
+            }
+        };
+
+        // Bytes of the field, and of the key of the index
+        final int size;
+
+        Index(final int size) {
+            this.size = size;
+        }
+
+        abstract long pointer(Hash hash);
+
+        abstract int sizeEstimate(long pointer);
+
+        abstract long[] sortedPostings(long pointer);
+
+        abstract int read(PostingsCursor cursor, long[] postings, int maximum);
+
+        // True if the cursor is a position in the postings at "pointer"
+        abstract boolean contains(long pointer, PostingsCursor cursor);
+
+        abstract boolean matches(long transactionPointer, Hash hash);
+    }
+
+    private static class Term {
+
+        private final Index index;
+        private final List<Hash> values;
+        // Aligned with the values, 0 for the values missing from the index, which match nothing
+        private final long[] pointers;
+        private long sizeEstimate;
+
+        private Term(final Index index, final List<Hash> values) {
+            this.index = index;
+            this.values = values;
+            pointers = new long[values.size()];
+            for (int i = 0; i < pointers.length; i++) {
+                pointers[i] = index.pointer(values.get(i));
+                if (pointers[i] != 0) {
+                    sizeEstimate += index.sizeEstimate(pointers[i]);
+                }
+            }
+        }
+
+        // Union of the postings of the values
+        private long[] sortedPostings() {
+            long[] postings = new long[0];
+            boolean merged = false;
+            for (final long pointer : pointers) {
+                if (pointer != 0) {
+                    final long[] valuePostings = index.sortedPostings(pointer);
+                    if (postings.length == 0) {
+                        postings = valuePostings;
+                    } else {
+                        final int size = postings.length;
+                        postings = Arrays.copyOf(postings, size + valuePostings.length);
+                        System.arraycopy(valuePostings, 0, postings, size, valuePostings.length);
+                        merged = true;
+                    }
+                }
+            }
+            if (!merged) {
+                return postings;
+            }
+            Arrays.sort(postings);
+            int size = 0;
+            for (int i = 0; i < postings.length; i++) {
+                if (size == 0 || postings[i] != postings[size - 1]) {
+                    postings[size++] = postings[i];
+                }
+            }
+            return size == postings.length ? postings : Arrays.copyOf(postings, size);
+        }
+
+        private boolean matches(final long transactionPointer) {
+            return matches(transactionPointer, pointers.length);
+        }
+
+        // Checks the first "numberOfValues" values only
+        private boolean matches(final long transactionPointer, final int numberOfValues) {
+            for (int i = 0; i < numberOfValues; i++) {
+                if (pointers[i] != 0 && index.matches(transactionPointer, values.get(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // The next value with postings from "valueIndex" on, the number of values if there are no more
+        private int nextValue(int valueIndex) {
+            while (valueIndex < pointers.length && pointers[valueIndex] == 0) {
+                valueIndex++;
+            }
+            return valueIndex;
+        }
+    }
+
+    /**
+     * Some of the matching transactions, and the cursor to pass with the same parameters for the next ones, null once
+     * they have all been returned.
+     */
+    public static class Page {
+
+        public final long[] transactions;
+        public final String cursor;
+
+        private Page(final long[] transactions, final String cursor) {
+            this.transactions = transactions;
+            this.cursor = cursor;
+        }
+    }
+
+    private final List<Term> terms = new ArrayList<>();
+
+    // A parameter without values is left out of the query
+    public TransactionQuery bundles(final List<Hash> bundles) {
+        return add(Index.BUNDLE, bundles);
+    }
+
+    public TransactionQuery addresses(final List<Hash> addresses) {
+        return add(Index.ADDRESS, addresses);
+    }
+
+    public TransactionQuery tags(final List<Hash> tags) {
+        return add(Index.TAG, tags);
+    }
+
+    public TransactionQuery approvees(final List<Hash> approvees) {
+        return add(Index.APPROVEE, approvees);
+    }
+
+    private TransactionQuery add(final Index index, final List<Hash> values) {
+        if (values != null && !values.isEmpty()) {
+            terms.add(new Term(index, values));
+        }
+        return this;
+    }
+
+    // Pointers of all the matching transactions, in increasing order
+    public long[] run() {
+
+        if (terms.isEmpty()) {
+            return new long[0];
+        }
+        terms.sort(Comparator.comparingLong(term -> term.sizeEstimate));
+        if (terms.get(0).sizeEstimate == 0) {
+            return new long[0];
+        }
+
+        long[] candidates = terms.get(0).sortedPostings();
+        final List<Term> checkedTerms = new ArrayList<>();
+        for (final Term term : terms.subList(1, terms.size())) {
+            if (candidates.length == 0) {
+                return candidates;
+            }
+            if (term.sizeEstimate > (long) candidates.length * CHECKS_RATIO) {
+                checkedTerms.add(term);
+            } else {
+                candidates = intersection(candidates, term.sortedPostings());
+            }
+        }
+        if (checkedTerms.isEmpty()) {
+            return candidates;
+        }
+
+        int numberOfTransactions = 0;
+        CANDIDATES_LOOP: for (final long candidate : candidates) {
+            for (final Term term : checkedTerms) {
+                if (!term.matches(candidate)) {
+                    continue CANDIDATES_LOOP;
+                }
+            }
+            candidates[numberOfTransactions++] = candidate;
+        }
+        return Arrays.copyOf(candidates, numberOfTransactions);
+    }
+
+    /**
+     * Pages through the matching transactions in the order they were stored, reading the postings of the smallest term
+     * a batch at a time and checking the other terms on the cells, so the memory used doesn't grow with the number of
+     * matches. The cursor is the term read, the value of that term and the position in its postings. A page stops
+     * after MAX_SCANNED_POSTINGS postings even if it isn't full, the cursor carries on from there. The limit is capped
+     * at MAX_PAGE_SIZE, so a page holds at most that many transactions, and unlike run() they aren't in pointer order:
+     * a limited result is the first page, the cursor returned with it telling that there are more.
+     */
+    public Page page(final int limit, final String cursor) {
+
+        if (terms.isEmpty()) {
+            return new Page(new long[0], null);
+        }
+
+        final Term term;
+        int valueIndex;
+        PostingsCursor position;
+        if (cursor == null) {
+            term = terms.stream().min(Comparator.comparingLong(candidateTerm -> candidateTerm.sizeEstimate)).get();
+            valueIndex = term.nextValue(0);
+            position = valueIndex < term.pointers.length ? PostingsCursor.start(term.pointers[valueIndex]) : null;
+        } else {
+            final String[] fields = cursor.split("\\.");
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            final Index index = Index.valueOf(fields[0]);
+            term = terms.stream().filter(candidateTerm -> candidateTerm.index == index).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Cursor of another query: " + cursor));
+            valueIndex = Integer.parseInt(fields[1]);
+            if (valueIndex < 0 || valueIndex >= term.pointers.length || term.pointers[valueIndex] == 0) {
+                throw new IllegalArgumentException("Cursor of another query: " + cursor);
+            }
+            // Comes from the client, it must not read anything but the postings of the value
+            position = new PostingsCursor(Long.parseLong(fields[2]), Integer.parseInt(fields[3]));
+            if (!term.index.contains(term.pointers[valueIndex], position)) {
+                throw new IllegalArgumentException("Cursor of another query: " + cursor);
+            }
+        }
+
+        final long[] transactions = new long[Math.min(limit, MAX_PAGE_SIZE)];
+        final long[] postings = new long[Math.min(transactions.length, POSTINGS_BATCH_SIZE)];
+        int numberOfTransactions = 0, numberOfScannedPostings = 0;
+        while (position != null && numberOfTransactions < transactions.length
+                && numberOfScannedPostings < MAX_SCANNED_POSTINGS) {
+
+            // No more postings are read than can be returned, so the cursor never skips any
+            final int maximum = Math.min(postings.length, transactions.length - numberOfTransactions);
+            final int numberOfPostings = term.index.read(position, postings, maximum);
+            numberOfScannedPostings += numberOfPostings;
+            POSTINGS_LOOP: for (int i = 0; i < numberOfPostings; i++) {
+
+                // Already returned with a previous value, like a transaction approving two of the approvees
+                if (term.matches(postings[i], valueIndex)) {
+                    continue;
+                }
+                for (final Term otherTerm : terms) {
+                    if (otherTerm != term && !otherTerm.matches(postings[i])) {
+                        continue POSTINGS_LOOP;
+                    }
+                }
+                transactions[numberOfTransactions++] = postings[i];
+            }
+            if (numberOfPostings < maximum) {
+                valueIndex = term.nextValue(valueIndex + 1);
+                position = valueIndex < term.pointers.length ? PostingsCursor.start(term.pointers[valueIndex]) : null;
+            }
+        }
+
+        return new Page(Arrays.copyOf(transactions, numberOfTransactions), position == null ? null
+                : term.index.name() + "." + valueIndex + "." + position.getCellPointer() + "." + position.getOffset());
+    }
+
+    // Walks the shorter array and gallops through the longer one, so it costs about the size of the shorter one times
+    // the log of the ratio of their sizes
+    static long[] intersection(final long[] postings1, final long[] postings2) {
+
+        final long[] shorter = postings1.length <= postings2.length ? postings1 : postings2;
+        final long[] longer = shorter == postings1 ? postings2 : postings1;
+        final long[] intersection = new long[shorter.length];
+        int size = 0, position = 0;
+        for (final long posting : shorter) {
+
+            int step = 1, bound = position;
+            while (bound < longer.length && longer[bound] < posting) {
+                position = bound + 1;
+                bound += step;
+                step <<= 1;
+            }
+            position = Arrays.binarySearch(longer, position, Math.min(bound + 1, longer.length), posting);
+            if (position >= 0) {
+                intersection[size++] = posting;
+                position++;
+            } else {
+                position = -position - 1;
+            }
+            if (position >= longer.length) {
+                break;
+            }
+        }
+        return Arrays.copyOf(intersection, size);
+    }
+}
@@ -0,0 +1,194 @@
+package com.aidos.ari.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.aidos.ari.Snapshot;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageListener;
+import com.aidos.ari.service.storage.StorageScratchpad;
+
+/**
+ * Keeps the transactions to request from the neighbors. The storage adds every transaction it only knows by its hash
+ * and removes it once it has been received, so the send path just pops the next hash. Each hash is requested from one
+ * neighbor at a time and is only requested again, from whichever neighbor is served next, after a back-off.
+ */
+public class TransactionRequester {
+
+    private static final Logger log = LoggerFactory.getLogger(TransactionRequester.class);
+
+    private static final int MAX_NUMBER_OF_REQUESTS = 1000000;
+    private static final long MIN_REQUEST_INTERVAL_MS = 1000;
+    private static final long MAX_REQUEST_INTERVAL_MS = 60000;
+
+    private final Map<Long, Request> requests = new HashMap<>();
+    // Urgent requests first, then in the order the hashes were discovered, i.e. closest to the tips first
+    private final TreeSet<Request> requestQueue = new TreeSet<>((request1, request2) -> {
+        if (request1.urgent != request2.urgent) {
+            return request1.urgent ? -1 : 1;
+        }
+        return Long.compare(request1.sequence, request2.sequence);
+    });
+    private final DelayQueue<Request> backedOffRequests = new DelayQueue<>();
+
+    private long nextSequence;
+    private long numberOfDroppedRequests;
+
+    public void init() {
+
+        Storage.instance().addListener(new StorageListener() {
+
+            @Override
+            public void transactionStored(final long pointer, final Transaction transaction) {
+                cancelRequest(pointer);
+            }
+
+            @Override
+            public void transactionPrefilled(final long pointer, final byte[] hash) {
+                // The past cone of the snapshot isn't needed, the storage wouldn't take its pruned transactions anyway
+                if (!Snapshot.isSolidEntryPoint(hash)
+                        && !StorageScratchpad.instance().getPrunedHashes().mightContain(hash)) {
+                    requestTransaction(pointer, hash, false);
+                }
+            }
+
+            @Override
+            public void transactionPruned(final long pointer) {
+                cancelRequest(pointer);
+            }
+        });
+    }
+
+    /**
+     * Adds a transaction to request, or makes an already queued one urgent. Urgent requests are the ones that block
+     * the solidification of the latest milestone.
+     */
+    public synchronized void requestTransaction(final long pointer, final byte[] hash, final boolean urgent) {
+
+        final Request request = requests.get(pointer);
+        if (request == null) {
+
+            if (requests.size() >= MAX_NUMBER_OF_REQUESTS && !urgent) {
+                if (numberOfDroppedRequests++ % MAX_NUMBER_OF_REQUESTS == 0) {
+                    log.info("Too many transactions to request, dropping the non-urgent ones");
+                }
+                return;
+            }
+            final Request newRequest = new Request(hash, nextSequence++, urgent);
+            requests.put(pointer, newRequest);
+            requestQueue.add(newRequest);
+
+        } else if (urgent && !request.urgent) {
+
+            // The ordering key can't change while the request is in the queue
+            if (requestQueue.remove(request)) {
+                request.urgent = true;
+                requestQueue.add(request);
+            } else {
+                request.urgent = true;
+            }
+        }
+    }
+
+    public synchronized void cancelRequest(final long pointer) {
+
+        final Request request = requests.remove(pointer);
+        if (request != null) {
+            request.cancelled = true;
+            requestQueue.remove(request);
+        }
+    }
+
+    /**
+     * Writes the hash of the next transaction to request into the buffer, or the null hash if there is nothing to
+     * request right now. Never blocks on the storage.
+     */
+    public void transactionToRequest(final byte[] buffer, final int offset) {
+
+        final Request request;
+        synchronized (this) {
+            request = nextRequest();
+        }
+        System.arraycopy(request == null ? Hash.NULL_HASH.bytes() : request.hash, 0, buffer, offset, Transaction.HASH_SIZE);
+    }
+
+    // Same as "transactionToRequest" for up to "maxNumberOfTransactions" hashes, used by the bulk sync
+    public synchronized List<byte[]> transactionsToRequest(final int maxNumberOfTransactions) {
+
+        final List<byte[]> transactionsToRequest = new ArrayList<>();
+        Request request;
+        while (transactionsToRequest.size() < maxNumberOfTransactions && (request = nextRequest()) != null) {
+            transactionsToRequest.add(request.hash);
+        }
+        return transactionsToRequest;
+    }
+
+    private Request nextRequest() {
+
+        Request backedOffRequest;
+        while ((backedOffRequest = backedOffRequests.poll()) != null) {
+            if (!backedOffRequest.cancelled) {
+                requestQueue.add(backedOffRequest);
+            }
+        }
+
+        final Request request = requestQueue.pollFirst();
+        if (request != null) {
+            request.nextRequestTime = System.currentTimeMillis()
+                    + Math.min(MIN_REQUEST_INTERVAL_MS << Math.min(request.numberOfRequests, 16), MAX_REQUEST_INTERVAL_MS);
+            request.numberOfRequests++;
+            backedOffRequests.add(request);
+        }
+        return request;
+    }
+
+    public synchronized int numberOfTransactionsToRequest() {
+        return requests.size();
+    }
+
+    private static class Request implements Delayed {
+
+        private final byte[] hash;
+        private final long sequence;
+
+        private boolean urgent;
+        private boolean cancelled;
+        private int numberOfRequests;
+        private long nextRequestTime;
+
+        private Request(final byte[] hash, final long sequence, final boolean urgent) {
+            this.hash = hash;
+            this.sequence = sequence;
+            this.urgent = urgent;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(nextRequestTime - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed delayed) {
+            return Long.compare(nextRequestTime, ((Request) delayed).nextRequestTime);
+        }
+    }
+
+    private static TransactionRequester instance = new TransactionRequester();
+
+    private TransactionRequester() {}
+
+    public static TransactionRequester instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,297 @@
+package com.aidos.ari.service.dto;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.aidos.ari.model.Hash;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Parameters of an API request, decoded and validated while the body is read. Hashes are converted as they come, so
+ * the JSON strings of a large request aren't kept. The parameters can come in any order, the command included, so
+ * every parameter is decoded the same way whatever the command. An invalid value is left out and its parameter
+ * recorded, for the command to report it.
+ */
+public class ApiRequest {
+
+	public static final int HASH_SIZE = 81;
+	public static final int TRYTES_SIZE = 2673;
+
+	private String command;
+	private String uri;
+	private String type;
+	private Hash trunkTransaction;
+	private Hash branchTransaction;
+	private Integer minWeightMagnitude;
+	private Integer threshold;
+	private Integer depth;
+	private Integer limit;
+	private String cursor;
+	private List<String> trytes;
+	private List<String> topics;
+	private List<Hash> bundles;
+	private List<Hash> addresses;
+	private List<Hash> tags;
+	private List<Hash> approvees;
+	private List<Hash> transactions;
+	private List<Hash> tips;
+	private List<Hash> hashes;
+
+	private final Set<String> parameters = new HashSet<>();
+	private final Set<String> invalidParameters = new HashSet<>();
+
+	public static ApiRequest read(final Reader reader) throws IOException {
+
+		final ApiRequest request = new ApiRequest();
+		final JsonReader in = new JsonReader(reader);
+		in.beginObject();
+		while (in.hasNext()) {
+
+			final String name = in.nextName();
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				continue;
+			}
+			switch (name) {
+			case "command":
+				request.command = in.nextString();
+				break;
+			case "uri":
+				request.uri = in.nextString();
+				break;
+			case "type":
+				request.type = in.nextString();
+				break;
+			case "trunkTransaction":
+				request.trunkTransaction = request.hash(name, in.nextString());
+				break;
+			case "branchTransaction":
+				request.branchTransaction = request.hash(name, in.nextString());
+				break;
+			case "minWeightMagnitude":
+				request.minWeightMagnitude = (int) in.nextDouble();
+				break;
+			case "threshold":
+				request.threshold = (int) in.nextDouble();
+				break;
+			case "depth":
+				request.depth = (int) in.nextDouble();
+				break;
+			case "limit":
+				request.limit = (int) in.nextDouble();
+				break;
+			case "cursor":
+				request.cursor = in.nextString();
+				break;
+			case "trytes":
+				request.trytes = request.trytes(name, in);
+				break;
+			case "topics":
+				request.topics = strings(in);
+				break;
+			case "bundles":
+				request.bundles = request.hashes(name, in, false);
+				break;
+			case "addresses":
+				request.addresses = request.hashes(name, in, false);
+				break;
+			case "tags":
+				request.tags = request.tags(name, in);
+				break;
+			case "approvees":
+				request.approvees = request.hashes(name, in, false);
+				break;
+			case "transactions":
+				request.transactions = request.hashes(name, in, false);
+				break;
+			case "tips":
+				request.tips = request.hashes(name, in, false);
+				break;
+			case "hashes":
+				// Empty hashes are accepted and match no transaction
+				request.hashes = request.hashes(name, in, true);
+				break;
+			default:
+				in.skipValue();
+				continue;
+			}
+			request.parameters.add(name);
+		}
+		in.endObject();
+		return request;
+	}
+
+	// At least "minimalLength" trytes, longer ones like addresses with a checksum are accepted
+	public static boolean validTrytes(final CharSequence trytes, final int minimalLength) {
+		if (trytes.length() < minimalLength) {
+			return false;
+		}
+		for (int i = 0; i < trytes.length(); i++) {
+			final char tryte = trytes.charAt(i);
+			if (tryte != '9' && (tryte < 'A' || tryte > 'Z')) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private Hash hash(final String name, final String value) {
+		if (!validTrytes(value, HASH_SIZE)) {
+			invalidParameters.add(name);
+			return null;
+		}
+		return new Hash(value);
+	}
+
+	private List<Hash> hashes(final String name, final JsonReader in, final boolean emptyAllowed) throws IOException {
+		final List<Hash> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			final String value = in.nextString();
+			if (!(emptyAllowed && value.isEmpty())) {
+				final Hash hash = hash(name, value);
+				if (hash != null) {
+					values.add(hash);
+				}
+			}
+		}
+		in.endArray();
+		return values;
+	}
+
+	// Tags are padded with 9s to the size of a hash
+	private List<Hash> tags(final String name, final JsonReader in) throws IOException {
+		final List<Hash> values = new ArrayList<>();
+		final StringBuilder tag = new StringBuilder(HASH_SIZE);
+		in.beginArray();
+		while (in.hasNext()) {
+			tag.setLength(0);
+			tag.append(in.nextString());
+			if (!validTrytes(tag, 0)) {
+				invalidParameters.add(name);
+				continue;
+			}
+			while (tag.length() < HASH_SIZE) {
+				tag.append('9');
+			}
+			values.add(new Hash(tag.toString()));
+		}
+		in.endArray();
+		return values;
+	}
+
+	private List<String> trytes(final String name, final JsonReader in) throws IOException {
+		final List<String> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			final String value = in.nextString();
+			if (validTrytes(value, TRYTES_SIZE)) {
+				values.add(value);
+			} else {
+				invalidParameters.add(name);
+			}
+		}
+		in.endArray();
+		return values;
+	}
+
+	private static List<String> strings(final JsonReader in) throws IOException {
+		final List<String> values = new ArrayList<>();
+		in.beginArray();
+		while (in.hasNext()) {
+			values.add(in.nextString());
+		}
+		in.endArray();
+		return values;
+	}
+
+	// True if the request has the parameter, even with an invalid value
+	public boolean has(final String name) {
+		return parameters.contains(name);
+	}
+
+	public boolean isValid(final String name) {
+		return !invalidParameters.contains(name);
+	}
+
+	public String getCommand() {
+		return command;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public Hash getTrunkTransaction() {
+		return trunkTransaction;
+	}
+
+	public Hash getBranchTransaction() {
+		return branchTransaction;
+	}
+
+	public Integer getMinWeightMagnitude() {
+		return minWeightMagnitude;
+	}
+
+	public Integer getThreshold() {
+		return threshold;
+	}
+
+	public Integer getDepth() {
+		return depth;
+	}
+
+	public Integer getLimit() {
+		return limit;
+	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	public List<String> getTrytes() {
+		return trytes;
+	}
+
+	public List<String> getTopics() {
+		return topics;
+	}
+
+	public List<Hash> getBundles() {
+		return bundles;
+	}
+
+	public List<Hash> getAddresses() {
+		return addresses;
+	}
+
+	public List<Hash> getTags() {
+		return tags;
+	}
+
+	public List<Hash> getApprovees() {
+		return approvees;
+	}
+
+	public List<Hash> getTransactions() {
+		return transactions;
+	}
+
+	public List<Hash> getTips() {
+		return tips;
+	}
+
+	public List<Hash> getHashes() {
+		return hashes;
+	}
+}
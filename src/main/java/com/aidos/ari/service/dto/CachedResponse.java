@@ -0,0 +1,31 @@
+package com.aidos.ari.service.dto;
+
+import java.io.IOException;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+public class CachedResponse extends AbstractResponse implements StreamingResponse {
+
+	private static final Gson gson = new Gson();
+
+	// Shared with the other requests served from the cache, only read
+	private transient JsonObject response;
+
+	public static AbstractResponse create(JsonObject response) {
+		CachedResponse res = new CachedResponse();
+		res.response = response;
+		return res;
+	}
+
+	@Override
+	public void write(JsonWriter writer) throws IOException {
+		for (final Map.Entry<String, JsonElement> member : response.entrySet()) {
+			writer.name(member.getKey());
+			gson.toJson(member.getValue(), writer);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package com.aidos.ari.service.dto;
+
+public class ExportSnapshotResponse extends AbstractResponse {
+
+	private String fileName;
+	private int milestoneIndex;
+
+	public static AbstractResponse create(String fileName, int milestoneIndex) {
+		ExportSnapshotResponse res = new ExportSnapshotResponse();
+		res.fileName = fileName;
+		res.milestoneIndex = milestoneIndex;
+		return res;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+	public int getMilestoneIndex() {
+		return milestoneIndex;
+	}
+}
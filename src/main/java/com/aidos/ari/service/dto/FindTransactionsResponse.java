@@ -1,18 +1,44 @@
 package com.aidos.ari.service.dto;
 
-import java.util.List;
+import java.io.IOException;
 
-public class FindTransactionsResponse extends AbstractResponse {
-	
-	private String [] hashes;
+import com.google.gson.stream.JsonWriter;
 
-	public static AbstractResponse create(List<String> elements) {
+public class FindTransactionsResponse extends AbstractResponse implements StreamingResponse {
+
+	// Loaded one transaction at a time while the response is written
+	private transient Iterable<String> hashes;
+	// Set when the transactions are paged and more of them may follow
+	private String cursor;
+
+	public static AbstractResponse create(Iterable<String> elements) {
+		return create(elements, null);
+	}
+
+	public static AbstractResponse create(Iterable<String> elements, String cursor) {
 		FindTransactionsResponse res = new FindTransactionsResponse();
-		res.hashes = elements.toArray(new String[] {});
+		res.hashes = elements;
+		res.cursor = cursor;
 		return res;
 	}
-	
-	public String[] getHashes() {
+
+	public Iterable<String> getHashes() {
 		return hashes;
 	}
+
+	public String getCursor() {
+		return cursor;
+	}
+
+	@Override
+	public void write(JsonWriter writer) throws IOException {
+		writer.name("hashes").beginArray();
+		for (final String element : hashes) {
+			writer.value(element);
+		}
+		writer.endArray();
+		if (cursor != null) {
+			writer.name("cursor").value(cursor);
+		}
+	}
 }
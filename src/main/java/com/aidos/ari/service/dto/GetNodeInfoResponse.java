@@ -20,15 +20,21 @@ public class GetNodeInfoResponse extends AbstractResponse {
 
     private int peers;
     private int packetsQueueSize;
+    private long droppedPackets;
+    private PeerBroadcast[] peerBroadcasts;
     private long time;
     private int tips;
     private int transactionsToRequest;
+    private long responseCacheHits;
+    private long responseCacheMisses;
+    private int responseCacheSize;
 
 	public static AbstractResponse create(String appName, String appVersion, int jreAvailableProcessors, long jreFreeMemory,
 	        String jreVersion, long maxMemory, long totalMemory, Hash latestMilestone, int latestMilestoneIndex,
 	        Hash latestSolidSubmeshMilestone, int latestSolidSubmeshMilestoneIndex,
-	        int peers, int packetsQueueSize,
-	        long currentTimeMillis, int tips, int numberOfTransactionsToRequest) {
+	        PeerBroadcast[] peerBroadcasts, int packetsQueueSize, long droppedPackets,
+	        long currentTimeMillis, int tips, int numberOfTransactionsToRequest,
+	        long responseCacheHits, long responseCacheMisses, int responseCacheSize) {
 		final GetNodeInfoResponse res = new GetNodeInfoResponse();
 		res.appName = appName;
 		res.appVersion = appVersion;
@@ -44,11 +50,16 @@ public class GetNodeInfoResponse extends AbstractResponse {
 		res.latestSolidSubmeshMilestone = latestSolidSubmeshMilestone.toString();
 		res.latestSolidSubmeshMilestoneIndex = latestSolidSubmeshMilestoneIndex;
 
-		res.peers = peers;
+		res.peers = peerBroadcasts.length;
 		res.packetsQueueSize = packetsQueueSize;
+		res.droppedPackets = droppedPackets;
+		res.peerBroadcasts = peerBroadcasts;
 		res.time = currentTimeMillis;
 		res.tips = tips;
 		res.transactionsToRequest = numberOfTransactionsToRequest;
+		res.responseCacheHits = responseCacheHits;
+		res.responseCacheMisses = responseCacheMisses;
+		res.responseCacheSize = responseCacheSize;
 		return res;
 	}
 
@@ -104,6 +115,14 @@ public class GetNodeInfoResponse extends AbstractResponse {
 		return packetsQueueSize;
 	}
 
+	public long getDroppedPackets() {
+		return droppedPackets;
+	}
+
+	public PeerBroadcast[] getPeerBroadcasts() {
+		return peerBroadcasts;
+	}
+
 	public long getTime() {
 		return time;
 	}
@@ -116,4 +135,49 @@ public class GetNodeInfoResponse extends AbstractResponse {
 		return transactionsToRequest;
 	}
 
+	public long getResponseCacheHits() {
+		return responseCacheHits;
+	}
+
+	public long getResponseCacheMisses() {
+		return responseCacheMisses;
+	}
+
+	public int getResponseCacheSize() {
+		return responseCacheSize;
+	}
+
+	public static class PeerBroadcast {
+
+		private String address;
+		private int queueSize;
+		private long droppedPackets;
+		private double sendRate;
+
+		public String getAddress() {
+			return address;
+		}
+
+		public int getQueueSize() {
+			return queueSize;
+		}
+
+		public long getDroppedPackets() {
+			return droppedPackets;
+		}
+
+		public double getSendRate() {
+			return sendRate;
+		}
+
+		public static PeerBroadcast create(final String address, final int queueSize, final long droppedPackets,
+				final double sendRate) {
+			final PeerBroadcast peerBroadcast = new PeerBroadcast();
+			peerBroadcast.address = address;
+			peerBroadcast.queueSize = queueSize;
+			peerBroadcast.droppedPackets = droppedPackets;
+			peerBroadcast.sendRate = sendRate;
+			return peerBroadcast;
+		}
+	}
 }
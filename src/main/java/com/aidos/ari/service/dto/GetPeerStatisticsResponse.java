@@ -0,0 +1,88 @@
+package com.aidos.ari.service.dto;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.aidos.ari.PeerStatistics;
+import com.aidos.ari.Peers;
+import com.aidos.ari.service.BroadcastScheduler;
+import com.aidos.ari.service.PD;
+
+public class GetPeerStatisticsResponse extends AbstractResponse {
+
+	private long[] latencyBucketBounds;
+	private PeerStatisticsEntry[] peers;
+
+	public static AbstractResponse create(final List<Peers> elements) {
+		final GetPeerStatisticsResponse res = new GetPeerStatisticsResponse();
+		res.latencyBucketBounds = PeerStatistics.LATENCY_BUCKET_BOUNDS;
+		res.peers = elements.stream().map(PeerStatisticsEntry::createFrom).toArray(PeerStatisticsEntry[]::new);
+		return res;
+	}
+
+	public long[] getLatencyBucketBounds() {
+		return latencyBucketBounds;
+	}
+
+	public PeerStatisticsEntry[] getPeers() {
+		return peers;
+	}
+
+	static class PeerStatisticsEntry {
+
+		private String address;
+		private Map<String, Long> totals;
+		// Per second over the last minute
+		private Map<String, Double> rates;
+		private long[] connectLatencies;
+		private long outboundQueueSize;
+		private double score;
+		private boolean scored;
+
+		public String getAddress() {
+			return address;
+		}
+
+		public Map<String, Long> getTotals() {
+			return totals;
+		}
+
+		public Map<String, Double> getRates() {
+			return rates;
+		}
+
+		public long[] getConnectLatencies() {
+			return connectLatencies;
+		}
+
+		public long getOutboundQueueSize() {
+			return outboundQueueSize;
+		}
+
+		public double getScore() {
+			return score;
+		}
+
+		public boolean isScored() {
+			return scored;
+		}
+
+		public static PeerStatisticsEntry createFrom(final Peers peer) {
+			final PeerStatistics statistics = peer.getStatistics();
+			final PeerStatisticsEntry entry = new PeerStatisticsEntry();
+			entry.address = PD.getHostURL(peer.getAddress());
+			entry.totals = new LinkedHashMap<>();
+			entry.rates = new LinkedHashMap<>();
+			for (int i = 0; i < PeerStatistics.COUNTER_NAMES.length; i++) {
+				entry.totals.put(PeerStatistics.COUNTER_NAMES[i], statistics.value(i));
+				entry.rates.put(PeerStatistics.COUNTER_NAMES[i], statistics.rate(i));
+			}
+			entry.connectLatencies = statistics.latencyHistogram();
+			entry.outboundQueueSize = peer.queuedSendsSize() + BroadcastScheduler.instance().queuedTransactionsSize(peer);
+			entry.score = statistics.score();
+			entry.scored = statistics.isScored();
+			return entry;
+		}
+	}
+}
@@ -20,21 +20,21 @@ public class GetPeersResponse extends AbstractResponse {
 	static class Peer {
 
 		private String address;
-		public int numberOfAllTransactions, numberOfNewTransactions, numberOfInvalidTransactions;
+		public long numberOfAllTransactions, numberOfNewTransactions, numberOfInvalidTransactions;
 
 		public String getAddress() {
 			return address;
 		}
 
-		public int getNumberOfAllTransactions() {
+		public long getNumberOfAllTransactions() {
 			return numberOfAllTransactions;
 		}
 
-		public int getNumberOfNewTransactions() {
+		public long getNumberOfNewTransactions() {
 			return numberOfNewTransactions;
 		}
 
-		public int getNumberOfInvalidTransactions() {
+		public long getNumberOfInvalidTransactions() {
 			return numberOfInvalidTransactions;
 		}
 
@@ -1,18 +1,30 @@
 package com.aidos.ari.service.dto;
 
-import java.util.List;
+import java.io.IOException;
 
-public class GetTrytesResponse extends AbstractResponse {
-	
-    private String [] trytes;
-    
-	public static GetTrytesResponse create(List<String> elements) {
+import com.google.gson.stream.JsonWriter;
+
+public class GetTrytesResponse extends AbstractResponse implements StreamingResponse {
+
+	// Loaded one transaction at a time while the response is written
+	private transient Iterable<String> trytes;
+
+	public static GetTrytesResponse create(Iterable<String> elements) {
 		GetTrytesResponse res = new GetTrytesResponse();
-		res.trytes = elements.toArray(new String[] {});
+		res.trytes = elements;
 		return res;
 	}
 
-	public String [] getTrytes() {
+	public Iterable<String> getTrytes() {
 		return trytes;
 	}
+
+	@Override
+	public void write(JsonWriter writer) throws IOException {
+		writer.name("trytes").beginArray();
+		for (final String element : trytes) {
+			writer.value(element);
+		}
+		writer.endArray();
+	}
 }
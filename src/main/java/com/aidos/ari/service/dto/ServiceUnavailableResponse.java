@@ -0,0 +1,16 @@
+package com.aidos.ari.service.dto;
+
+public class ServiceUnavailableResponse extends AbstractResponse {
+
+    private String error;
+
+    public static AbstractResponse create(String error) {
+        ServiceUnavailableResponse res = new ServiceUnavailableResponse();
+        res.error = error;
+        return res;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,14 @@
+package com.aidos.ari.service.dto;
+
+import java.io.IOException;
+
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * A response whose content is produced while it is written, so a large result is never held in memory. The fields are
+ * written inside the response object, the duration is added after them.
+ */
+public interface StreamingResponse {
+
+	void write(JsonWriter writer) throws IOException;
+}
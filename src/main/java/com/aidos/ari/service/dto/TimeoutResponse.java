@@ -0,0 +1,16 @@
+package com.aidos.ari.service.dto;
+
+public class TimeoutResponse extends AbstractResponse {
+
+    private String error;
+
+    public static AbstractResponse create(String error) {
+        TimeoutResponse res = new TimeoutResponse();
+        res.error = error;
+        return res;
+    }
+
+    public String getError() {
+        return error;
+    }
+}
@@ -3,6 +3,7 @@ package com.aidos.ari.service.storage;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.MappedByteBuffer;
+import java.util.Arrays;
 
 public abstract class AbstractStorage {
 
@@ -30,12 +31,25 @@ public abstract class AbstractStorage {
             + ANALYZED_TRANSACTIONS_FLAGS_SIZE,
             ANALYZED_TRANSACTIONS_FLAGS_COPY_SIZE = ANALYZED_TRANSACTIONS_FLAGS_SIZE;
 
+    public final static int PRUNED_CONE_FLAGS_OFFSET = ANALYZED_TRANSACTIONS_FLAGS_COPY_OFFSET
+            + ANALYZED_TRANSACTIONS_FLAGS_COPY_SIZE,
+            PRUNED_CONE_FLAGS_SIZE = ANALYZED_TRANSACTIONS_FLAGS_SIZE;
+
+    // Filter of the pruned hashes: a header cell followed by its two generations
+    public final static int PRUNED_HASHES_GENERATION_SIZE = 1 << 24;
+    public final static int PRUNED_HASHES_OFFSET = PRUNED_CONE_FLAGS_OFFSET + PRUNED_CONE_FLAGS_SIZE,
+            PRUNED_HASHES_SIZE = CELL_SIZE + 2 * PRUNED_HASHES_GENERATION_SIZE;
+
     public final static int GROUP = 0; // transactions GROUP means that's it's a non-leaf node (leafs store transaction bytes)
     public final static int PREFILLED_SLOT = 1; // means that we know only hash of the tx, the rest is unknown yet: only another tx references that hash
     public final static int FILLED_SLOT = -1; //  knows the hash only coz another tx references that hash
+    public final static int PRUNED_SLOT = 2; // tx below the snapshot, out of the tree and the postings: the cell is free to be reused
 
     protected static final int ZEROTH_POINTER_OFFSET = 64;
 
+    // Left in place of the postings of pruned transactions, so that the positions of the others never change
+    protected static final long REMOVED_POSTING = -1;
+
     protected static final byte[] ZEROED_BUFFER = new byte[CELL_SIZE];
 	
     protected static final byte[] mainBuffer = new byte[CELL_SIZE];
@@ -68,6 +82,153 @@ public abstract class AbstractStorage {
         }
     }
 	
+    // Postings are the transaction pointers chained in the cells of an address, bundle, tag or approvee. The first
+    // cell holds them from ZEROTH_POINTER_OFFSET, the next ones from their start, and the last long of a cell points
+    // to the next cell. They are read straight from the chunks, the callers hold the storage lock.
+    private static final int FIRST_CELL_POSTINGS = (CELL_SIZE - Long.BYTES - ZEROTH_POINTER_OFFSET) / Long.BYTES,
+            NEXT_CELL_POSTINGS = (CELL_SIZE - Long.BYTES) / Long.BYTES;
+
+    // Upper bound of the number of postings, only the links between the cells are read
+    protected static int postingsSizeEstimate(final ByteBuffer[] chunks, final long pointer) {
+
+        if (pointer == 0) {
+            return 0;
+        }
+        int size = FIRST_CELL_POSTINGS;
+        long cellPointer = pointer;
+        while ((cellPointer = value(chunks[(int) (cellPointer >> 27)],
+                (int) (cellPointer & (CHUNK_SIZE - 1)) + CELL_SIZE - Long.BYTES)) != 0) {
+            size += NEXT_CELL_POSTINGS;
+        }
+        return size;
+    }
+
+    // In pointer order, not in the order the transactions arrived
+    protected static long[] sortedPostings(final ByteBuffer[] chunks, final long pointer) {
+
+        final long[] postings = new long[postingsSizeEstimate(chunks, pointer)];
+        int size = 0;
+        long cellPointer = pointer;
+        int offset = ZEROTH_POINTER_OFFSET;
+        CELLS_LOOP: while (cellPointer != 0) {
+
+            final ByteBuffer chunk = chunks[(int) (cellPointer >> 27)];
+            final int cellOffset = (int) (cellPointer & (CHUNK_SIZE - 1));
+            for (; offset < CELL_SIZE - Long.BYTES; offset += Long.BYTES) {
+
+                final long posting = value(chunk, cellOffset + offset);
+                if (posting == 0) {
+                    break CELLS_LOOP;
+                }
+                if (posting != REMOVED_POSTING) {
+                    postings[size++] = posting;
+                }
+            }
+            cellPointer = value(chunk, cellOffset + CELL_SIZE - Long.BYTES);
+            offset = 0;
+        }
+        final long[] sortedPostings = Arrays.copyOf(postings, size);
+        Arrays.sort(sortedPostings);
+        return sortedPostings;
+    }
+
+    // Reads up to "maximum" postings from the cursor and moves it past them. Fewer are read only at the end of the
+    // postings, where the cursor stays so that it also reads the postings stored later.
+    protected static int readPostings(final ByteBuffer[] chunks, final PostingsCursor cursor, final long[] postings,
+            final int maximum) {
+
+        int size = 0;
+        while (size < maximum) {
+
+            final ByteBuffer chunk = chunks[(int) (cursor.cellPointer >> 27)];
+            if (chunk == null) {
+                throw new IllegalArgumentException("Cursor beyond the storage");
+            }
+            final int cellOffset = (int) (cursor.cellPointer & (CHUNK_SIZE - 1));
+            if (cursor.offset == CELL_SIZE - Long.BYTES) {
+
+                final long nextCellPointer = value(chunk, cellOffset + CELL_SIZE - Long.BYTES);
+                if (nextCellPointer == 0) {
+                    break;
+                }
+                cursor.cellPointer = nextCellPointer;
+                cursor.offset = 0;
+            } else {
+
+                final long posting = value(chunk, cellOffset + cursor.offset);
+                if (posting == 0) {
+                    break;
+                }
+                if (posting != REMOVED_POSTING) {
+                    postings[size++] = posting;
+                }
+                cursor.offset += Long.BYTES;
+            }
+        }
+        return size;
+    }
+
+    // True if the cursor is in the cells of the postings at "pointer", past the header of the first one. The cells are
+    // walked from the first one, like for postingsSizeEstimate().
+    protected static boolean inPostings(final ByteBuffer[] chunks, final long pointer, final PostingsCursor cursor) {
+
+        if (pointer == 0) {
+            return false;
+        }
+        if (cursor.cellPointer == pointer) {
+            return cursor.offset >= ZEROTH_POINTER_OFFSET;
+        }
+        long cellPointer = pointer;
+        while ((cellPointer = value(chunks[(int) (cellPointer >> 27)],
+                (int) (cellPointer & (CHUNK_SIZE - 1)) + CELL_SIZE - Long.BYTES)) != 0) {
+            if (cellPointer == cursor.cellPointer) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Replaces the posting of the transaction with REMOVED_POSTING, returns false if it isn't in the postings
+    protected static boolean removePosting(final ByteBuffer[] chunks, final long pointer, final long posting) {
+
+        long cellPointer = pointer;
+        int offset = ZEROTH_POINTER_OFFSET;
+        while (cellPointer != 0) {
+
+            final ByteBuffer chunk = chunks[(int) (cellPointer >> 27)];
+            final int cellOffset = (int) (cellPointer & (CHUNK_SIZE - 1));
+            for (; offset < CELL_SIZE - Long.BYTES; offset += Long.BYTES) {
+
+                final long value = value(chunk, cellOffset + offset);
+                if (value == 0) {
+                    return false;
+                }
+                if (value == posting) {
+                    setValue(chunk, cellOffset + offset, REMOVED_POSTING);
+                    return true;
+                }
+            }
+            cellPointer = value(chunk, cellOffset + CELL_SIZE - Long.BYTES);
+            offset = 0;
+        }
+        return false;
+    }
+
+    // Same encoding as value(byte[], int), without copying the cell
+    protected static long value(final ByteBuffer chunk, final int offset) {
+        long value = 0;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            value = (value << 8) | (chunk.get(offset + i) & 0xFF);
+        }
+        return value;
+    }
+
+    protected static void setValue(final ByteBuffer chunk, final int offset, final long value) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            chunk.put(offset + i, (byte) (value >> (i << 3)));
+        }
+    }
+
 	protected void emptyMainBuffer() {
         System.arraycopy(ZEROED_BUFFER, 0, mainBuffer, 0, CELL_SIZE);
 	}
@@ -0,0 +1,37 @@
+package com.aidos.ari.service.storage;
+
+/**
+ * Position in the postings of an address, bundle, tag or approvee, kept between two reads. Postings are only ever
+ * appended, and pruned ones are marked as removed in place, so a position stays valid while more postings are stored
+ * after it.
+ */
+public class PostingsCursor {
+
+    long cellPointer;
+    int offset;
+
+    public PostingsCursor(final long cellPointer, final int offset) {
+        if (cellPointer <= 0 || (cellPointer & (AbstractStorage.CELL_SIZE - 1)) != 0
+                || (cellPointer >> 27) >= AbstractStorage.MAX_NUMBER_OF_CHUNKS) {
+            throw new IllegalArgumentException("Invalid cell pointer: " + cellPointer);
+        }
+        if (offset < 0 || offset >= AbstractStorage.CELL_SIZE || (offset & (Long.BYTES - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid offset: " + offset);
+        }
+        this.cellPointer = cellPointer;
+        this.offset = offset;
+    }
+
+    // Before the first posting of the cells at "pointer", as returned by the lookups of the storages
+    public static PostingsCursor start(final long pointer) {
+        return new PostingsCursor(pointer, AbstractStorage.ZEROTH_POINTER_OFFSET);
+    }
+
+    public long getCellPointer() {
+        return cellPointer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+}
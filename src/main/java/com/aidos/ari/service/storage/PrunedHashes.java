@@ -0,0 +1,84 @@
+package com.aidos.ari.service.storage;
+
+import java.nio.ByteBuffer;
+import com.aidos.ari.utils.SeenFilter;
+
+/**
+ * Bloom filter of the hashes of the pruned transactions, so that the ones gossiped again aren't stored again and their
+ * approvees aren't requested all over again. It's made of two generations: hashes are added to the current one and
+ * looked up in both, and once the current one is full the other one is cleared and becomes the current one. A hash is
+ * remembered for at least as many prunings as a generation holds. False positives are possible, false negatives are
+ * not.
+ */
+public class PrunedHashes {
+
+    private static final int HEADER_SIZE = AbstractStorage.CELL_SIZE;
+    private static final int CURRENT_GENERATION_OFFSET = 0, NUMBER_OF_HASHES_OFFSET = Long.BYTES;
+    // 32 bits per hash, about 1 false positive per 100000 lookups for each full generation
+    private static final int BITS_PER_HASH = 32;
+    private static final int NUMBER_OF_HASH_FUNCTIONS = 7;
+
+    private final ByteBuffer filter;
+    private final int generationSize;
+
+    // "filter" holds the header then the two generations, "generationSize" is a power of 2
+    PrunedHashes(final ByteBuffer filter, final int generationSize) {
+        this.filter = filter;
+        this.generationSize = generationSize;
+    }
+
+    public void add(final byte[] hash) {
+
+        synchronized (Storage.class) {
+
+            int generation = (int) AbstractStorage.value(filter, CURRENT_GENERATION_OFFSET);
+            long numberOfHashes = AbstractStorage.value(filter, NUMBER_OF_HASHES_OFFSET);
+            if (numberOfHashes >= (long) generationSize * Byte.SIZE / BITS_PER_HASH) {
+
+                generation ^= 1;
+                numberOfHashes = 0;
+                for (int i = 0; i < generationSize; i += AbstractStorage.CELL_SIZE) {
+                    ((ByteBuffer) filter.position(generationOffset(generation) + i)).put(AbstractStorage.ZEROED_BUFFER,
+                            0, Math.min(AbstractStorage.CELL_SIZE, generationSize - i));
+                }
+                AbstractStorage.setValue(filter, CURRENT_GENERATION_OFFSET, generation);
+            }
+            AbstractStorage.setValue(filter, NUMBER_OF_HASHES_OFFSET, numberOfHashes + 1);
+
+            final int offset = generationOffset(generation);
+            final long hash1 = SeenFilter.hash1(hash), hash2 = SeenFilter.hash2(hash);
+            for (int i = 0; i < NUMBER_OF_HASH_FUNCTIONS; i++) {
+                final long bit = bit(hash1, hash2, i);
+                final int index = offset + (int) (bit >>> 3);
+                filter.put(index, (byte) (filter.get(index) | (1 << (bit & 7))));
+            }
+        }
+    }
+
+    public boolean mightContain(final byte[] hash) {
+
+        synchronized (Storage.class) {
+
+            final long hash1 = SeenFilter.hash1(hash), hash2 = SeenFilter.hash2(hash);
+            GENERATIONS_LOOP: for (int generation = 0; generation < 2; generation++) {
+                final int offset = generationOffset(generation);
+                for (int i = 0; i < NUMBER_OF_HASH_FUNCTIONS; i++) {
+                    final long bit = bit(hash1, hash2, i);
+                    if ((filter.get(offset + (int) (bit >>> 3)) & (1 << (bit & 7))) == 0) {
+                        continue GENERATIONS_LOOP;
+                    }
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private int generationOffset(final int generation) {
+        return HEADER_SIZE + generation * generationSize;
+    }
+
+    private long bit(final long hash1, final long hash2, final int i) {
+        return (hash1 + i * hash2) & ((long) generationSize * Byte.SIZE - 1);
+    }
+}
@@ -1,6 +1,8 @@
 package com.aidos.ari.service.storage;
 
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.aidos.ari.model.Transaction;
@@ -16,6 +18,8 @@ public class Storage extends AbstractStorage {
 
     private volatile boolean launched;
 
+    private final List<StorageListener> listeners = new CopyOnWriteArrayList<>();
+
     public static int numberOfApprovedTransactionsToStore;
 
     private StorageTransactions storageTransactionInstance = StorageTransactions.instance();
@@ -61,7 +65,10 @@ public class Storage extends AbstractStorage {
 
         final Transaction transaction = new Transaction(mainBuffer, transactionPointer);
         for (int j = 0; j < numberOfApprovedTransactionsToStore; j++) {
-            StorageTransactions.instance().storeTransaction(approvedTransactionsToStore[j], null, false);
+            final long prefilledTransactionPointer = StorageTransactions.instance().storeTransaction(approvedTransactionsToStore[j], null, false);
+            for (final StorageListener listener : listeners) {
+                listener.transactionPrefilled(prefilledTransactionPointer, approvedTransactionsToStore[j]);
+            }
         }
         numberOfApprovedTransactionsToStore = 0;
 
@@ -73,8 +80,22 @@ public class Storage extends AbstractStorage {
         if (transaction.branchTransactionPointer != transaction.trunkTransactionPointer) {
         	StorageApprovers.instance().updateApprover(transaction.branchTransaction, transactionPointer);
         }
+
+        for (final StorageListener listener : listeners) {
+            listener.transactionStored(transactionPointer, transaction);
+        }
     }
     
+    void transactionPruned(final long transactionPointer) {
+        for (final StorageListener listener : listeners) {
+            listener.transactionPruned(transactionPointer);
+        }
+    }
+
+    public void addListener(final StorageListener listener) {
+        listeners.add(listener);
+    }
+
     // methods helper
     
     private static Storage instance = new Storage();
@@ -17,7 +17,7 @@ public class StorageAddresses extends AbstractStorage {
 	private static final Logger log = LoggerFactory.getLogger(StorageAddresses.class);
 
 	private static final StorageAddresses instance = new StorageAddresses();
-	private static final String ADDRESSES_FILE_NAME = "addresses.store";
+	static final String ADDRESSES_FILE_NAME = "addresses.store";
 
 	private FileChannel addressesChannel;
 	private final ByteBuffer[] addressesChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
@@ -94,6 +94,30 @@ public class StorageAddresses extends AbstractStorage {
         throw new IllegalStateException("Corrupted storage");
     }
 	
+	public int addressTransactionsSizeEstimate(final long pointer) {
+		synchronized (Storage.class) {
+			return postingsSizeEstimate(addressesChunks, pointer);
+		}
+	}
+
+	public long[] sortedAddressTransactions(final long pointer) {
+		synchronized (Storage.class) {
+			return sortedPostings(addressesChunks, pointer);
+		}
+	}
+
+	public int addressTransactions(final PostingsCursor cursor, final long[] transactions, final int maximum) {
+		synchronized (Storage.class) {
+			return readPostings(addressesChunks, cursor, transactions, maximum);
+		}
+	}
+
+	public boolean inAddressTransactions(final long pointer, final PostingsCursor cursor) {
+		synchronized (Storage.class) {
+			return inPostings(addressesChunks, pointer, cursor);
+		}
+	}
+
 	public List<Long> addressTransactions(final long pointer) {
 
         synchronized (Storage.class) {
@@ -110,7 +134,7 @@ public class StorageAddresses extends AbstractStorage {
                     final long transactionPointer = value(mainBuffer, offset);
                     if (transactionPointer == 0) {
                         break;
-                    } else {
+                    } else if (transactionPointer != REMOVED_POSTING) {
                         addressTransactions.add(transactionPointer);
                     }
                 }
@@ -249,6 +273,14 @@ public class StorageAddresses extends AbstractStorage {
     }
 
 	
+	// Called by the compactor with the storage lock held
+	void removeAddressTransaction(final byte[] address, final long transactionPointer) {
+		final long pointer = addressPointer(address);
+		if (pointer != 0) {
+			removePosting(addressesChunks, pointer, transactionPointer);
+		}
+	}
+
 	public static StorageAddresses instance() {
 		return instance;
 	}
@@ -17,7 +17,7 @@ public class StorageApprovers extends AbstractStorage {
 
 	private static final StorageApprovers instance = new StorageApprovers();
 
-	private static final String APPROVERS_FILE_NAME = "approvers.store";
+	static final String APPROVERS_FILE_NAME = "approvers.store";
 	private FileChannel approversChannel;
 	private final ByteBuffer[] approversChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
 	private volatile long approversNextPointer = SUPER_GROUPS_SIZE;
@@ -97,6 +97,30 @@ public class StorageApprovers extends AbstractStorage {
         throw new IllegalStateException("Corrupted storage");
     }
 
+    public int approveeTransactionsSizeEstimate(final long pointer) {
+        synchronized (Storage.class) {
+            return postingsSizeEstimate(approversChunks, pointer);
+        }
+    }
+
+    public long[] sortedApproveeTransactions(final long pointer) {
+        synchronized (Storage.class) {
+            return sortedPostings(approversChunks, pointer);
+        }
+    }
+
+    public int approveeTransactions(final PostingsCursor cursor, final long[] transactions, final int maximum) {
+        synchronized (Storage.class) {
+            return readPostings(approversChunks, cursor, transactions, maximum);
+        }
+    }
+
+    public boolean inApproveeTransactions(final long pointer, final PostingsCursor cursor) {
+        synchronized (Storage.class) {
+            return inPostings(approversChunks, pointer, cursor);
+        }
+    }
+
     public List<Long> approveeTransactions(final long pointer) {
 
     	synchronized (Storage.class) {
@@ -113,7 +137,7 @@ public class StorageApprovers extends AbstractStorage {
                     final long transactionPointer = value(mainBuffer, offset);
                     if (transactionPointer == 0) {
                         break;
-                    } else {
+                    } else if (transactionPointer != REMOVED_POSTING) {
                         approveeTransactions.add(transactionPointer);
                     }
                 }
@@ -240,6 +264,14 @@ public class StorageApprovers extends AbstractStorage {
         }
     }
 
+	// Called by the compactor with the storage lock held
+	void removeApprover(final byte[] hash, final long transactionPointer) {
+		final long pointer = approveePointer(hash);
+		if (pointer != 0) {
+			removePosting(approversChunks, pointer, transactionPointer);
+		}
+	}
+
 	public static StorageApprovers instance() {
 		return instance;
 	}
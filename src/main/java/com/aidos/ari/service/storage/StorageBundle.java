@@ -16,7 +16,7 @@ public class StorageBundle extends AbstractStorage {
 	private static final Logger log = LoggerFactory.getLogger(StorageBundle.class);
 
 	private static final StorageBundle instance = new StorageBundle();
-	private static final String BUNDLES_FILE_NAME = "bundles.store";
+	static final String BUNDLES_FILE_NAME = "bundles.store";
 
 	private FileChannel bundlesChannel;
 	private final ByteBuffer[] bundlesChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
@@ -98,6 +98,29 @@ public class StorageBundle extends AbstractStorage {
         throw new IllegalStateException("Corrupted storage");
     }
 
+    public int bundleTransactionsSizeEstimate(final long pointer) {
+        synchronized (Storage.class) {
+            return postingsSizeEstimate(bundlesChunks, pointer);
+        }
+    }
+
+    public long[] sortedBundleTransactions(final long pointer) {
+        synchronized (Storage.class) {
+            return sortedPostings(bundlesChunks, pointer);
+        }
+    }
+
+    public int bundleTransactions(final PostingsCursor cursor, final long[] transactions, final int maximum) {
+        synchronized (Storage.class) {
+            return readPostings(bundlesChunks, cursor, transactions, maximum);
+        }
+    }
+
+    public boolean inBundleTransactions(final long pointer, final PostingsCursor cursor) {
+        synchronized (Storage.class) {
+            return inPostings(bundlesChunks, pointer, cursor);
+        }
+    }
 
     public List<Long> bundleTransactions(final long pointer) {
     	synchronized (Storage.class) {
@@ -114,7 +137,7 @@ public class StorageBundle extends AbstractStorage {
                     final long transactionPointer = value(mainBuffer, offset);
                     if (transactionPointer == 0) {
                         break;
-                    } else {
+                    } else if (transactionPointer != REMOVED_POSTING) {
                         bundleTransactions.add(transactionPointer);
                     }
                 }
@@ -252,6 +275,14 @@ public class StorageBundle extends AbstractStorage {
         }
     }
 
+	// Called by the compactor with the storage lock held
+	void removeBundleTransaction(final byte[] bundle, final long transactionPointer) {
+		final long pointer = bundlePointer(bundle);
+		if (pointer != 0) {
+			removePosting(bundlesChunks, pointer, transactionPointer);
+		}
+	}
+
 	public static StorageBundle instance() {
 		return instance;
 	}
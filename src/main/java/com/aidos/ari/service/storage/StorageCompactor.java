@@ -0,0 +1,81 @@
+package com.aidos.ari.service.storage;
+
+import java.util.Arrays;
+import com.aidos.ari.model.Transaction;
+
+/**
+ * Compacts the storage in place while the node keeps using it. A pruned transaction is removed from the tree and its
+ * postings from the postings of its bundle, address, tag and approvees, then its cell is reused by the transactions
+ * stored next instead of growing the storage. Postings are only marked as removed, so the cursors reading them stay
+ * valid. The cells pruned by a batch are released with the next batch, so that the threads that read their pointers
+ * before the pruning are done with them by the time they get reused.
+ */
+public class StorageCompactor {
+
+    private long[] prunedCells = new long[0];
+    private int numberOfPrunedCells;
+    private long numberOfReleasedCells;
+
+    /**
+     * Prunes the given transactions, each one under the storage lock on its own so that storing and reading go on in
+     * between, and releases the cells of the previous batch. Cells that don't hold a stored transaction are skipped.
+     * Returns the number of pruned transactions.
+     */
+    public synchronized int prune(final long[] pointers, final int size) {
+
+        release();
+        if (prunedCells.length < size) {
+            prunedCells = new long[size];
+        }
+        for (int i = 0; i < size; i++) {
+            if (prune(pointers[i])) {
+                prunedCells[numberOfPrunedCells++] = pointers[i];
+            }
+        }
+        return numberOfPrunedCells;
+    }
+
+    // Releases the cells of the last batch, once nothing else is going to be pruned for a while
+    public synchronized void release() {
+
+        synchronized (Storage.class) {
+            for (int i = 0; i < numberOfPrunedCells; i++) {
+                StorageTransactions.instance().releaseCell(prunedCells[i]);
+            }
+        }
+        numberOfReleasedCells += numberOfPrunedCells;
+        numberOfPrunedCells = 0;
+    }
+
+    public synchronized long numberOfReleasedCells() {
+        return numberOfReleasedCells;
+    }
+
+    private static boolean prune(final long pointer) {
+
+        synchronized (Storage.class) {
+
+            final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
+            if (!StorageTransactions.instance().pruneTransaction(pointer, transaction.hash)) {
+                return false;
+            }
+            StorageBundle.instance().removeBundleTransaction(transaction.bundle, pointer);
+            StorageAddresses.instance().removeAddressTransaction(transaction.address, pointer);
+            StorageTags.instance().removeTagTransaction(transaction.tag, pointer);
+            StorageApprovers.instance().removeApprover(transaction.trunkTransaction, pointer);
+            if (!Arrays.equals(transaction.branchTransaction, transaction.trunkTransaction)) {
+                StorageApprovers.instance().removeApprover(transaction.branchTransaction, pointer);
+            }
+            Storage.instance().transactionPruned(pointer);
+            return true;
+        }
+    }
+
+    private static StorageCompactor instance = new StorageCompactor();
+
+    private StorageCompactor() {}
+
+    public static StorageCompactor instance() {
+        return instance;
+    }
+}
@@ -0,0 +1,21 @@
+package com.aidos.ari.service.storage;
+
+import com.aidos.ari.model.Transaction;
+
+/**
+ * Notified by the storage whenever a transaction has been stored and indexed. Listeners are called while the storage
+ * lock is held, so they must only hand the work over to their own threads.
+ */
+@FunctionalInterface
+public interface StorageListener {
+
+    void transactionStored(long pointer, Transaction transaction);
+
+    // A transaction referenced by a stored one but not stored yet, its cell only holds the hash (PREFILLED_SLOT)
+    default void transactionPrefilled(final long pointer, final byte[] hash) {
+    }
+
+    // A transaction pruned by the compactor, its cell will be reused by another transaction
+    default void transactionPruned(final long pointer) {
+    }
+}
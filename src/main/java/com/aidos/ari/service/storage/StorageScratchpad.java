@@ -5,39 +5,31 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.Queue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.aidos.ari.Milestone;
-import com.aidos.ari.model.Hash;
-import com.aidos.ari.model.Transaction;
 
 public class StorageScratchpad extends AbstractStorage {
 
     private static final Logger log = LoggerFactory.getLogger(StorageScratchpad.class);
 
     private static final StorageScratchpad instance = new StorageScratchpad();
-    private static final String SCRATCHPAD_FILE_NAME = "scratchpad.store";
+    static final String SCRATCHPAD_FILE_NAME = "scratchpad.store";
 
-    private ByteBuffer transactionsToRequest;
     private ByteBuffer analyzedTransactionsFlags, analyzedTransactionsFlagsCopy;
-    
-    private final byte[] transactionToRequest = new byte[Transaction.HASH_SIZE];
-    private final Object transactionToRequestMonitor = new Object();
-    private int previousNumberOfTransactions;
-
-    public volatile int numberOfTransactionsToRequest;
+    // Past cone of the snapshot being adopted, only used by the pruning
+    private ByteBuffer prunedConeFlags;
+    private PrunedHashes prunedHashes;
 
     private FileChannel scratchpadChannel = null;
 
     @Override
     public void init() throws IOException {
         scratchpadChannel = FileChannel.open(Paths.get(SCRATCHPAD_FILE_NAME), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
-        transactionsToRequest = scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, TRANSACTIONS_TO_REQUEST_OFFSET, TRANSACTIONS_TO_REQUEST_SIZE);
         analyzedTransactionsFlags = scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, ANALYZED_TRANSACTIONS_FLAGS_OFFSET, ANALYZED_TRANSACTIONS_FLAGS_SIZE);
         analyzedTransactionsFlagsCopy = scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, ANALYZED_TRANSACTIONS_FLAGS_COPY_OFFSET, ANALYZED_TRANSACTIONS_FLAGS_COPY_SIZE);	
+        prunedConeFlags = scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, PRUNED_CONE_FLAGS_OFFSET, PRUNED_CONE_FLAGS_SIZE);
+        prunedHashes = new PrunedHashes(scratchpadChannel.map(FileChannel.MapMode.READ_WRITE, PRUNED_HASHES_OFFSET,
+                PRUNED_HASHES_SIZE), PRUNED_HASHES_GENERATION_SIZE);
     }
 
     @Override
@@ -49,74 +41,66 @@ public class StorageScratchpad extends AbstractStorage {
         }
 	}
 	
-	public void transactionToRequest(final byte[] buffer, final int offset) {
-
-        synchronized (transactionToRequestMonitor) {
-
-            if (numberOfTransactionsToRequest == 0) {
-
-                final long beginningTime = System.currentTimeMillis();
-
-                synchronized (analyzedTransactionsFlags) {
+    public void clearAnalyzedTransactionsFlags() {
+        analyzedTransactionsFlags.position(0);
+        for (int i = 0; i < ANALYZED_TRANSACTIONS_FLAGS_SIZE / CELL_SIZE; i++) {
+            analyzedTransactionsFlags.put(ZEROED_BUFFER);
+        }
+    }
 
-                    clearAnalyzedTransactionsFlags();
+    public boolean analyzedTransactionFlag(final long pointer) {
+        return flag(analyzedTransactionsFlags, pointer);
+    }
 
-                    final Queue<Long> nonAnalyzedTransactions = new LinkedList<>(
-                    		
-                    Collections.singleton(
-                        StorageTransactions.instance()
-                        .transactionPointer(Milestone.latestMilestone.bytes())));
-                    
-                    Long pointer;
-                    while ((pointer = nonAnalyzedTransactions.poll()) != null) {
+    public boolean setAnalyzedTransactionFlag(final long pointer) {
+        return setFlag(analyzedTransactionsFlags, pointer);
+    }
 
-                        if (setAnalyzedTransactionFlag(pointer)) {
+    public ByteBuffer getPrunedConeFlags() {
+        return prunedConeFlags;
+    }
 
-                            final Transaction transaction = StorageTransactions.instance().loadTransaction(pointer);
-                            if (transaction.type == Storage.PREFILLED_SLOT) {
+    public PrunedHashes getPrunedHashes() {
+        return prunedHashes;
+    }
 
-                                ((ByteBuffer) transactionsToRequest.position(numberOfTransactionsToRequest++ * Transaction.HASH_SIZE)).put(transaction.hash); // Only 2'917'776 hashes can be stored this way without overflowing the buffer, we assume that nodes will never need to store that many hashes, so we don't need to cap "numberOfTransactionsToRequest"
-                            } else {
-                                nonAnalyzedTransactions.offer(transaction.trunkTransactionPointer);
-                                nonAnalyzedTransactions.offer(transaction.branchTransactionPointer);
-                            }
-                        }
-                    }
-                }
+    // Only clears the flags of the cells below "endPointer", the whole flags don't have to be written for a small storage
+    public static void clearFlags(final ByteBuffer flags, final long endPointer) {
+        final int size = (int) ((endPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET) + (CELL_SIZE << 3) - 1) >> (11 + 3));
+        for (int i = 0; i < size; i += CELL_SIZE) {
+            ((ByteBuffer) flags.position(i)).put(ZEROED_BUFFER, 0, Math.min(CELL_SIZE, size - i));
+        }
+    }
 
-                final long transactionsNextPointer = StorageTransactions.transactionsNextPointer;
-                log.info("Transactions to request = {}", numberOfTransactionsToRequest + " / " + (transactionsNextPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) / CELL_SIZE + " (" + (System.currentTimeMillis() - beginningTime) + " ms / " + (numberOfTransactionsToRequest == 0 ? 0 : (previousNumberOfTransactions == 0 ? 0 : (((transactionsNextPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) / CELL_SIZE - previousNumberOfTransactions) * 100) / numberOfTransactionsToRequest)) + "%)");
-                previousNumberOfTransactions = (int) ((transactionsNextPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) / CELL_SIZE);
-            }
+    // Returns the first flagged cell from "pointer" on, or "endPointer" if there is none before it
+    public static long nextFlag(final ByteBuffer flags, long pointer, final long endPointer) {
 
-            if (numberOfTransactionsToRequest == 0) {
-                System.arraycopy(Hash.NULL_HASH.bytes(), 0, buffer, offset, Transaction.HASH_SIZE);
+        while (pointer < endPointer) {
+            final long index = (pointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11;
+            if ((index & 7) == 0 && flags.get((int) (index >> 3)) == 0) {
+                pointer += CELL_SIZE << 3;
+            } else if (flag(flags, pointer)) {
+                return pointer;
             } else {
-                ((ByteBuffer) transactionsToRequest.position(--numberOfTransactionsToRequest * Transaction.HASH_SIZE)).get(transactionToRequest);
-                System.arraycopy(transactionToRequest, 0, buffer, offset, Transaction.HASH_SIZE);
+                pointer += CELL_SIZE;
             }
         }
+        return endPointer;
     }
 
-    public void clearAnalyzedTransactionsFlags() {
-        analyzedTransactionsFlags.position(0);
-        for (int i = 0; i < ANALYZED_TRANSACTIONS_FLAGS_SIZE / CELL_SIZE; i++) {
-            analyzedTransactionsFlags.put(ZEROED_BUFFER);
-        }
-    }
-
-    public boolean analyzedTransactionFlag(long pointer) {
+    public static boolean flag(final ByteBuffer flags, long pointer) {
         pointer -= CELLS_OFFSET - SUPER_GROUPS_OFFSET;
-        return (analyzedTransactionsFlags.get((int) (pointer >> (11 + 3))) & (1 << ((pointer >> 11) & 7))) != 0;
+        return (flags.get((int) (pointer >> (11 + 3))) & (1 << ((pointer >> 11) & 7))) != 0;
     }
 
-    public boolean setAnalyzedTransactionFlag(long pointer) {
+    // Returns false if the flag was already set
+    public static boolean setFlag(final ByteBuffer flags, long pointer) {
 
         pointer -= CELLS_OFFSET - SUPER_GROUPS_OFFSET;
 
-        final int value = analyzedTransactionsFlags.get((int) (pointer >> (11 + 3)));
+        final int value = flags.get((int) (pointer >> (11 + 3)));
         if ((value & (1 << ((pointer >> 11) & 7))) == 0) {
-            analyzedTransactionsFlags.put((int)(pointer >> (11 + 3)), (byte)(value | (1 << ((pointer >> 11) & 7))));
+            flags.put((int)(pointer >> (11 + 3)), (byte)(value | (1 << ((pointer >> 11) & 7))));
             return true;
         } 
         return false;
@@ -142,10 +126,6 @@ public class StorageScratchpad extends AbstractStorage {
 		return analyzedTransactionsFlagsCopy;
 	}
     
-    public int getNumberOfTransactionsToRequest() {
-		return numberOfTransactionsToRequest;
-	}
-
 	public static StorageScratchpad instance() {
 		return instance;
 	}
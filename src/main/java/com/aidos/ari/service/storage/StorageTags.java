@@ -21,7 +21,7 @@ public class StorageTags extends AbstractStorage {
 	private final ByteBuffer[] tagsChunks = new ByteBuffer[MAX_NUMBER_OF_CHUNKS];
 	private volatile long tagsNextPointer = SUPER_GROUPS_SIZE;
 
-	private static final String TAGS_FILE_NAME = "tags.store";
+	static final String TAGS_FILE_NAME = "tags.store";
 
 	@Override
 	public void init() throws IOException {
@@ -95,6 +95,30 @@ public class StorageTags extends AbstractStorage {
         throw new IllegalStateException("Corrupted storage");
     }
 	
+	public int tagTransactionsSizeEstimate(final long pointer) {
+		synchronized (Storage.class) {
+			return postingsSizeEstimate(tagsChunks, pointer);
+		}
+	}
+
+	public long[] sortedTagTransactions(final long pointer) {
+		synchronized (Storage.class) {
+			return sortedPostings(tagsChunks, pointer);
+		}
+	}
+
+	public int tagTransactions(final PostingsCursor cursor, final long[] transactions, final int maximum) {
+		synchronized (Storage.class) {
+			return readPostings(tagsChunks, cursor, transactions, maximum);
+		}
+	}
+
+	public boolean inTagTransactions(final long pointer, final PostingsCursor cursor) {
+		synchronized (Storage.class) {
+			return inPostings(tagsChunks, pointer, cursor);
+		}
+	}
+
 	public List<Long> tagTransactions(final long pointer) {
 
         synchronized (Storage.class) {
@@ -110,7 +134,7 @@ public class StorageTags extends AbstractStorage {
                     final long transactionPointer = value(mainBuffer, offset);
                     if (transactionPointer == 0) {
                         break;
-                    } else {
+                    } else if (transactionPointer != REMOVED_POSTING) {
                         tagTransactions.add(transactionPointer);
                     }
                 }
@@ -251,6 +275,14 @@ public class StorageTags extends AbstractStorage {
         }
 	}
 
+	// Called by the compactor with the storage lock held
+	void removeTagTransaction(final byte[] tag, final long transactionPointer) {
+		final long pointer = tagPointer(tag);
+		if (pointer != 0) {
+			removePosting(tagsChunks, pointer, transactionPointer);
+		}
+	}
+
 	public static StorageTags instance() {
 		return instance;
 	}
@@ -19,7 +19,7 @@ public class StorageTransactions extends AbstractStorage {
 	private static final Logger log = LoggerFactory.getLogger(StorageTransactions.class);
 
 	private static final StorageTransactions instance = new StorageTransactions();
-	private static final String TRANSACTIONS_FILE_NAME = "transactions.store";
+	static final String TRANSACTIONS_FILE_NAME = "transactions.store";
 
 	private FileChannel transactionsChannel;
 	private ByteBuffer transactionsTipsFlags;
@@ -28,6 +28,12 @@ public class StorageTransactions extends AbstractStorage {
 
 	public static long transactionsNextPointer = CELLS_OFFSET - SUPER_GROUPS_OFFSET;
 
+	// The cells of pruned transactions are chained, past the transaction bytes, from the genesis cell and reused
+	// before the storage grows
+	private static final long GENESIS_POINTER = CELLS_OFFSET - SUPER_GROUPS_OFFSET;
+	private static final int NEXT_FREE_CELL_OFFSET = CELL_SIZE - Long.BYTES;
+	private long freeCells;
+
 	@Override
 	public void init() throws IOException {
 
@@ -64,6 +70,11 @@ public class StorageTransactions extends AbstractStorage {
 				transactionsNextPointer += CELL_SIZE;
 			}
 		}
+
+		if (transactionsNextPointer > GENESIS_POINTER) {
+			freeCells = value(transactionsChunks[(int) (GENESIS_POINTER >> 27)],
+					(int) (GENESIS_POINTER & (CHUNK_SIZE - 1)) + NEXT_FREE_CELL_OFFSET);
+		}
 	}
 
 	public void updateBundleAddressTagApprovers() {
@@ -97,16 +108,21 @@ public class StorageTransactions extends AbstractStorage {
 	}
 
 	public void appendToTransactions(final boolean tip) {
+		writeCell(allocateCell(), tip);
+	}
+
+	// Takes a free cell if there is one, the caller has to write it before releasing the storage lock
+	private long allocateCell() {
 
-		((ByteBuffer) transactionsChunks[(int) (transactionsNextPointer >> 27)]
-				.position((int) (transactionsNextPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
+		if (freeCells != 0) {
 
-		if (tip) {
-			final long index = (transactionsNextPointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11;
-			transactionsTipsFlags.put((int) (index >> 3),
-					(byte) (transactionsTipsFlags.get((int) (index >> 3)) | (1 << (index & 7))));
+			final long pointer = freeCells;
+			setFreeCells(value(transactionsChunks[(int) (pointer >> 27)],
+					(int) (pointer & (CHUNK_SIZE - 1)) + NEXT_FREE_CELL_OFFSET));
+			return pointer;
 		}
 
+		final long pointer = transactionsNextPointer;
 		if (((transactionsNextPointer += CELL_SIZE) & (CHUNK_SIZE - 1)) == 0) {
 
 			try {
@@ -116,6 +132,30 @@ public class StorageTransactions extends AbstractStorage {
 				log.error("Caught exception on appendToTransactions:", e);
 			}
 		}
+		return pointer;
+	}
+
+	// Writes "mainBuffer" to the cell, a reused cell may still have the tip flag of its pruned transaction
+	private void writeCell(final long pointer, final boolean tip) {
+
+		((ByteBuffer) transactionsChunks[(int) (pointer >> 27)].position((int) (pointer & (CHUNK_SIZE - 1))))
+				.put(mainBuffer);
+		setTipFlag(pointer, tip);
+	}
+
+	private void setTipFlag(final long pointer, final boolean tip) {
+
+		final long index = (pointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11;
+		final int flags = transactionsTipsFlags.get((int) (index >> 3));
+		transactionsTipsFlags.put((int) (index >> 3),
+				(byte) (tip ? flags | (1 << (index & 7)) : flags & ~(1 << (index & 7))));
+	}
+
+	private void setFreeCells(final long pointer) {
+
+		freeCells = pointer;
+		setValue(transactionsChunks[(int) (GENESIS_POINTER >> 27)],
+				(int) (GENESIS_POINTER & (CHUNK_SIZE - 1)) + NEXT_FREE_CELL_OFFSET, pointer);
 	}
 
 	// Returns a negative value if the transaction hasn'tbeen seen yet but was referenced
@@ -170,6 +210,76 @@ public class StorageTransactions extends AbstractStorage {
 		}
 	}
 
+	/**
+	 * Removes a stored transaction from the tree, so that it's looked up as unknown, marks its cell as pruned and
+	 * remembers its hash so that it isn't stored again. Returns false for any other cell. The cell is only reused once
+	 * it's released.
+	 */
+	boolean pruneTransaction(final long pointer, final byte[] hash) {
+
+		final ByteBuffer chunk = transactionsChunks[(int) (pointer >> 27)];
+		final int cellOffset = (int) (pointer & (CHUNK_SIZE - 1));
+		if (pointer == GENESIS_POINTER || chunk.get(cellOffset + Transaction.TYPE_OFFSET) != FILLED_SLOT) {
+			return false;
+		}
+
+		long groupPointer = ((hash[0] + 128) + ((hash[1] + 128) << 8)) << 11;
+		for (int depth = 2; depth < Transaction.HASH_SIZE; depth++) {
+
+			final ByteBuffer groupChunk = transactionsChunks[(int) (groupPointer >> 27)];
+			final int slotOffset = ((int) (groupPointer & (CHUNK_SIZE - 1))) + ((hash[depth] + 128) << 3);
+			if (groupChunk.get((int) (groupPointer & (CHUNK_SIZE - 1)) + Transaction.TYPE_OFFSET) != GROUP) {
+				break;
+			}
+			final long slotPointer = value(groupChunk, slotOffset);
+			if (slotPointer == pointer) {
+
+				setValue(groupChunk, slotOffset, 0);
+				chunk.put(cellOffset + Transaction.TYPE_OFFSET, (byte) PRUNED_SLOT);
+				setTipFlag(pointer, false);
+				StorageScratchpad.instance().getPrunedHashes().add(hash);
+				return true;
+			}
+			if (slotPointer == 0) {
+				break;
+			}
+			groupPointer = slotPointer;
+		}
+		throw new IllegalStateException("Corrupted storage");
+	}
+
+	// Makes the cell of a pruned transaction available to the next stored ones
+	void releaseCell(final long pointer) {
+
+		if (transactionsChunks[(int) (pointer >> 27)].get((int) (pointer & (CHUNK_SIZE - 1)) + Transaction.TYPE_OFFSET) == PRUNED_SLOT) {
+			setValue(transactionsChunks[(int) (pointer >> 27)], (int) (pointer & (CHUNK_SIZE - 1)) + NEXT_FREE_CELL_OFFSET,
+					freeCells);
+			setFreeCells(pointer);
+		}
+	}
+
+	// Copies the hash of the transaction without loading the rest of the cell
+	public void transactionHash(final long pointer, final byte[] hash) {
+		synchronized (Storage.class) {
+			((ByteBuffer) transactionsChunks[(int) (pointer >> 27)]
+					.position(((int) (pointer & (CHUNK_SIZE - 1))) + Transaction.HASH_OFFSET)).get(hash, 0, Transaction.HASH_SIZE);
+		}
+	}
+
+	// Compares a field of the transaction, like its address or tag, in place
+	public boolean transactionFieldEquals(final long pointer, final int fieldOffset, final byte[] value, final int size) {
+		synchronized (Storage.class) {
+			final ByteBuffer chunk = transactionsChunks[(int) (pointer >> 27)];
+			final int offset = ((int) (pointer & (CHUNK_SIZE - 1))) + fieldOffset;
+			for (int i = 0; i < size; i++) {
+				if (chunk.get(offset + i) != value[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
 	public boolean tipFlag(final long pointer) {
 		synchronized (Storage.class) {
 			final long index = (pointer - (CELLS_OFFSET - SUPER_GROUPS_OFFSET)) >> 11;
@@ -193,10 +303,16 @@ public class StorageTransactions extends AbstractStorage {
 		}
 	}
 
-	// Returns the pointer or 0 if the transaction was already in the storage and "transaction" value is not null
+	// Returns the pointer or 0 if the transaction was already in the storage or pruned and "transaction" value is not
+	// null
 	public long storeTransaction(final byte[] hash, final Transaction transaction, final boolean tip) {
 
 		synchronized (Storage.class) {
+			// A pruned transaction gossiped again would bring its past cone back with it
+			if (transaction != null && StorageScratchpad.instance().getPrunedHashes().mightContain(hash)) {
+				return 0;
+			}
+
 			long pointer = ((hash[0] + 128) + ((hash[1] + 128) << 8)) << 11, prevPointer = 0;
 
 			MAIN_LOOP: for (int depth = 2; depth < Transaction.HASH_SIZE; depth++) {
@@ -209,12 +325,12 @@ public class StorageTransactions extends AbstractStorage {
 					prevPointer = pointer;
 					if ((pointer = value(mainBuffer, (hash[depth] + 128) << 3)) == 0) {
 
-						setValue(mainBuffer, (hash[depth] + 128) << 3, pointer = transactionsNextPointer);
+						setValue(mainBuffer, (hash[depth] + 128) << 3, pointer = allocateCell());
 						((ByteBuffer) transactionsChunks[(int) (prevPointer >> 27)]
 								.position((int) (prevPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
 						Transaction.dump(mainBuffer, hash, transaction);
-						appendToTransactions(transaction != null || tip);
+						writeCell(pointer, transaction != null || tip);
 						if (transaction != null) {
 							Storage.instance().updateBundleAddressTagAndApprovers(pointer);
 						}
@@ -230,27 +346,29 @@ public class StorageTransactions extends AbstractStorage {
 
 							final int differentHashByte = mainBuffer[Transaction.HASH_OFFSET + i];
 
+							long cellPointer = allocateCell();
 							((ByteBuffer) transactionsChunks[(int) (prevPointer >> 27)]
 									.position((int) (prevPointer & (CHUNK_SIZE - 1)))).get(mainBuffer);
-							setValue(mainBuffer, (hash[depth - 1] + 128) << 3, transactionsNextPointer);
+							setValue(mainBuffer, (hash[depth - 1] + 128) << 3, cellPointer);
 							((ByteBuffer) transactionsChunks[(int) (prevPointer >> 27)]
 									.position((int) (prevPointer & (CHUNK_SIZE - 1)))).put(mainBuffer);
 
 							for (int j = depth; j < i; j++) {
 
 								emptyMainBuffer();
-								setValue(mainBuffer, (hash[j] + 128) << 3, transactionsNextPointer + CELL_SIZE);
-								appendToTransactions(false);
+								final long nextCellPointer = allocateCell();
+								setValue(mainBuffer, (hash[j] + 128) << 3, nextCellPointer);
+								writeCell(cellPointer, false);
+								cellPointer = nextCellPointer;
 							}
 
 							emptyMainBuffer();
 							setValue(mainBuffer, (differentHashByte + 128) << 3, pointer);
-							setValue(mainBuffer, (hash[i] + 128) << 3, transactionsNextPointer + CELL_SIZE);
-							appendToTransactions(false);
+							setValue(mainBuffer, (hash[i] + 128) << 3, pointer = allocateCell());
+							writeCell(cellPointer, false);
 
 							Transaction.dump(mainBuffer, hash, transaction);
-							pointer = transactionsNextPointer;
-							appendToTransactions(transaction != null || tip);
+							writeCell(pointer, transaction != null || tip);
 							if (transaction != null) {
 								Storage.instance().updateBundleAddressTagAndApprovers(pointer);
 							}
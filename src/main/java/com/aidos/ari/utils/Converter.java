@@ -17,6 +17,18 @@ public class Converter {
     
     public static final int MIN_TRYTE_VALUE = -13, MAX_TRYTE_VALUE = 13;
 
+    // Values of the tryte chars, NOT_A_TRYTE for the other chars
+    private static final int NOT_A_TRYTE = Integer.MIN_VALUE;
+    private static final int[] TRYTE_VALUES = new int[128];
+
+    // 3 bytes of 5 trits hold 5 trytes of 3 trits
+    private static final int BYTES_IN_A_GROUP = 3, TRYTES_IN_A_GROUP = 5;
+    private static final int BYTE_RADIX = 243, TRYTE_RADIX = 27;
+    // Added to the value of a group so all its digits are positive: 13 in every tryte, 121 in every byte
+    private static final int GROUP_OFFSET = (BYTE_RADIX * BYTE_RADIX * BYTE_RADIX - 1) / 2;
+    // Tryte chars by tryte value + 13
+    private static final char[] OFFSET_TRYTE_CHARS = new char[TRYTE_RADIX];
+
     static {
 
         final int[] trits = new int[NUMBER_OF_TRITS_IN_A_BYTE];
@@ -30,6 +42,12 @@ public class Converter {
             TRYTE_TO_TRITS_MAPPINGS[i] = Arrays.copyOf(trits, NUMBER_OF_TRITS_IN_A_TRYTE);
             increment(trits, NUMBER_OF_TRITS_IN_A_TRYTE);
         }
+
+        Arrays.fill(TRYTE_VALUES, NOT_A_TRYTE);
+        for (int i = 0; i < TRYTE_ALPHABET.length(); i++) {
+            TRYTE_VALUES[TRYTE_ALPHABET.charAt(i)] = i > MAX_TRYTE_VALUE ? i - TRYTE_ALPHABET.length() : i;
+            OFFSET_TRYTE_CHARS[TRYTE_VALUES[TRYTE_ALPHABET.charAt(i)] - MIN_TRYTE_VALUE] = TRYTE_ALPHABET.charAt(i);
+        }
     }
 
     public static long longValue(final int[] trits, final int offset, final int size) {
@@ -76,11 +94,67 @@ public class Converter {
 
         final int[] trits = new int[trytes.length() * NUMBER_OF_TRITS_IN_A_TRYTE];
         for (int i = 0; i < trytes.length(); i++) {
-            System.arraycopy(TRYTE_TO_TRITS_MAPPINGS[TRYTE_ALPHABET.indexOf(trytes.charAt(i))], 0, trits, i * NUMBER_OF_TRITS_IN_A_TRYTE, NUMBER_OF_TRITS_IN_A_TRYTE);
+            final int value = tryteValue(trytes.charAt(i));
+            System.arraycopy(TRYTE_TO_TRITS_MAPPINGS[value < 0 ? value + TRYTE_RADIX : value], 0, trits, i * NUMBER_OF_TRITS_IN_A_TRYTE, NUMBER_OF_TRITS_IN_A_TRYTE);
         }
         return trits;
     }
 
+    /**
+     * Packs "numberOfTrytes" trytes in bytes of 5 trits like bytes(trits) does, without going through trits. A byte is
+     * a digit in balanced base 243 and a tryte a digit in balanced base 27, so every 5 trytes make a number that is
+     * split into 3 bytes. The number is offset to split it with plain divisions.
+     */
+    public static byte[] bytes(final String trytes, final int offset, final int numberOfTrytes) {
+
+        final byte[] bytes = new byte[(numberOfTrytes * NUMBER_OF_TRITS_IN_A_TRYTE + NUMBER_OF_TRITS_IN_A_BYTE - 1) / NUMBER_OF_TRITS_IN_A_BYTE];
+        for (int i = 0, byteIndex = 0; i < numberOfTrytes; i += TRYTES_IN_A_GROUP, byteIndex += BYTES_IN_A_GROUP) {
+
+            int value = 0;
+            for (int j = Math.min(TRYTES_IN_A_GROUP, numberOfTrytes - i); j-- > 0; ) {
+                value = value * TRYTE_RADIX + tryteValue(trytes.charAt(offset + i + j));
+            }
+            value += GROUP_OFFSET;
+            for (int j = byteIndex; j < byteIndex + BYTES_IN_A_GROUP && j < bytes.length; j++) {
+                bytes[j] = (byte) (value % BYTE_RADIX - BYTE_RADIX / 2);
+                value /= BYTE_RADIX;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Trytes of the first "numberOfTrytes" trytes packed in the bytes, without going through trits. Every 3 bytes make a
+     * number that is split into 5 trytes.
+     */
+    public static String trytes(final byte[] bytes, final int offset, final int numberOfTrytes) {
+
+        final char[] trytes = new char[numberOfTrytes];
+        final int end = Math.min(bytes.length, offset + (numberOfTrytes * NUMBER_OF_TRITS_IN_A_TRYTE + NUMBER_OF_TRITS_IN_A_BYTE - 1) / NUMBER_OF_TRITS_IN_A_BYTE);
+        for (int i = 0, byteIndex = offset; i < numberOfTrytes; byteIndex += BYTES_IN_A_GROUP) {
+
+            int value = 0;
+            for (int j = Math.min(BYTES_IN_A_GROUP, end - byteIndex); j-- > 0; ) {
+                value = value * BYTE_RADIX + bytes[byteIndex + j];
+            }
+            value += GROUP_OFFSET;
+            for (int j = 0; j < TRYTES_IN_A_GROUP && i < numberOfTrytes; j++, i++) {
+                trytes[i] = OFFSET_TRYTE_CHARS[value % TRYTE_RADIX];
+                value /= TRYTE_RADIX;
+            }
+        }
+        return new String(trytes);
+    }
+
+    private static int tryteValue(final char tryte) {
+
+        final int value = tryte < TRYTE_VALUES.length ? TRYTE_VALUES[tryte] : NOT_A_TRYTE;
+        if (value == NOT_A_TRYTE) {
+            throw new IllegalArgumentException("Invalid tryte: " + tryte);
+        }
+        return value;
+    }
+
     public static void copyTrits(final long value, final int[] destination, final int offset, final int size) {
 
         long absoluteValue = value < 0 ? -value : value;
@@ -0,0 +1,92 @@
+package com.aidos.ari.utils;
+
+import java.util.Arrays;
+
+/**
+ * Set of positive longs, like storage pointers, kept in a single open-addressed array so that walks over millions of
+ * transactions don't box a Long per visited pointer. 0 marks the empty slots, so 0 and negative values can't be added.
+ * Not thread safe, each walk owns its set.
+ */
+public class LongHashSet {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] values;
+    private int size;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongHashSet(final int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        values = new long[capacity];
+    }
+
+    // Returns false if the value was already in the set
+    public boolean add(final long value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException("Only positive values can be added: " + value);
+        }
+        int slot = slot(value, values.length);
+        while (values[slot] != 0) {
+            if (values[slot] == value) {
+                return false;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+        values[slot] = value;
+        // Kept at most half full so the probe sequences stay short
+        if (++size * 2 > values.length) {
+            grow();
+        }
+        return true;
+    }
+
+    public boolean contains(final long value) {
+        if (value <= 0) {
+            return false;
+        }
+        int slot = slot(value, values.length);
+        while (values[slot] != 0) {
+            if (values[slot] == value) {
+                return true;
+            }
+            slot = (slot + 1) & (values.length - 1);
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+        size = 0;
+    }
+
+    private void grow() {
+        final long[] oldValues = values;
+        values = new long[oldValues.length * 2];
+        for (final long value : oldValues) {
+            if (value != 0) {
+                int slot = slot(value, values.length);
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & (values.length - 1);
+                }
+                values[slot] = value;
+            }
+        }
+    }
+
+    // Pointers are multiples of the cell size, their low bits carry no information
+    private static int slot(final long value, final int capacity) {
+        long mixed = value * 0x9e3779b97f4a7c15L;
+        mixed ^= mixed >>> 32;
+        return (int) mixed & (capacity - 1);
+    }
+}
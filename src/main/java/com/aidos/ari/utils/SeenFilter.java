@@ -0,0 +1,98 @@
+package com.aidos.ari.utils;
+
+/**
+ * Rolling Bloom filter of transaction hashes. Hashes are added to the bucket of the current time slice and looked up
+ * in all the buckets, the oldest bucket being cleared when a new slice starts, so a hash is remembered for between
+ * (NUMBER_OF_BUCKETS - 1) and NUMBER_OF_BUCKETS slices. False positives are possible, false negatives are not.
+ */
+public class SeenFilter {
+
+    private static final int NUMBER_OF_BUCKETS = 4;
+    private static final long BUCKET_DURATION_MS = 30000;
+    // 16 KB per bucket. A lookup checks every bucket, so the false positive rates add up: about 0.25% per bucket at
+    // 8000 hashes per bucket, under 1% for the whole filter
+    private static final int BUCKET_SIZE_IN_BITS = 1 << 17;
+    private static final int NUMBER_OF_HASH_FUNCTIONS = 4;
+
+    // Allocated by the first add, peers are also instantiated just to be looked up
+    private long[][] buckets;
+    private long currentSlice = System.currentTimeMillis() / BUCKET_DURATION_MS;
+
+    public synchronized void add(final byte[] hash) {
+
+        if (buckets == null) {
+            buckets = new long[NUMBER_OF_BUCKETS][BUCKET_SIZE_IN_BITS / Long.SIZE];
+        }
+        final long[] bucket = buckets[(int) (rotate() % NUMBER_OF_BUCKETS)];
+        final long hash1 = hash1(hash), hash2 = hash2(hash);
+        for (int i = 0; i < NUMBER_OF_HASH_FUNCTIONS; i++) {
+            final int bit = bit(hash1, hash2, i);
+            bucket[bit >>> 6] |= 1L << bit;
+        }
+    }
+
+    public synchronized boolean mightContain(final byte[] hash) {
+
+        if (buckets == null) {
+            return false;
+        }
+        rotate();
+        final long hash1 = hash1(hash), hash2 = hash2(hash);
+        BUCKETS_LOOP: for (final long[] bucket : buckets) {
+            for (int i = 0; i < NUMBER_OF_HASH_FUNCTIONS; i++) {
+                final int bit = bit(hash1, hash2, i);
+                if ((bucket[bit >>> 6] & (1L << bit)) == 0) {
+                    continue BUCKETS_LOOP;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Clears the buckets of the slices that have ended, returns the current slice
+    private long rotate() {
+
+        final long slice = System.currentTimeMillis() / BUCKET_DURATION_MS;
+        for (long i = Math.max(currentSlice + 1, slice - NUMBER_OF_BUCKETS + 1); i <= slice; i++) {
+            final long[] bucket = buckets[(int) (i % NUMBER_OF_BUCKETS)];
+            for (int j = 0; j < bucket.length; j++) {
+                bucket[j] = 0;
+            }
+        }
+        if (slice > currentSlice) {
+            currentSlice = slice;
+        }
+        return currentSlice;
+    }
+
+    private static int bit(final long hash1, final long hash2, final int i) {
+        return (int) ((hash1 + i * hash2) & (BUCKET_SIZE_IN_BITS - 1));
+    }
+
+    // The leading bytes of a transaction hash are uniformly distributed, the trailing ones are mostly zeros. Also used
+    // by the filter of the pruned transactions
+    public static long hash1(final byte[] hash) {
+        return mix(value(hash, 0));
+    }
+
+    public static long hash2(final byte[] hash) {
+        return mix(value(hash, Long.BYTES)) | 1;
+    }
+
+    private static long value(final byte[] hash, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + Long.BYTES; i++) {
+            value = (value << 8) | (hash[i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        return value ^ (value >>> 33);
+    }
+}
@@ -0,0 +1,132 @@
+package com.aidos.ari;
+
+import com.aidos.ari.conf.ipType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class PeersTest {
+
+	final static int NUMBER_OF_PEERS = 12;
+	final static int NUMBER_OF_SENDS = 1000;
+	final static int PACKET_SIZE = 1650;
+
+	@Test
+	public void testBlackHoledPeerDoesNotStallTheOthers() throws Exception {
+		final List<ServerSocket> serverSockets = new ArrayList<>();
+		final List<Peers> peers = new ArrayList<>();
+		try {
+			for (int i = 0; i < NUMBER_OF_PEERS - 1; i++) {
+				final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+				serverSockets.add(serverSocket);
+				startReading(serverSocket);
+				peers.add(peer(serverSocket));
+			}
+			// Never accepts, once its backlog is full the connects hang until they time out
+			final ServerSocket blackHole = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+			serverSockets.add(blackHole);
+			final Peers blackHoledPeer = peer(blackHole);
+			peers.add(blackHoledPeer);
+
+			final byte[] packet = new byte[PACKET_SIZE];
+			for (int i = 0; i < NUMBER_OF_SENDS; i++) {
+				for (final Peers peer : peers) {
+					peer.send(packet);
+				}
+				assertTrue("The queues should stay bounded", blackHoledPeer.queuedSendsSize() <= 100);
+				assertTrue("The senders should be shared", senderThreads() <= 4);
+			}
+
+			final long deadline = System.currentTimeMillis() + 20000;
+			while (System.currentTimeMillis() < deadline && !drained(peers.subList(0, NUMBER_OF_PEERS - 1))) {
+				Thread.sleep(100);
+			}
+			for (final Peers peer : peers.subList(0, NUMBER_OF_PEERS - 1)) {
+				final PeerStatistics statistics = peer.getStatistics();
+				assertEquals("The other peers should be drained", 0, peer.queuedSendsSize());
+				assertEquals("Every send should be sent or dropped", NUMBER_OF_SENDS,
+						statistics.value(PeerStatistics.PACKETS_OUT) + statistics.value(PeerStatistics.DROPPED_SENDS));
+				assertTrue(statistics.value(PeerStatistics.PACKETS_OUT) > 0);
+			}
+			assertTrue("The black-holed peer should drop sends",
+					blackHoledPeer.getStatistics().value(PeerStatistics.DROPPED_SENDS) > 0);
+			assertTrue(senderThreads() <= 4);
+
+			blackHoledPeer.close();
+			assertEquals(0, blackHoledPeer.queuedSendsSize());
+			assertFalse("A closed peer should drop sends", blackHoledPeer.send(packet));
+		} finally {
+			for (final Peers peer : peers) {
+				peer.close();
+			}
+			for (final ServerSocket serverSocket : serverSockets) {
+				serverSocket.close();
+			}
+		}
+	}
+
+	@Test
+	public void testSendingRestartsAfterShutdown() throws Exception {
+		try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			startReading(serverSocket);
+			final Peers peer = peer(serverSocket);
+			Peers.shutdownSending();
+			Peers.initSending();
+			assertTrue(peer.send(new byte[PACKET_SIZE]));
+			final long deadline = System.currentTimeMillis() + 5000;
+			while (System.currentTimeMillis() < deadline && peer.getStatistics().value(PeerStatistics.PACKETS_OUT) == 0) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, peer.getStatistics().value(PeerStatistics.PACKETS_OUT));
+			peer.close();
+		}
+	}
+
+	private static Peers peer(final ServerSocket serverSocket) {
+		return new Peers(new InetSocketAddress(serverSocket.getInetAddress(), serverSocket.getLocalPort()), ipType.ipv4);
+	}
+
+	private static void startReading(final ServerSocket serverSocket) {
+		final Thread thread = new Thread(() -> {
+			final byte[] buffer = new byte[PACKET_SIZE];
+			while (!serverSocket.isClosed()) {
+				try (Socket socket = serverSocket.accept(); InputStream in = socket.getInputStream()) {
+					while (in.read(buffer) >= 0) {
+					}
+				} catch (final IOException e) {
+				}
+			}
+		});
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private static boolean drained(final List<Peers> peers) {
+		for (final Peers peer : peers) {
+			final PeerStatistics statistics = peer.getStatistics();
+			if (statistics.value(PeerStatistics.PACKETS_OUT) + statistics.value(PeerStatistics.DROPPED_SENDS) < NUMBER_OF_SENDS) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int senderThreads() {
+		int numberOfThreads = 0;
+		for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+			if (thread.getName().equals("Peer Sender")) {
+				numberOfThreads++;
+			}
+		}
+		return numberOfThreads;
+	}
+}
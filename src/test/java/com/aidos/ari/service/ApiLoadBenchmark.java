@@ -0,0 +1,167 @@
+package com.aidos.ari.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.aidos.ari.conf.Configuration;
+import com.aidos.ari.conf.Configuration.DefaultConfSettings;
+import com.aidos.ari.model.Hash;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.storage.Storage;
+import com.aidos.ari.service.storage.StorageTransactions;
+
+/**
+ * Latency percentiles and requests per second of ping, getTrytes and getNodeInfo, sent by local clients over
+ * keep-alive HTTP/1.1 connections to the API of a node storing NUMBER_OF_TRANSACTIONS random transactions. The stores
+ * are created in the working directory, so it has to be run from an empty one. The API is configured by the system
+ * properties named after the settings, like -DAPI_WORKER_THREADS=64 or -DAPI_HTTP2=true. The JDK client has no h2c,
+ * HTTP/2 has to be measured with a client of its own like h2load against the same node.
+ */
+public class ApiLoadBenchmark {
+
+	final static int NUMBER_OF_TRANSACTIONS = 10000;
+	final static int HASHES_PER_REQUEST = 10;
+	final static int NUMBER_OF_CLIENTS = 16;
+	final static long DURATION_MS = 10000;
+	final static int PORT = 14299;
+
+	public static void main(final String[] args) throws Exception {
+
+		Configuration.put(DefaultConfSettings.API_PORT, String.valueOf(PORT));
+		Configuration.put(DefaultConfSettings.API_HOST, "localhost");
+		for (final DefaultConfSettings setting : DefaultConfSettings.values()) {
+			final String value = System.getProperty(setting.name());
+			if (value != null) {
+				Configuration.put(setting, value);
+			}
+		}
+
+		Storage.instance().init();
+		final List<String> hashes = store(NUMBER_OF_TRANSACTIONS);
+		API.instance().init();
+
+		try {
+			final Random random = new Random(1);
+			for (int round = 0; round < 2; round++) {
+				run("ping", () -> "{\"command\": \"ping\"}");
+				run("getTrytes", () -> {
+					final StringBuilder json = new StringBuilder("{\"command\": \"getTrytes\", \"hashes\": [");
+					for (int i = 0; i < HASHES_PER_REQUEST; i++) {
+						final String hash;
+						synchronized (random) {
+							hash = hashes.get(random.nextInt(hashes.size()));
+						}
+						json.append(i == 0 ? "\"" : ", \"").append(hash).append('"');
+					}
+					return json.append("]}").toString();
+				});
+				run("getNodeInfo", () -> "{\"command\": \"getNodeInfo\"}");
+			}
+		} finally {
+			API.instance().shutDown();
+			Storage.instance().shutdown();
+		}
+		System.exit(0);
+	}
+
+	private interface Body {
+		String next();
+	}
+
+	private static List<String> store(final int numberOfTransactions) {
+		final Random random = new Random(1);
+		final List<String> hashes = new ArrayList<>(numberOfTransactions);
+		final int[] trits = new int[Transaction.TRINARY_SIZE];
+		for (int i = 0; i < numberOfTransactions; i++) {
+			for (int j = 0; j < trits.length; j++) {
+				trits[j] = random.nextInt(3) - 1;
+			}
+			final Transaction transaction = new Transaction(trits.clone());
+			StorageTransactions.instance().storeTransaction(transaction.hash, transaction, false);
+			hashes.add(new Hash(transaction.hash, 0, Transaction.HASH_SIZE).toString());
+		}
+		return hashes;
+	}
+
+	private static void run(final String command, final Body body) throws Exception {
+
+		final ExecutorService clients = Executors.newFixedThreadPool(NUMBER_OF_CLIENTS);
+		final List<Future<long[]>> results = new ArrayList<>();
+		final long start = System.currentTimeMillis();
+		for (int i = 0; i < NUMBER_OF_CLIENTS; i++) {
+			results.add(clients.submit(() -> {
+				long[] latencies = new long[1024];
+				int numberOfRequests = 0;
+				while (System.currentTimeMillis() - start < DURATION_MS) {
+					final byte[] request = body.next().getBytes(StandardCharsets.UTF_8);
+					final long requestStart = System.nanoTime();
+					post(request);
+					if (numberOfRequests == latencies.length) {
+						latencies = Arrays.copyOf(latencies, numberOfRequests * 2);
+					}
+					latencies[numberOfRequests++] = System.nanoTime() - requestStart;
+				}
+				return Arrays.copyOf(latencies, numberOfRequests);
+			}));
+		}
+
+		long[] latencies = new long[0];
+		for (final Future<long[]> result : results) {
+			final long[] clientLatencies = result.get();
+			final int offset = latencies.length;
+			latencies = Arrays.copyOf(latencies, offset + clientLatencies.length);
+			System.arraycopy(clientLatencies, 0, latencies, offset, clientLatencies.length);
+		}
+		final long duration = System.currentTimeMillis() - start;
+		clients.shutdown();
+
+		Arrays.sort(latencies);
+		System.out.printf("%s (%d clients): %.1f req/s, p50 %.2f ms, p99 %.2f ms%n", command, NUMBER_OF_CLIENTS,
+				latencies.length * 1000.0 / duration, percentile(latencies, 50) / 1e6, percentile(latencies, 99) / 1e6);
+	}
+
+	private static long percentile(final long[] sortedLatencies, final int percentile) {
+		if (sortedLatencies.length == 0) {
+			return 0;
+		}
+		return sortedLatencies[Math.min(sortedLatencies.length - 1, sortedLatencies.length * percentile / 100)];
+	}
+
+	// The JDK keeps the connection alive once the response has been read completely
+	private static void post(final byte[] request) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + PORT + "/")
+				.openConnection();
+		connection.setRequestMethod("POST");
+		connection.setRequestProperty("Content-Type", "application/json");
+		connection.setDoOutput(true);
+		try (final OutputStream out = connection.getOutputStream()) {
+			out.write(request);
+		}
+		if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+			throw new IllegalStateException("HTTP " + connection.getResponseCode());
+		}
+		final ByteArrayOutputStream response = new ByteArrayOutputStream();
+		try (final InputStream in = connection.getInputStream()) {
+			final byte[] buffer = new byte[8192];
+			int length;
+			while ((length = in.read(buffer)) != -1) {
+				response.write(buffer, 0, length);
+			}
+		}
+		if (response.size() == 0) {
+			throw new IllegalStateException("Empty response");
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package com.aidos.ari.service;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+public class ResponseCacheTest {
+
+	private final ResponseCache cache = ResponseCache.instance();
+
+	@Test
+	public void testKeysFollowTheGenerations() {
+		final JsonObject response = new JsonObject();
+		response.addProperty("tips", 1);
+
+		final String storeKey = cache.storeKey("getTips");
+		final String milestoneKey = cache.milestoneKey("getBalances", "ADDRESS", 100);
+		cache.put(storeKey, response);
+		cache.put(milestoneKey, response);
+		final long hits = cache.hits(), misses = cache.misses();
+		assertSame(response, cache.get(storeKey, Long.MAX_VALUE));
+		assertNull("Too old", cache.get(storeKey, -1));
+		assertEquals(hits + 1, cache.hits());
+		assertEquals(misses + 1, cache.misses());
+
+		cache.transactionStored();
+		assertNotEquals(storeKey, cache.storeKey("getTips"));
+		assertEquals(milestoneKey, cache.milestoneKey("getBalances", "ADDRESS", 100));
+
+		cache.milestoneChanged();
+		assertNotEquals(milestoneKey, cache.milestoneKey("getBalances", "ADDRESS", 100));
+		assertNull("Dropped with the milestone", cache.get(milestoneKey, Long.MAX_VALUE));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedAreEvicted() {
+		cache.milestoneChanged();
+		final JsonObject response = new JsonObject();
+		final JsonArray balances = new JsonArray();
+		for (int i = 0; i < 9999; i++) {
+			balances.add("0");
+		}
+		response.add("balances", balances);
+
+		// 10000 elements each, the cache holds 20 of them
+		for (int i = 0; i < 20; i++) {
+			cache.put("key" + i, response);
+		}
+		assertNotNull(cache.get("key0", Long.MAX_VALUE));
+		final long evictions = cache.evictions();
+		cache.put("key20", response);
+		assertEquals(evictions + 1, cache.evictions());
+		assertNull(cache.get("key1", Long.MAX_VALUE));
+		assertNotNull(cache.get("key0", Long.MAX_VALUE));
+		assertEquals(20, cache.size());
+	}
+}
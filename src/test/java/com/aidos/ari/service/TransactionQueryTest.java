@@ -0,0 +1,48 @@
+package com.aidos.ari.service;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+public class TransactionQueryTest {
+
+	@Test
+	public void testIntersectionMatchesSets() {
+		final Random random = new Random(1);
+		for (final int[] sizes : new int[][] {{0, 10}, {10, 10}, {5, 100000}, {1000, 1000}, {100000, 3}}) {
+			final long[] postings1 = sortedPostings(random, sizes[0]);
+			final long[] postings2 = sortedPostings(random, sizes[1]);
+			final TreeSet<Long> expected = new TreeSet<>();
+			for (final long posting : postings1) {
+				expected.add(posting);
+			}
+			final TreeSet<Long> other = new TreeSet<>();
+			for (final long posting : postings2) {
+				other.add(posting);
+			}
+			expected.retainAll(other);
+			final long[] intersection = TransactionQuery.intersection(postings1, postings2);
+			assertEquals(expected.size(), intersection.length);
+			int i = 0;
+			for (final long posting : expected) {
+				assertEquals(posting, intersection[i++]);
+			}
+		}
+	}
+
+	private static long[] sortedPostings(final Random random, final int size) {
+		final TreeSet<Long> postings = new TreeSet<>();
+		while (postings.size() < size) {
+			postings.add((1 + random.nextInt(200000)) * 2048L);
+		}
+		final long[] sortedPostings = new long[size];
+		int i = 0;
+		for (final long posting : postings) {
+			sortedPostings[i++] = posting;
+		}
+		return sortedPostings;
+	}
+}
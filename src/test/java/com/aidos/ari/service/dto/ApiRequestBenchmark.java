@@ -0,0 +1,90 @@
+package com.aidos.ari.service.dto;
+
+import com.aidos.ari.model.Hash;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Requests per second decoded from the body of getTrytes and findTransactions requests, by reading the whole body and
+ * parsing it with Gson into a map as the API used to, and by streaming it into an ApiRequest.
+ */
+public class ApiRequestBenchmark {
+
+	final static int NUMBER_OF_HASHES = 10000;
+	final static int NUMBER_OF_ADDRESSES = 1000;
+	final static long DURATION_MS = 5000;
+
+	private static final Pattern trytesPattern = Pattern.compile("[9A-Z]*");
+	private static final Gson gson = new Gson();
+
+	public static void main(final String[] args) throws IOException {
+		final byte[] getTrytes = request("getTrytes", "hashes", NUMBER_OF_HASHES);
+		final byte[] findTransactions = request("findTransactions", "addresses", NUMBER_OF_ADDRESSES);
+
+		for (int round = 0; round < 2; round++) {
+			System.out.printf("getTrytes (%d hashes): map %.1f req/s, streaming %.1f req/s%n", NUMBER_OF_HASHES,
+					run(getTrytes, "hashes", false), run(getTrytes, "hashes", true));
+			System.out.printf("findTransactions (%d addresses): map %.1f req/s, streaming %.1f req/s%n",
+					NUMBER_OF_ADDRESSES, run(findTransactions, "addresses", false),
+					run(findTransactions, "addresses", true));
+		}
+	}
+
+	private static double run(final byte[] body, final String parameter, final boolean streaming) throws IOException {
+		long numberOfRequests = 0;
+		final long start = System.currentTimeMillis();
+		long now;
+		while ((now = System.currentTimeMillis()) - start < DURATION_MS) {
+			final int numberOfHashes = streaming ? stream(body) : map(body, parameter);
+			if (numberOfHashes == 0) {
+				throw new IllegalStateException();
+			}
+			numberOfRequests++;
+		}
+		return numberOfRequests * 1000.0 / (now - start);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static int map(final byte[] body, final String parameter) throws IOException {
+		final String requestString = IOUtils.toString(new ByteArrayInputStream(body), StandardCharsets.UTF_8);
+		final Map<String, Object> request = gson.fromJson(requestString, Map.class);
+		final List<Hash> hashes = new ArrayList<>();
+		for (final String hash : (List<String>) request.get(parameter)) {
+			if (hash.length() < ApiRequest.HASH_SIZE || !trytesPattern.matcher(hash).matches()) {
+				throw new IllegalStateException();
+			}
+			hashes.add(new Hash(hash));
+		}
+		return hashes.size();
+	}
+
+	private static int stream(final byte[] body) throws IOException {
+		final ApiRequest request = ApiRequest.read(
+				new InputStreamReader(new ByteArrayInputStream(body), StandardCharsets.UTF_8));
+		return request.getHashes() != null ? request.getHashes().size() : request.getAddresses().size();
+	}
+
+	private static byte[] request(final String command, final String parameter, final int numberOfHashes) {
+		final Random random = new Random(1);
+		final StringBuilder json = new StringBuilder("{\"command\": \"" + command + "\", \"" + parameter + "\": [");
+		for (int i = 0; i < numberOfHashes; i++) {
+			json.append(i == 0 ? "\"" : ", \"");
+			for (int j = 0; j < ApiRequest.HASH_SIZE; j++) {
+				json.append("9ABCDEFGHIJKLMNOPQRSTUVWXYZ".charAt(random.nextInt(27)));
+			}
+			json.append('"');
+		}
+		return json.append("]}").toString().getBytes(StandardCharsets.UTF_8);
+	}
+}
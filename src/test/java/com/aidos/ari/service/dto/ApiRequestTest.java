@@ -0,0 +1,47 @@
+package com.aidos.ari.service.dto;
+
+import com.aidos.ari.model.Hash;
+
+import java.io.IOException;
+import java.io.StringReader;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ApiRequestTest {
+
+	final static String HASH = "ABCDEFGHIJKLMNOPQRSTUVWXYZ9ABCDEFGHIJKLMNOPQRSTUVWXYZ9ABCDEFGHIJKLMNOPQRSTUVWXYZ9";
+
+	@Test
+	public void testParametersInAnyOrder() throws IOException {
+		ApiRequest request = read("{\"hashes\": [\"" + HASH + "\", \"\"], \"unknown\": {\"a\": [1]}, \"command\": \"getTrytes\"}");
+		assertEquals("getTrytes", request.getCommand());
+		assertTrue(request.has("hashes"));
+		assertTrue(request.isValid("hashes"));
+		assertEquals(1, request.getHashes().size());
+		assertEquals(new Hash(HASH), request.getHashes().get(0));
+		assertFalse(request.has("unknown"));
+	}
+
+	@Test
+	public void testInvalidValuesAreRecorded() throws IOException {
+		ApiRequest request = read("{\"command\": \"findTransactions\", \"addresses\": [\"" + HASH.substring(1) + "\"],"
+				+ " \"bundles\": [\"" + HASH.toLowerCase() + "\"], \"approvees\": null}");
+		assertTrue(request.has("addresses"));
+		assertFalse(request.isValid("addresses"));
+		assertFalse(request.isValid("bundles"));
+		assertTrue(request.getAddresses().isEmpty());
+		assertFalse(request.has("approvees"));
+	}
+
+	@Test
+	public void testTagsAndNumbers() throws IOException {
+		ApiRequest request = read("{\"command\": \"findTransactions\", \"tags\": [\"TAG\"], \"threshold\": 100.0}");
+		assertEquals(new Hash("TAG" + HASH.replaceAll(".", "9").substring(3)), request.getTags().get(0));
+		assertEquals(100, (int) request.getThreshold());
+	}
+
+	private static ApiRequest read(final String json) throws IOException {
+		return ApiRequest.read(new StringReader(json));
+	}
+}
@@ -0,0 +1,110 @@
+package com.aidos.ari.service.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class PostingsCursorTest {
+
+	private static final int FIRST_CELL = AbstractStorage.CELL_SIZE;
+	private static final int FIRST_CELL_POSTINGS = 247, NEXT_CELL_POSTINGS = 255;
+
+	private final byte[] cells = new byte[AbstractStorage.CELL_SIZE * 5];
+	private final ByteBuffer[] chunks = {ByteBuffer.wrap(cells)};
+	private int numberOfPostings;
+	private int lastCell = FIRST_CELL;
+
+	@Test
+	public void testPagesThroughTheCells() {
+		append(600);
+		assertEquals(600, AbstractStorage.sortedPostings(chunks, FIRST_CELL).length);
+		assertTrue(AbstractStorage.postingsSizeEstimate(chunks, FIRST_CELL) >= 600);
+
+		final PostingsCursor cursor = PostingsCursor.start(FIRST_CELL);
+		final long[] postings = new long[100];
+		long expectedPosting = 1;
+		for (int page = 0; page < 6; page++) {
+			assertEquals(100, AbstractStorage.readPostings(chunks, cursor, postings, postings.length));
+			for (final long posting : postings) {
+				assertEquals(expectedPosting++, posting);
+			}
+		}
+		assertEquals(0, AbstractStorage.readPostings(chunks, cursor, postings, postings.length));
+
+		// The cursor resumes with the postings stored after it, in a new cell too
+		append(300);
+		final PostingsCursor resumedCursor = new PostingsCursor(cursor.getCellPointer(), cursor.getOffset());
+		for (int page = 0; page < 3; page++) {
+			assertEquals(100, AbstractStorage.readPostings(chunks, resumedCursor, postings, postings.length));
+			for (final long posting : postings) {
+				assertEquals(expectedPosting++, posting);
+			}
+		}
+		assertEquals(0, AbstractStorage.readPostings(chunks, resumedCursor, postings, postings.length));
+	}
+
+	@Test
+	public void testSkipsRemovedPostings() {
+		append(300);
+		final PostingsCursor cursor = PostingsCursor.start(FIRST_CELL);
+		final long[] postings = new long[100];
+		assertEquals(100, AbstractStorage.readPostings(chunks, cursor, postings, postings.length));
+
+		// Removed postings stay in place, so the cursor reads on from the same posting
+		assertTrue(AbstractStorage.removePosting(chunks, FIRST_CELL, 50));
+		assertTrue(AbstractStorage.removePosting(chunks, FIRST_CELL, 250));
+		assertFalse(AbstractStorage.removePosting(chunks, FIRST_CELL, 301));
+		assertEquals(298, AbstractStorage.sortedPostings(chunks, FIRST_CELL).length);
+
+		long expectedPosting = 101;
+		int size;
+		while ((size = AbstractStorage.readPostings(chunks, cursor, postings, postings.length)) > 0) {
+			for (int i = 0; i < size; i++) {
+				if (expectedPosting == 250) {
+					expectedPosting++;
+				}
+				assertEquals(expectedPosting++, postings[i]);
+			}
+		}
+		assertEquals(301, expectedPosting);
+	}
+
+	@Test
+	public void testCursorsOutsideThePostingsAreRejected() {
+		append(600);
+		assertTrue(AbstractStorage.inPostings(chunks, FIRST_CELL, PostingsCursor.start(FIRST_CELL)));
+		assertTrue(AbstractStorage.inPostings(chunks, FIRST_CELL, new PostingsCursor(FIRST_CELL * 3, 0)));
+		// The header of the first cell
+		assertFalse(AbstractStorage.inPostings(chunks, FIRST_CELL, new PostingsCursor(FIRST_CELL, 0)));
+		// A cell of the chain, but not of the postings at that pointer
+		assertFalse(AbstractStorage.inPostings(chunks, FIRST_CELL * 2, new PostingsCursor(FIRST_CELL, 64)));
+		// Past the last cell
+		assertFalse(AbstractStorage.inPostings(chunks, FIRST_CELL, new PostingsCursor(FIRST_CELL * 4, 0)));
+		assertFalse(AbstractStorage.inPostings(chunks, 0, PostingsCursor.start(FIRST_CELL)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnalignedCursor() {
+		new PostingsCursor(FIRST_CELL + 1, 0);
+	}
+
+	// Same layout as the storages: the first cell from ZEROTH_POINTER_OFFSET, the last long links to the next cell
+	private void append(final int number) {
+		for (int i = 0; i < number; i++) {
+			final int offset;
+			if (numberOfPostings < FIRST_CELL_POSTINGS) {
+				offset = AbstractStorage.ZEROTH_POINTER_OFFSET + numberOfPostings * Long.BYTES;
+			} else {
+				offset = ((numberOfPostings - FIRST_CELL_POSTINGS) % NEXT_CELL_POSTINGS) * Long.BYTES;
+				if (offset == 0) {
+					AbstractStorage.setValue(cells, lastCell + AbstractStorage.CELL_SIZE - Long.BYTES,
+							lastCell + AbstractStorage.CELL_SIZE);
+					lastCell += AbstractStorage.CELL_SIZE;
+				}
+			}
+			AbstractStorage.setValue(cells, lastCell + offset, ++numberOfPostings);
+		}
+	}
+}
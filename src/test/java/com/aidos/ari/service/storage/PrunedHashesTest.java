@@ -0,0 +1,71 @@
+package com.aidos.ari.service.storage;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class PrunedHashesTest {
+
+	private static final int HASH_SIZE = 46;
+	private static final int GENERATION_SIZE = 1 << 12;
+	// A generation holds 32 bits per hash
+	private static final int GENERATION_CAPACITY = GENERATION_SIZE * Byte.SIZE / 32;
+
+	private final ByteBuffer filter = ByteBuffer.allocate(AbstractStorage.CELL_SIZE + 2 * GENERATION_SIZE);
+	private final Random random = new Random(1);
+
+	@Test
+	public void testPrunedHashesAreRemembered() {
+		final PrunedHashes prunedHashes = new PrunedHashes(filter, GENERATION_SIZE);
+		final byte[][] hashes = hashes(GENERATION_CAPACITY);
+		for (final byte[] hash : hashes) {
+			assertFalse(prunedHashes.mightContain(hash));
+			prunedHashes.add(hash);
+		}
+		for (final byte[] hash : hashes) {
+			assertTrue(prunedHashes.mightContain(hash));
+		}
+
+		// Kept in the buffer, the node finds them again after a restart
+		final PrunedHashes reloadedPrunedHashes = new PrunedHashes(filter, GENERATION_SIZE);
+		for (final byte[] hash : hashes) {
+			assertTrue(reloadedPrunedHashes.mightContain(hash));
+		}
+	}
+
+	@Test
+	public void testOldestGenerationIsForgotten() {
+		final PrunedHashes prunedHashes = new PrunedHashes(filter, GENERATION_SIZE);
+		final byte[][] oldestHashes = hashes(GENERATION_CAPACITY);
+		for (final byte[] hash : oldestHashes) {
+			prunedHashes.add(hash);
+		}
+		final byte[][] hashes = hashes(GENERATION_CAPACITY);
+		for (final byte[] hash : hashes) {
+			prunedHashes.add(hash);
+		}
+		// Both generations are full, the next hash clears the oldest one
+		prunedHashes.add(hashes(1)[0]);
+		for (final byte[] hash : hashes) {
+			assertTrue(prunedHashes.mightContain(hash));
+		}
+		int numberOfRememberedHashes = 0;
+		for (final byte[] hash : oldestHashes) {
+			if (prunedHashes.mightContain(hash)) {
+				numberOfRememberedHashes++;
+			}
+		}
+		assertTrue(numberOfRememberedHashes < GENERATION_CAPACITY / 100);
+	}
+
+	private byte[][] hashes(final int numberOfHashes) {
+		final byte[][] hashes = new byte[numberOfHashes][HASH_SIZE];
+		for (final byte[] hash : hashes) {
+			random.nextBytes(hash);
+		}
+		return hashes;
+	}
+}
@@ -0,0 +1,121 @@
+package com.aidos.ari.service.storage;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.aidos.ari.Bundle;
+import com.aidos.ari.model.Transaction;
+import com.aidos.ari.service.PastConeSizes;
+import com.aidos.ari.service.TransactionRequester;
+
+public class StorageCompactorTest {
+
+	private static final String[] FILE_NAMES = {StorageTransactions.TRANSACTIONS_FILE_NAME,
+			StorageBundle.BUNDLES_FILE_NAME, StorageAddresses.ADDRESSES_FILE_NAME, StorageTags.TAGS_FILE_NAME,
+			StorageApprovers.APPROVERS_FILE_NAME, StorageScratchpad.SCRATCHPAD_FILE_NAME};
+	private static final long WALK_TIMEOUT_MS = 5000;
+
+	private static boolean initialized;
+
+	// Shared by the tests, a pruned transaction can't be stored again
+	private static final Random random = new Random(1);
+
+	@BeforeClass
+	public static void init() throws IOException {
+		// The storage is created in the working directory, the one of a node is left alone
+		for (final String fileName : FILE_NAMES) {
+			assumeFalse(Files.exists(Paths.get(fileName)));
+		}
+		initialized = true;
+		Storage.instance().init();
+		TransactionRequester.instance().init();
+		PastConeSizes.instance().init();
+		Bundle.init(1);
+	}
+
+	@AfterClass
+	public static void shutDown() throws IOException {
+		if (!initialized) {
+			return;
+		}
+		Bundle.shutdown();
+		PastConeSizes.instance().shutDown();
+		Storage.instance().shutdown();
+		for (final String fileName : FILE_NAMES) {
+			Files.deleteIfExists(Paths.get(fileName));
+		}
+	}
+
+	@Test
+	public void testPrunedTransactionIsNotStoredAgain() {
+		final Transaction transaction = transaction(null);
+		final long pointer = StorageTransactions.instance().storeTransaction(transaction.hash, transaction, false);
+		assertTrue(pointer > 0);
+		assertEquals(1, StorageCompactor.instance().prune(new long[] {pointer}, 1));
+		assertEquals(0, StorageTransactions.instance().transactionPointer(transaction.hash));
+
+		// Gossiped again, it isn't taken and its approvees aren't requested again
+		assertEquals(0, StorageTransactions.instance().storeTransaction(transaction.hash, transaction, false));
+		assertEquals(0, StorageTransactions.instance().transactionPointer(transaction.hash));
+	}
+
+	@Test
+	public void testReusedCellStartsAfresh() throws InterruptedException {
+		final Transaction tail = transaction(null);
+		final long pointer = StorageTransactions.instance().storeTransaction(tail.hash, tail, false);
+		StorageTransactions.instance().setTransactionValidity(pointer, 1);
+		assertArrayEquals(tail.hash, validatedTail(pointer).hash);
+		TransactionRequester.instance().requestTransaction(pointer, tail.hash, true);
+		final long walkStart = System.currentTimeMillis();
+		while (PastConeSizes.instance().pastConeSize(pointer) == 0) {
+			assertTrue(System.currentTimeMillis() - walkStart < WALK_TIMEOUT_MS);
+			Thread.sleep(10);
+		}
+
+		assertEquals(1, StorageCompactor.instance().prune(new long[] {pointer}, 1));
+		StorageCompactor.instance().release();
+		assertEquals(0, PastConeSizes.instance().pastConeSize(pointer));
+
+		// A reattachment of the bundle takes the cell of the pruned tail
+		final Transaction reattachedTail = transaction(tail);
+		assertEquals(pointer,
+				StorageTransactions.instance().storeTransaction(reattachedTail.hash, reattachedTail, false));
+		StorageTransactions.instance().setTransactionValidity(pointer, 1);
+		assertArrayEquals(reattachedTail.hash, validatedTail(pointer).hash);
+		for (final byte[] hash : TransactionRequester.instance().transactionsToRequest(Integer.MAX_VALUE)) {
+			assertFalse(Arrays.equals(tail.hash, hash));
+		}
+	}
+
+	private static Transaction validatedTail(final long pointer) {
+		final List<Transaction> bundleTransactions = Bundle
+				.validatedTransactions(StorageTransactions.instance().loadTransaction(pointer));
+		assertEquals(1, bundleTransactions.size());
+		return bundleTransactions.get(0);
+	}
+
+	// A bundle of a single transaction, in the same bundle as "bundleTransaction" if it isn't null
+	private Transaction transaction(final Transaction bundleTransaction) {
+		final int[] trits = new int[Transaction.TRINARY_SIZE];
+		for (int i = 0; i < trits.length; i++) {
+			trits[i] = random.nextInt(3) - 1;
+		}
+		Arrays.fill(trits, Transaction.CURRENT_INDEX_TRINARY_OFFSET, Transaction.BUNDLE_TRINARY_OFFSET, 0);
+		if (bundleTransaction != null) {
+			System.arraycopy(bundleTransaction.trits(), Transaction.BUNDLE_TRINARY_OFFSET, trits,
+					Transaction.BUNDLE_TRINARY_OFFSET, Transaction.BUNDLE_TRINARY_SIZE);
+		}
+		return new Transaction(trits);
+	}
+}
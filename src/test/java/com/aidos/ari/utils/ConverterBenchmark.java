@@ -0,0 +1,56 @@
+package com.aidos.ari.utils;
+
+import java.util.Random;
+
+/**
+ * Transactions per second converted between their stored bytes and trytes, through trits as getTrytes and the hashes
+ * used to, and directly.
+ */
+public class ConverterBenchmark {
+
+	final static int TRANSACTION_TRINARY_SIZE = 8019;
+	final static int NUMBER_OF_TRANSACTIONS = 1000;
+	final static long DURATION_MS = 3000;
+
+	public static void main(final String[] args) {
+		final Random random = new Random(1);
+		final byte[][] bytes = new byte[NUMBER_OF_TRANSACTIONS][];
+		final String[] trytes = new String[NUMBER_OF_TRANSACTIONS];
+		for (int i = 0; i < NUMBER_OF_TRANSACTIONS; i++) {
+			final int[] trits = new int[TRANSACTION_TRINARY_SIZE];
+			for (int j = 0; j < trits.length; j++) {
+				trits[j] = random.nextInt(3) - 1;
+			}
+			bytes[i] = Converter.bytes(trits);
+			trytes[i] = Converter.trytes(trits);
+		}
+
+		for (int round = 0; round < 2; round++) {
+			System.out.printf("bytes to trytes: through trits %.0f tx/s, direct %.0f tx/s%n", run(i -> {
+				final int[] trits = new int[TRANSACTION_TRINARY_SIZE];
+				Converter.getTrits(bytes[i], trits);
+				return Converter.trytes(trits).length();
+			}), run(i -> Converter.trytes(bytes[i], 0, TRANSACTION_TRINARY_SIZE / 3).length()));
+			System.out.printf("trytes to bytes: through trits %.0f tx/s, direct %.0f tx/s%n",
+					run(i -> Converter.bytes(Converter.trits(trytes[i])).length),
+					run(i -> Converter.bytes(trytes[i], 0, trytes[i].length()).length));
+		}
+	}
+
+	private interface Conversion {
+		int convert(int i);
+	}
+
+	private static double run(final Conversion conversion) {
+		long numberOfConversions = 0, sink = 0;
+		final long start = System.currentTimeMillis();
+		long now;
+		while ((now = System.currentTimeMillis()) - start < DURATION_MS) {
+			sink += conversion.convert((int) (numberOfConversions++ % NUMBER_OF_TRANSACTIONS));
+		}
+		if (sink == 0) {
+			throw new IllegalStateException();
+		}
+		return numberOfConversions * 1000.0 / (now - start);
+	}
+}
@@ -0,0 +1,59 @@
+package com.aidos.ari.utils;
+
+import java.util.Arrays;
+import java.util.Random;
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class ConverterTest {
+
+	final static int TRANSACTION_TRINARY_SIZE = 8019;
+
+	@Test
+	public void testBytesToTrytesMatchesTrits() {
+		Random random = new Random(1);
+		for (int size : new int[] {243, TRANSACTION_TRINARY_SIZE, 3, 15, 18, 30}) {
+			for (int i = 0; i < 100; i++) {
+				int[] trits = randomTrits(random, size);
+				byte[] bytes = Converter.bytes(trits);
+				assertEquals(Converter.trytes(trits), Converter.trytes(bytes, 0, size / 3));
+			}
+		}
+	}
+
+	@Test
+	public void testTrytesToBytesMatchesTrits() {
+		Random random = new Random(2);
+		for (int size : new int[] {243, TRANSACTION_TRINARY_SIZE, 3, 15, 18, 30}) {
+			for (int i = 0; i < 100; i++) {
+				String trytes = Converter.trytes(randomTrits(random, size));
+				assertArrayEquals(Converter.bytes(Converter.trits(trytes)), Converter.bytes(trytes, 0, trytes.length()));
+			}
+		}
+	}
+
+	@Test
+	public void testExtremeValues() {
+		for (int trit = -1; trit <= 1; trit++) {
+			int[] trits = new int[TRANSACTION_TRINARY_SIZE];
+			Arrays.fill(trits, trit);
+			String trytes = Converter.trytes(trits);
+			assertEquals(trytes, Converter.trytes(Converter.bytes(trits), 0, trytes.length()));
+			assertArrayEquals(Converter.bytes(trits), Converter.bytes(trytes, 0, trytes.length()));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTryte() {
+		Converter.bytes("ABc", 0, 3);
+	}
+
+	private static int[] randomTrits(Random random, int size) {
+		int[] trits = new int[size];
+		for (int i = 0; i < size; i++) {
+			trits[i] = random.nextInt(3) - 1;
+		}
+		return trits;
+	}
+}
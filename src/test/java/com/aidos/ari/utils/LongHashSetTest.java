@@ -0,0 +1,36 @@
+package com.aidos.ari.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+	@Test
+	public void testAgreesWithHashSet() {
+		final Random random = new Random(1);
+		final LongHashSet set = new LongHashSet();
+		final Set<Long> expected = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			// Like storage pointers, multiples of the cell size
+			final long value = (1 + random.nextInt(50000)) * 2048L;
+			assertEquals(expected.add(value), set.add(value));
+		}
+		assertEquals(expected.size(), set.size());
+		for (long value = 0; value <= 60000 * 2048L; value += 1024) {
+			assertEquals(expected.contains(value), set.contains(value));
+		}
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(2048));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testEmptyMarkerCannotBeAdded() {
+		new LongHashSet().add(0);
+	}
+}
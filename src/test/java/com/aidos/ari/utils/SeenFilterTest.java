@@ -0,0 +1,54 @@
+package com.aidos.ari.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SeenFilterTest {
+
+	private static final int HASH_SIZE = 46;
+	private static final int NUMBER_OF_HASHES = 8000;
+
+	@Test
+	public void testEmptyFilterContainsNothing() {
+		final SeenFilter filter = new SeenFilter();
+		assertFalse(filter.mightContain(new byte[HASH_SIZE]));
+	}
+
+	@Test
+	public void testAddedHashesAreContained() {
+		final Random random = new Random(1);
+		final SeenFilter filter = new SeenFilter();
+		final byte[][] hashes = new byte[NUMBER_OF_HASHES][HASH_SIZE];
+		for (final byte[] hash : hashes) {
+			random.nextBytes(hash);
+			filter.add(hash);
+		}
+		for (final byte[] hash : hashes) {
+			assertTrue(filter.mightContain(hash));
+		}
+	}
+
+	@Test
+	public void testFalsePositiveRateOfAFullBucket() {
+		final Random random = new Random(2);
+		final SeenFilter filter = new SeenFilter();
+		final byte[] hash = new byte[HASH_SIZE];
+		for (int i = 0; i < NUMBER_OF_HASHES; i++) {
+			random.nextBytes(hash);
+			filter.add(hash);
+		}
+		int falsePositives = 0;
+		final int lookups = 100000;
+		for (int i = 0; i < lookups; i++) {
+			random.nextBytes(hash);
+			if (filter.mightContain(hash)) {
+				falsePositives++;
+			}
+		}
+		// About 0.25% per bucket, the lookups checking all four of them stay under 1%
+		assertTrue("false positives: " + falsePositives, falsePositives < lookups / 200);
+	}
+}